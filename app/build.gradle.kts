@@ -8,6 +8,9 @@
 plugins {
     // Apply the application plugin to add support for building a CLI application in Java.
     application
+
+    // Microbenchmarks live in src/jmh/java and run with ./gradlew jmh
+    alias(libs.plugins.jmh)
 }
 
 repositories {
@@ -35,12 +38,78 @@ java {
     }
 }
 
+// SIMD distance kernels use the incubating Vector API; without the module at runtime they fall back to scalar code
+val vectorModuleArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+// OffHeapAgentStore uses the Foreign Function & Memory API, still a preview in Java 21
+val previewArgs = listOf("--enable-preview")
+val runtimeArgs = vectorModuleArgs + previewArgs
+
+tasks.withType<JavaCompile>().configureEach {
+    options.release = 21
+    options.compilerArgs.addAll(runtimeArgs)
+}
+
 application {
     // Define the main class for the application.
     mainClass = "crowd_simulation.App"
+    applicationDefaultJvmArgs = runtimeArgs
+}
+
+// Steps the simulation without a window, e.g. ./gradlew runHeadless --args="--algorithm boid --agents 5000"
+tasks.register<JavaExec>("runHeadless") {
+    group = "application"
+    description = "Runs the simulation headless and prints steps per second."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "crowd_simulation.HeadlessRunner"
+    jvmArgs(runtimeArgs)
+}
+
+// Runs a matrix of headless simulations, e.g. ./gradlew runBatch --args="--algorithms boid,scout --agents 1000,5000"
+tasks.register<JavaExec>("runBatch") {
+    group = "application"
+    description = "Runs a scenario matrix headless and writes the results to CSV and JSON."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "crowd_simulation.BatchRunner"
+    jvmArgs(runtimeArgs)
+}
+
+// Splits the world into strips, one worker process each, e.g. ./gradlew runSharded --args="--workers 4 --agents 100000"
+tasks.register<JavaExec>("runSharded") {
+    group = "application"
+    description = "Runs the simulation across worker processes on this machine and prints steps per second."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "crowd_simulation.ShardCoordinator"
+    jvmArgs(runtimeArgs)
+}
+
+// Searches Boid or Scout parameters, e.g. ./gradlew runTune --args="--algorithm scout --candidates 128"
+tasks.register<JavaExec>("runTune") {
+    group = "application"
+    description = "Tunes Boid or Scout parameters with successive halving and prints the Pareto front."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "crowd_simulation.ParameterTuner"
+    jvmArgs(runtimeArgs)
+}
+
+// Serves simulation sessions over HTTP on localhost, e.g. ./gradlew runService --args="--port 8080 --cpus 4"
+tasks.register<JavaExec>("runService") {
+    group = "application"
+    description = "Runs the local HTTP service for simulation sessions."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "crowd_simulation.SimulationService"
+    jvmArgs(runtimeArgs)
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh
+    // Report allocation rate next to the timings
+    profilers.add("gc")
+    jvmArgsAppend.addAll(runtimeArgs)
 }
 
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
+    jvmArgs(runtimeArgs)
 }
@@ -0,0 +1,79 @@
+package crowd_simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Position integration, through Agent views and directly on the store columns
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AgentUpdateBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int agentCount;
+
+    // Agents per 100x100 area
+    @Param({"0.5", "8"})
+    public float density;
+
+    private AgentStore store;
+    private List<Agent> agents;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class AgentSteps {
+        public long agentSteps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            agentSteps = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = Scenarios.uniform(agentCount, density, 42);
+        // Give every agent a velocity so the distance and goal checks do real work
+        for (int i = 0; i < store.size(); i++) {
+            store.setVelocity(i, AgentStore.DEFAULT_MAX_SPEED, AgentStore.DEFAULT_MAX_SPEED / 2);
+        }
+
+        agents = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            agents.add(new Agent(store, i));
+        }
+    }
+
+    @Benchmark
+    public AgentStore agentViews(AgentSteps counter) {
+        for (Agent agent : agents) {
+            agent.update(SimulationEngine.DEFAULT_TIME_STEP);
+        }
+        counter.agentSteps += agentCount;
+        return store;
+    }
+
+    @Benchmark
+    public AgentStore storeColumns(AgentSteps counter) {
+        store.update(SimulationEngine.DEFAULT_TIME_STEP);
+        counter.agentSteps += agentCount;
+        return store;
+    }
+}
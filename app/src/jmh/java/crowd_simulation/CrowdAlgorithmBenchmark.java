@@ -0,0 +1,74 @@
+package crowd_simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+
+// One simulation step per operation, steering and moving the agents so that neighbor lists and contacts
+// change as they would in a run; the agentSteps counter gives ns per agent-step
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CrowdAlgorithmBenchmark {
+    // boid-reference runs Boid's original three-pass kernel
+    @Param({"ghost", "boid", "boid-reference", "scout", "scout-orca"})
+    public String algorithm;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int agentCount;
+
+    // Agents per 100x100 area
+    @Param({"0.5", "2", "8"})
+    public float density;
+
+    private SimulationEngine engine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class AgentSteps {
+        public long agentSteps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            agentSteps = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        CrowdAlgorithm crowdAlgorithm;
+        if (algorithm.equals("boid-reference")) {
+            Boid boid = new Boid();
+            boid.setReferenceMode(true);
+            crowdAlgorithm = boid;
+        } else {
+            crowdAlgorithm = HeadlessRunner.createAlgorithm(algorithm);
+        }
+        engine = new SimulationEngine(Scenarios.uniform(agentCount, density, 42), crowdAlgorithm);
+    }
+
+    @Benchmark
+    public AgentStore step(AgentSteps counter) {
+        engine.step();
+        counter.agentSteps += agentCount;
+        return engine.getStore();
+    }
+}
@@ -1,79 +1,35 @@
 package crowd_simulation;
 
-import processing.core.PApplet;
 import processing.core.PVector;
 
+// A view of one row of an AgentStore, used for benchmarking
 public class Agent {
-    private final PVector position;
-    private PVector velocity;
-    private final PVector goal;
-    private final float radius = 12.5f;
-    private final float maxSpeed = 2.0f;
-    private final PApplet canvas;
-    private int color;
-    
-    // Benchmark fields
-    private float distanceTraveled = 0;
-    private int collisions = 0;
-    private boolean reachedGoal = false;
-    private float timeToGoal = 0;
+    private final AgentStore store;
+    private final int index;
 
-    public Agent(PApplet canvas, float x, float y, float goalX, float goalY) {
-        this.canvas = canvas;
-        this.position = new PVector(x, y);
-        this.velocity = new PVector(0, 0);
-        this.goal = new PVector(goalX, goalY);
-        this.color = canvas.color(100, 150, 255);
+    public Agent(AgentStore store, int index) {
+        this.store = store;
+        this.index = index;
     }
 
     public void update(float deltaTime) {
-        PVector oldPos = position.copy();
-        position.add(PVector.mult(velocity, deltaTime));
-        
-        // Calculate distance traveled for benchmarking
-        distanceTraveled += PVector.dist(oldPos, position);
-        
-        // Check if reached goal
-        if (!reachedGoal && PVector.dist(position, goal) < radius) {
-            reachedGoal = true;
-        }
-        
-        if (!reachedGoal) {
-            timeToGoal += deltaTime;
-        }
-    }
-
-    public void draw() {
-        canvas.pushStyle();
-        canvas.fill(color);
-        canvas.stroke(0);
-        canvas.circle(position.x, position.y, radius * 2);
-        
-        // Draw goal
-        canvas.fill(255, 0, 0, 100);
-        canvas.noStroke();
-        canvas.circle(goal.x, goal.y, 10);
-        
-        // Draw direction line
-        canvas.stroke(0, 150);
-        PVector dir = PVector.mult(velocity, 20);
-        canvas.line(position.x, position.y, position.x + dir.x, position.y + dir.y);
-        canvas.popStyle();
+        store.update(index, deltaTime);
     }
 
     // Getters and setters
-    public PVector getPosition() { return position.copy(); }
-    public PVector getVelocity() { return velocity.copy(); }
-    public PVector getGoal() { return goal.copy(); }
-    public float getRadius() { return radius; }
-    public float getMaxSpeed() { return maxSpeed; }
-    public void setVelocity(PVector velocity) { this.velocity = velocity.copy(); }
-    public void setColor(int color) { this.color = color; }
-    
+    public AgentStore getStore() { return store; }
+    public int getIndex() { return index; }
+    public PVector getPosition() { return new PVector(store.getX(index), store.getY(index)); }
+    public PVector getVelocity() { return new PVector(store.getVelocityX(index), store.getVelocityY(index)); }
+    public PVector getGoal() { return new PVector(store.getGoalX(index), store.getGoalY(index)); }
+    public float getRadius() { return store.getRadius(index); }
+    public float getMaxSpeed() { return store.getMaxSpeed(index); }
+    public void setVelocity(PVector velocity) { store.setVelocity(index, velocity.x, velocity.y); }
+
     // Benchmarking getters
-    public float getDistanceTraveled() { return distanceTraveled; }
-    public int getCollisions() { return collisions; }
-    public boolean hasReachedGoal() { return reachedGoal; }
-    public float getTimeToGoal() { return timeToGoal; }
-    public void incrementCollisions() { collisions++; }
-}
\ No newline at end of file
+    public float getDistanceTraveled() { return store.getDistanceTraveled(index); }
+    public int getCollisions() { return store.getCollisions(index); }
+    public boolean hasReachedGoal() { return store.hasReachedGoal(index); }
+    public float getTimeToGoal() { return store.getTimeToGoal(index); }
+    public void incrementCollisions() { store.incrementCollisions(index); }
+}
@@ -0,0 +1,139 @@
+package crowd_simulation;
+
+import java.util.Arrays;
+
+import processing.core.PApplet;
+
+// Draws every agent from snapshot arrays in a few shape batches instead of one styled draw per agent
+public class AgentRenderer {
+    public static final int DEFAULT_DETAIL_LIMIT = 2000;
+    public static final int DEFAULT_DOT_LIMIT = 20000;
+    private static final int DOT_SIZE = 3;
+
+    private final float[] goalX;
+    private final float[] goalY;
+    private final float[] radius;
+    private final int[] colors;
+    // Above this many agents, outlines, goal markers and heading lines are skipped
+    private int detailLimit = DEFAULT_DETAIL_LIMIT;
+    // Above this many agents, bodies are written straight into the pixel buffer as small dots
+    private int dotLimit = DEFAULT_DOT_LIMIT;
+
+    // Copies the static columns, so the store may keep stepping on another thread
+    public AgentRenderer(AgentStore store) {
+        int count = store.size();
+        goalX = new float[count];
+        goalY = new float[count];
+        radius = new float[count];
+        colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            goalX[i] = store.getGoalX(i);
+            goalY[i] = store.getGoalY(i);
+            radius[i] = store.getRadius(i);
+        }
+        Arrays.fill(colors, 0xFF6496FF); // rgb(100, 150, 255)
+    }
+
+    // Draws each agent at t between its previous and latest snapshot state
+    public void draw(PApplet canvas, PositionSnapshot previous, PositionSnapshot latest, float t) {
+        int count = Math.min(latest.size(), radius.length);
+        if (count > dotLimit) {
+            drawDots(canvas, previous, latest, t, count);
+            return;
+        }
+        boolean detailed = count <= detailLimit;
+
+        canvas.pushStyle();
+        canvas.noFill();
+        canvas.strokeCap(PApplet.ROUND);
+
+        if (detailed) {
+            // Goals
+            canvas.stroke(255, 0, 0, 100);
+            canvas.strokeWeight(10);
+            canvas.beginShape(PApplet.POINTS);
+            for (int i = 0; i < count; i++) {
+                canvas.vertex(goalX[i], goalY[i]);
+            }
+            canvas.endShape();
+
+            // Outlines, drawn as slightly larger black bodies underneath
+            canvas.stroke(0);
+            drawBodies(canvas, previous, latest, t, count, 2, false);
+        }
+
+        drawBodies(canvas, previous, latest, t, count, 0, true);
+
+        if (detailed) {
+            // Heading lines
+            canvas.stroke(0, 150);
+            canvas.strokeWeight(1);
+            canvas.beginShape(PApplet.LINES);
+            for (int i = 0; i < count; i++) {
+                float x = PApplet.lerp(previous.getX(i), latest.getX(i), t);
+                float y = PApplet.lerp(previous.getY(i), latest.getY(i), t);
+                float velocityX = PApplet.lerp(previous.getVelocityX(i), latest.getVelocityX(i), t);
+                float velocityY = PApplet.lerp(previous.getVelocityY(i), latest.getVelocityY(i), t);
+                canvas.vertex(x, y);
+                canvas.vertex(x + velocityX * 20, y + velocityY * 20);
+            }
+            canvas.endShape();
+        }
+
+        canvas.popStyle();
+    }
+
+    // Round points as wide as the agent; style calls are only made when radius or color changes
+    private void drawBodies(PApplet canvas, PositionSnapshot previous, PositionSnapshot latest, float t,
+                            int count, float extraWidth, boolean colored) {
+        float weight = -1;
+        int color = 0;
+
+        canvas.beginShape(PApplet.POINTS);
+        for (int i = 0; i < count; i++) {
+            float width = radius[i] * 2 + extraWidth;
+            if (width != weight) {
+                weight = width;
+                canvas.strokeWeight(weight);
+            }
+            if (colored && (i == 0 || colors[i] != color)) {
+                color = colors[i];
+                canvas.stroke(color);
+            }
+            canvas.vertex(PApplet.lerp(previous.getX(i), latest.getX(i), t),
+                    PApplet.lerp(previous.getY(i), latest.getY(i), t));
+        }
+        canvas.endShape();
+    }
+
+    private void drawDots(PApplet canvas, PositionSnapshot previous, PositionSnapshot latest, float t, int count) {
+        canvas.loadPixels();
+        int[] pixels = canvas.pixels;
+        int width = canvas.g.pixelWidth;
+        int height = canvas.g.pixelHeight;
+        float scale = canvas.g.pixelDensity;
+
+        for (int i = 0; i < count; i++) {
+            int left = (int) (PApplet.lerp(previous.getX(i), latest.getX(i), t) * scale) - DOT_SIZE / 2;
+            int top = (int) (PApplet.lerp(previous.getY(i), latest.getY(i), t) * scale) - DOT_SIZE / 2;
+            if (left < 0 || top < 0 || left + DOT_SIZE > width || top + DOT_SIZE > height) continue;
+
+            int color = colors[i];
+            for (int row = top; row < top + DOT_SIZE; row++) {
+                int offset = row * width + left;
+                for (int column = 0; column < DOT_SIZE; column++) {
+                    pixels[offset + column] = color;
+                }
+            }
+        }
+        canvas.updatePixels();
+    }
+
+    public void setColor(int color) { Arrays.fill(colors, color); }
+    public void setColor(int i, int color) { colors[i] = color; }
+    public void setDetailLimit(int detailLimit) { this.detailLimit = detailLimit; }
+    public int getDetailLimit() { return detailLimit; }
+    public void setDotLimit(int dotLimit) { this.dotLimit = dotLimit; }
+    public int getDotLimit() { return dotLimit; }
+    public boolean isDetailed() { return radius.length <= detailLimit; }
+}
@@ -0,0 +1,273 @@
+package crowd_simulation;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Agent state in primitive columns on the heap; OffHeapAgentStore keeps the same state in native memory
+public class AgentStore {
+    public static final float DEFAULT_RADIUS = 12.5f;
+    public static final float DEFAULT_MAX_SPEED = 2.0f;
+
+    private int size = 0;
+
+    // One primitive column per field, indexed by agent
+    private float[] positionX;
+    private float[] positionY;
+    private float[] velocityX;
+    private float[] velocityY;
+    // Velocities written during a double-buffered step, swapped in afterwards
+    private float[] nextVelocityX;
+    private float[] nextVelocityY;
+    private float[] goalX;
+    private float[] goalY;
+    private float[] radius;
+    private float[] maxSpeed;
+
+    // Benchmark columns
+    private float[] distanceTraveled;
+    private int[] collisions;
+    private boolean[] reachedGoal;
+    private float[] timeToGoal;
+
+    // Agents still heading for their goal, in index order; finished ones only stand still as obstacles
+    private int[] active;
+    private int activeCount = 0;
+    private boolean activeStale = false;
+    private int reachedGoalCount = 0;
+    private int totalCollisions = 0;
+
+    public AgentStore() {
+        this(16);
+    }
+
+    public AgentStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        positionX = new float[capacity];
+        positionY = new float[capacity];
+        velocityX = new float[capacity];
+        velocityY = new float[capacity];
+        nextVelocityX = new float[capacity];
+        nextVelocityY = new float[capacity];
+        goalX = new float[capacity];
+        goalY = new float[capacity];
+        radius = new float[capacity];
+        maxSpeed = new float[capacity];
+        distanceTraveled = new float[capacity];
+        collisions = new int[capacity];
+        reachedGoal = new boolean[capacity];
+        timeToGoal = new float[capacity];
+        active = new int[capacity];
+    }
+
+    // Returns the store backing a list of agent views, in index order
+    public static AgentStore of(List<Agent> agents) {
+        if (agents.isEmpty()) {
+            return new AgentStore();
+        }
+
+        AgentStore store = agents.get(0).getStore();
+        if (store.size() != agents.size()) {
+            throw new IllegalArgumentException("Agent list does not cover the whole store");
+        }
+        for (int i = 0; i < agents.size(); i++) {
+            Agent agent = agents.get(i);
+            if (agent.getStore() != store || agent.getIndex() != i) {
+                throw new IllegalArgumentException("Agent list is not in store order at index " + i);
+            }
+        }
+        return store;
+    }
+
+    public int add(float x, float y, float goalX, float goalY) {
+        return add(x, y, goalX, goalY, DEFAULT_RADIUS, DEFAULT_MAX_SPEED);
+    }
+
+    public int add(float x, float y, float goalX, float goalY, float radius, float maxSpeed) {
+        if (size == positionX.length) {
+            grow(size * 2);
+        }
+
+        int i = size++;
+        positionX[i] = x;
+        positionY[i] = y;
+        velocityX[i] = 0;
+        velocityY[i] = 0;
+        this.goalX[i] = goalX;
+        this.goalY[i] = goalY;
+        this.radius[i] = radius;
+        this.maxSpeed[i] = maxSpeed;
+        distanceTraveled[i] = 0;
+        collisions[i] = 0;
+        reachedGoal[i] = false;
+        timeToGoal[i] = 0;
+        activate(i);
+        return i;
+    }
+
+    // Adds an agent that the others steer around but that is neither steered nor moved itself, like a
+    // neighboring shard's agent near the border
+    public int addPassive(float x, float y, float vx, float vy, float radius, float maxSpeed) {
+        int i = add(x, y, x, y, radius, maxSpeed);
+        // add put it last on the active list
+        activeCount--;
+        setVelocity(i, vx, vy);
+        setNextVelocity(i, vx, vy);
+        return i;
+    }
+
+    public void update(float deltaTime) {
+        int count = getActiveCount();
+        for (int k = 0; k < count; k++) {
+            update(active[k], deltaTime);
+        }
+        removeFinished();
+    }
+
+    public void update(int i, float deltaTime) {
+        float stepX = velocityX[i] * deltaTime;
+        float stepY = velocityY[i] * deltaTime;
+        positionX[i] += stepX;
+        positionY[i] += stepY;
+
+        // Calculate distance traveled for benchmarking
+        distanceTraveled[i] += (float) Math.sqrt(stepX * stepX + stepY * stepY);
+
+        // Check if reached goal
+        if (!reachedGoal[i]) {
+            float dx = goalX[i] - positionX[i];
+            float dy = goalY[i] - positionY[i];
+            if (dx * dx + dy * dy < radius[i] * radius[i]) {
+                reachedGoal[i] = true;
+                countReachedGoal();
+                // Finished agents are no longer updated, so both velocity buffers must stay at rest
+                velocityX[i] = velocityY[i] = 0;
+                nextVelocityX[i] = nextVelocityY[i] = 0;
+            }
+        }
+
+        if (!reachedGoal[i]) {
+            timeToGoal[i] += deltaTime;
+        }
+    }
+
+    // Drops agents that reached their goal from the active list, keeping index order
+    private void removeFinished() {
+        if (!activeStale) return;
+
+        int kept = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int i = active[k];
+            if (!hasReachedGoal(i)) {
+                active[kept++] = i;
+            }
+        }
+        activeCount = kept;
+        activeStale = false;
+    }
+
+    // Bookkeeping shared with other storage: a new agent joins the active list, a finished one
+    // leaves it at the next compaction, and collisions add to the running total
+    protected final void activate(int i) {
+        if (activeCount == active.length) {
+            active = Arrays.copyOf(active, Math.max(16, activeCount * 2));
+        }
+        active[activeCount++] = i;
+    }
+
+    protected final void countReachedGoal() {
+        reachedGoalCount++;
+        activeStale = true;
+    }
+
+    protected final void countCollisions(int count) {
+        totalCollisions += count;
+    }
+
+    // Copies the starting state (position, goal, radius and max speed) of every agent in source
+    public void addAll(AgentStore source) {
+        ensureCapacity(size() + source.size());
+        for (int i = 0; i < source.size(); i++) {
+            add(source.getX(i), source.getY(i), source.getGoalX(i), source.getGoalY(i),
+                    source.getRadius(i), source.getMaxSpeed(i));
+        }
+    }
+
+    // Carries over the progress of an agent that moved in from another store
+    public void setProgress(int i, float distanceTraveled, int collisions, boolean reachedGoal, float timeToGoal) {
+        this.distanceTraveled[i] = distanceTraveled;
+        countCollisions(collisions - this.collisions[i]);
+        this.collisions[i] = collisions;
+        this.timeToGoal[i] = timeToGoal;
+        if (reachedGoal && !this.reachedGoal[i]) {
+            this.reachedGoal[i] = true;
+            countReachedGoal();
+        }
+    }
+
+    // Publishes the velocities written with setNextVelocity
+    public void swapVelocities() {
+        float[] swapX = velocityX;
+        float[] swapY = velocityY;
+        velocityX = nextVelocityX;
+        velocityY = nextVelocityY;
+        nextVelocityX = swapX;
+        nextVelocityY = swapY;
+    }
+
+    // Reserves room for at least capacity agents, e.g. before a bulk load
+    public void ensureCapacity(int capacity) {
+        if (capacity > positionX.length) {
+            grow(capacity);
+        }
+        if (capacity > active.length) {
+            active = Arrays.copyOf(active, capacity);
+        }
+    }
+
+    private void grow(int capacity) {
+        positionX = Arrays.copyOf(positionX, capacity);
+        positionY = Arrays.copyOf(positionY, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        nextVelocityX = Arrays.copyOf(nextVelocityX, capacity);
+        nextVelocityY = Arrays.copyOf(nextVelocityY, capacity);
+        goalX = Arrays.copyOf(goalX, capacity);
+        goalY = Arrays.copyOf(goalY, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        maxSpeed = Arrays.copyOf(maxSpeed, capacity);
+        distanceTraveled = Arrays.copyOf(distanceTraveled, capacity);
+        collisions = Arrays.copyOf(collisions, capacity);
+        reachedGoal = Arrays.copyOf(reachedGoal, capacity);
+        timeToGoal = Arrays.copyOf(timeToGoal, capacity);
+    }
+
+    // Getters and setters
+    public int size() { return size; }
+    public float getX(int i) { return positionX[i]; }
+    public float getY(int i) { return positionY[i]; }
+    public float getVelocityX(int i) { return velocityX[i]; }
+    public float getVelocityY(int i) { return velocityY[i]; }
+    public float getGoalX(int i) { return goalX[i]; }
+    public float getGoalY(int i) { return goalY[i]; }
+    public float getRadius(int i) { return radius[i]; }
+    public float getMaxSpeed(int i) { return maxSpeed[i]; }
+    public void setVelocity(int i, float vx, float vy) { velocityX[i] = vx; velocityY[i] = vy; }
+    public void setNextVelocity(int i, float vx, float vy) { nextVelocityX[i] = vx; nextVelocityY[i] = vy; }
+
+    // Active agents are getActiveAgent(0) .. getActiveAgent(getActiveCount() - 1)
+    public int getActiveCount() {
+        removeFinished();
+        return activeCount;
+    }
+    public int getActiveAgent(int k) { return active[k]; }
+
+    // Benchmarking getters
+    public float getDistanceTraveled(int i) { return distanceTraveled[i]; }
+    public int getCollisions(int i) { return collisions[i]; }
+    public boolean hasReachedGoal(int i) { return reachedGoal[i]; }
+    public float getTimeToGoal(int i) { return timeToGoal[i]; }
+    public void incrementCollisions(int i) { collisions[i]++; countCollisions(1); }
+    public int getReachedGoalCount() { return reachedGoalCount; }
+    public int getTotalCollisions() { return totalCollisions; }
+    public boolean isFinished() { return reachedGoalCount == size(); }
+}
@@ -1,16 +1,28 @@
 package crowd_simulation;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
 
 import crowd_simulation.algorithms.Boid;
 import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.DensityField;
+import crowd_simulation.algorithms.FlowFieldNavigator;
 import crowd_simulation.algorithms.Ghost;
+import crowd_simulation.algorithms.Obstacles;
+import crowd_simulation.algorithms.ParallelExecutor;
 import crowd_simulation.algorithms.Scout;
+import crowd_simulation.algorithms.UpdateScheduler;
 import processing.core.PApplet;
 
 public class App extends PApplet {
-    private List<Agent> agents;
+    private static final Path TRAJECTORY_FILE = Path.of("trajectory.bin");
+    private static final Path PHASE_TIMINGS_FILE = Path.of("phase-timings.csv");
+    private static final Path CHECKPOINT_FILE = Path.of("checkpoint.bin");
+
+    private AgentStore store;
+    private AgentRenderer renderer;
+    private SimulationEngine engine;
+    private SimulationThread simulation;
     private CrowdAlgorithm currentAlgorithm;
     private Benchmark benchmark;
     
@@ -20,10 +32,27 @@ public class App extends PApplet {
     private Scout scout;
     
     // Simulation parameters
-    private final int agentCount = 20;
+    private int agentCount = 20;
+    // Scenario file given on the command line, reloaded on every reset
+    private Path scenarioFile;
+    private Scenario scenario;
+    // Walls of the current scenario, drawn under the agents; null without a scenario
+    private Obstacles obstacles;
     private boolean isRunning = false;
     private boolean showBenchmark = false;
-    private float lastTime;
+    private boolean parallel = false;
+    private boolean levelOfDetail = false;
+    private boolean hybrid = false;
+    private int detailLimit = AgentRenderer.DEFAULT_DETAIL_LIMIT;
+    private boolean recording = false;
+    private TrajectoryRecorder recorder;
+    
+    // Replay state, set while a recorded trajectory is shown instead of the simulation
+    private TrajectoryReader replay;
+    private AgentRenderer replayRenderer;
+    private final PositionSnapshot replaySnapshot = new PositionSnapshot();
+    private int replayFrame = 0;
+    private boolean replayPlaying = false;
     
     // GUI state
     private int currentAlgorithmIndex = 0;
@@ -42,40 +71,52 @@ public class App extends PApplet {
         boid = new Boid();
         scout = new Scout();
         currentAlgorithm = ghost;
+        if (args != null && args.length > 0) {
+            scenarioFile = Path.of(args[0]);
+            scenario = loadScenario();
+            if (scenario != null) {
+                selectScenarioAlgorithm(scenario);
+            }
+        }
         
         // Initialize benchmark system
         benchmark = new Benchmark();
         
         // Initialize simulation
         resetSimulation();
-        lastTime = millis();
     }
 
     @Override
     public void draw() {
+        long frameStart = System.nanoTime();
+        PhaseTimer timer = isRunning ? benchmark.getPhaseTimer() : null;
         background(255);
         
-        float currentTime = millis();
-        float deltaTime = (currentTime - lastTime) / 1000.0f; // Convert to seconds
-        lastTime = currentTime;
-        
-        if (isRunning) {
-            // Update agents using current algorithm
-            currentAlgorithm.updateAgents(agents, deltaTime);
-            
-            // Update agent positions
-            for (Agent agent : agents) {
-                agent.update(deltaTime);
-            }
+        if (replay != null) {
+            drawReplay();
+            drawGUI();
+            return;
         }
         
+        // The simulation steps on its own thread; draw between its two latest snapshots
+        simulation.pollSnapshot();
+        PositionSnapshot previous = simulation.getPreviousSnapshot();
+        PositionSnapshot latest = simulation.getLatestSnapshot();
+        float t = simulation.getInterpolation(System.nanoTime());
+        
         // Draw agents
-        for (Agent agent : agents) {
-            agent.draw();
-        }
+        long drawStart = System.nanoTime();
+        drawObstacles();
+        renderer.draw(this, previous, latest, t);
+        if (timer != null) timer.recordSince(PhaseTimer.Phase.DRAW, drawStart);
         
         // Draw GUI
+        long guiStart = System.nanoTime();
         drawGUI();
+        if (timer != null) {
+            timer.recordSince(PhaseTimer.Phase.GUI, guiStart);
+            timer.recordSince(PhaseTimer.Phase.FRAME, frameStart);
+        }
         
         // Check if simulation should end (all agents reached goal or timeout)
         if (isRunning && checkSimulationEnd()) {
@@ -83,6 +124,21 @@ public class App extends PApplet {
         }
     }
     
+    private void drawReplay() {
+        try {
+            replay.readFrame(replayFrame, replaySnapshot);
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            closeReplay();
+            return;
+        }
+        replayRenderer.draw(this, replaySnapshot, replaySnapshot, 1);
+        
+        if (replayPlaying && replayFrame < replay.getFrameCount() - 1) {
+            replayFrame++;
+        }
+    }
+    
     private void drawGUI() {
         // Draw control panel
         fill(240);
@@ -101,29 +157,33 @@ public class App extends PApplet {
         text("SPACE - Start/Stop", width - 290, 120);
         text("R - Reset", width - 290, 140);
         text("A - Next Algorithm", width - 290, 160);
-        text("B - Toggle Benchmark", width - 290, 180);
-        text("C - Clear Benchmark", width - 290, 200);
+        text("B / C - Toggle / Clear Benchmark", width - 290, 180);
+        text("K / J - Save / Restore Checkpoint", width - 290, 200);
+        text("P / D / H - Toggle Parallel / Level of Detail / Hybrid", width - 290, 220);
+        text("L - Toggle Detail Limit", width - 290, 240);
+        text("V - Toggle Recording", width - 290, 260);
+        text("Y - Replay (arrows seek, drag to scrub)", width - 290, 280);
         
         // Simulation info
-        text("Agents: " + agentCount, width - 290, 240);
-        text("Status: " + (isRunning ? "Running" : "Stopped"), width - 290, 260);
-        
-        // Agent statistics
-        int reachedGoal = 0;
-        int totalCollisions = 0;
-        for (Agent agent : agents) {
-            if (agent.hasReachedGoal()) reachedGoal++;
-            totalCollisions += agent.getCollisions();
-        }
+        text("Agents: " + agentCount + (renderer.isDetailed() ? "" : " (low detail)"), width - 290, 300);
+        String status = replay != null ? "Replay " + (replayFrame + 1) + "/" + replay.getFrameCount()
+                : isRunning ? "Running" : "Stopped";
+        text("Status: " + status + (recording ? " (recording)" : ""), width - 290, 320);
+        text("Mode: " + (parallel ? "Parallel" : "Sequential") + (levelOfDetail ? ", LOD" : "")
+                + (hybrid && currentAlgorithm instanceof Scout ? ", Hybrid" : ""), width - 290, 340);
         
-        text("Reached Goal: " + reachedGoal + "/" + agentCount, width - 290, 300);
-        text("Total Collisions: " + totalCollisions, width - 290, 320);
+        // Agent statistics, counted by the simulation thread or read from the replayed frame
+        PositionSnapshot latest = replay != null ? replaySnapshot : simulation.getLatestSnapshot();
+        text("Reached Goal: " + latest.getAgentsReachedGoal() + "/" + latest.size(), width - 290, 360);
+        text("Total Collisions: " + latest.getTotalCollisions(), width - 290, 380);
+        text(String.format("Simulation: %.0f Hz  Render: %.0f FPS", simulation.getStepsPerSecond(), frameRate),
+                width - 290, 400);
         
         // Benchmark results
         if (showBenchmark) {
-            text("Benchmark Results:", width - 290, 360);
+            text("Benchmark Results:", width - 290, 420);
             String[] lines = benchmark.getComparisonReport().split("\n");
-            int y = 380;
+            int y = 440;
             for (String line : lines) {
                 if (y > height - 20) break;
                 text(line, width - 290, y);
@@ -131,74 +191,288 @@ public class App extends PApplet {
             }
         }
         
+        // Agents per update tier of the current algorithm
+        UpdateScheduler scheduler = currentAlgorithm == ghost ? ghost.getUpdateScheduler()
+                : currentAlgorithm == boid ? boid.getUpdateScheduler() : scout.getUpdateScheduler();
+        if (scheduler != null) {
+            textSize(12);
+            text("LOD tiers " + scheduler.getTierReport(), width - 290, 480);
+            textSize(16);
+        }
+
         // Parameter adjustment for reactive algorithm
         if (currentAlgorithm instanceof Boid) {
-            text("Boids Parameters:", width - 290, 450);
-            text("1-5: Adjust weights", width - 290, 470);
-            text("Q/W: Separation radius", width - 290, 490);
+            text("Boids Parameters:", width - 290, 500);
+            text("1-5: Adjust weights", width - 290, 520);
+            text("Q/W: Separation radius", width - 290, 540);
+            text(String.format("Neighbor list rebuilds: %.1f%%", boid.getNeighborLists().getRebuildRate() * 100),
+                    width - 290, 560);
+        } else if (currentAlgorithm instanceof Scout) {
+            text("Scout Parameters:", width - 290, 500);
+            text("O: Toggle ORCA", width - 290, 520);
+            text(String.format("Neighbor list rebuilds: %.1f%%", scout.getNeighborLists().getRebuildRate() * 100),
+                    width - 290, 540);
+        }
+        
+        // Live phase latencies of the current run
+        PhaseTimer timer = benchmark.getPhaseTimer();
+        if (!showBenchmark && timer != null) {
+            text("Phase Timings:", width - 290, 580);
+            textSize(12);
+            int y = 600;
+            for (String line : timer.getReport().split("\n")) {
+                text(line, width - 290, y);
+                y += 15;
+            }
+            textSize(16);
+        }
+    }
+    
+    private void drawObstacles() {
+        if (obstacles == null) return;
+        
+        fill(160);
+        noStroke();
+        for (int r = 0; r < obstacles.getRectCount(); r++) {
+            rect(obstacles.getRect(r, 0), obstacles.getRect(r, 1),
+                    obstacles.getRect(r, 2) - obstacles.getRect(r, 0), obstacles.getRect(r, 3) - obstacles.getRect(r, 1));
+        }
+        for (int d = 0; d < obstacles.getDiskCount(); d++) {
+            ellipse(obstacles.getDisk(d, 0), obstacles.getDisk(d, 1), obstacles.getDisk(d, 2) * 2, obstacles.getDisk(d, 2) * 2);
         }
     }
     
     private boolean checkSimulationEnd() {
         // End if all agents reached goal
-        for (Agent agent : agents) {
-            if (!agent.hasReachedGoal()) {
-                return false;
-            }
-        }
-        return true;
+        return simulation.isFinished();
     }
     
     private void resetSimulation() {
-        agents = new ArrayList<>();
+        closeRecorder();
         
-        // Create agents in a circle formation with goals on opposite side
-        float centerX = (width - 300) / 2; // Account for GUI panel
-        float centerY = height / 2;
-        float radius = 150;
+        // The scenario loaded at startup is used once; later resets read the file again
+        Scenario loaded = scenario != null ? scenario : loadScenario();
+        scenario = null;
+        store = loaded != null ? loaded.getStore() : null;
+        if (store == null) {
+            // Create agents in a circle formation with goals on opposite side
+            float centerX = (width - 300) / 2; // Account for GUI panel
+            float centerY = height / 2;
+            store = Scenarios.circle(agentCount, centerX, centerY, 150);
+        }
         
-        for (int i = 0; i < agentCount; i++) {
-            float angle = (float)(i * (Math.PI * 2 / agentCount));
-            float startX = centerX + radius * cos(angle);
-            float startY = centerY + radius * sin(angle);
-            
-            // Goal is on opposite side
-            float goalX = centerX - radius * cos(angle);
-            float goalY = centerY - radius * sin(angle);
-            
-            Agent agent = new Agent(this, startX, startY, goalX, goalY);
-            
-            // Set different colors for different algorithms
-            if (currentAlgorithm instanceof Ghost) {
-                agent.setColor(color(255, 100, 100));
-            } else if (currentAlgorithm instanceof Ghost) {
-                agent.setColor(color(100, 255, 100));
-            } else {
-                agent.setColor(color(100, 100, 255));
-            }
-            
-            agents.add(agent);
+        // All algorithms share the scenario's flow fields, so switching keeps the paths
+        FlowFieldNavigator navigator = loaded != null ? loaded.createNavigator() : null;
+        obstacles = navigator != null ? navigator.getObstacles() : null;
+        ghost.setNavigator(navigator);
+        boid.setNavigator(navigator);
+        scout.setNavigator(navigator);
+        useEngine(new SimulationEngine(store, currentAlgorithm));
+    }
+    
+    private void useEngine(SimulationEngine engine) {
+        this.engine = engine;
+        store = engine.getStore();
+        agentCount = store.size();
+        simulation = new SimulationThread(engine);
+        renderer = new AgentRenderer(store);
+        renderer.setDetailLimit(detailLimit);
+        
+        // Set different colors for different algorithms
+        if (currentAlgorithm instanceof Ghost) {
+            renderer.setColor(color(255, 100, 100));
+        } else if (currentAlgorithm instanceof Ghost) {
+            renderer.setColor(color(100, 255, 100));
+        } else {
+            renderer.setColor(color(100, 100, 255));
         }
         
         isRunning = false;
     }
     
+    // Saved between two steps, so a running simulation carries on
+    private void saveCheckpoint() {
+        SimulationEngine saved = engine;
+        simulation.execute(() -> {
+            try {
+                Checkpoint.write(saved, CHECKPOINT_FILE);
+            } catch (IOException e) {
+                System.err.println("Saving checkpoint failed: " + e.getMessage());
+            }
+        });
+    }
+    
+    // Replaces the run with the saved one, which brings its own algorithm, parameters and settings
+    private void restoreCheckpoint() {
+        SimulationEngine restored;
+        try {
+            restored = Checkpoint.read(CHECKPOINT_FILE);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Restoring checkpoint failed: " + e.getMessage());
+            return;
+        }
+        stopSimulation();
+        closeRecorder();
+        
+        FlowFieldNavigator navigator;
+        UpdateScheduler scheduler;
+        if (restored.getAlgorithm() instanceof Boid restoredBoid) {
+            boid = restoredBoid;
+            currentAlgorithmIndex = 1;
+            navigator = boid.getNavigator();
+            scheduler = boid.getUpdateScheduler();
+        } else if (restored.getAlgorithm() instanceof Scout restoredScout) {
+            scout = restoredScout;
+            currentAlgorithmIndex = 2;
+            navigator = scout.getNavigator();
+            scheduler = scout.getUpdateScheduler();
+            hybrid = scout.getDensityField() != null;
+        } else {
+            ghost = (Ghost) restored.getAlgorithm();
+            currentAlgorithmIndex = 0;
+            navigator = ghost.getNavigator();
+            scheduler = ghost.getUpdateScheduler();
+        }
+        currentAlgorithm = restored.getAlgorithm();
+        currentAlgorithm.setParallelExecutor(parallel ? new ParallelExecutor() : null);
+        levelOfDetail = scheduler != null;
+        obstacles = navigator != null ? navigator.getObstacles() : null;
+        useEngine(restored);
+    }
+    
+    // Returns null when there is no scenario file or it cannot be loaded
+    private Scenario loadScenario() {
+        if (scenarioFile == null) return null;
+        
+        try {
+            return ScenarioLoader.load(scenarioFile);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Loading scenario failed: " + e.getMessage());
+            scenarioFile = null;
+            return null;
+        }
+    }
+    
+    // Starts on the algorithm the scenario asks for, with its parameters
+    private void selectScenarioAlgorithm(Scenario scenario) {
+        String name = scenario.getAlgorithm();
+        currentAlgorithmIndex = name.startsWith("boid") ? 1 : name.startsWith("scout") ? 2 : 0;
+        currentAlgorithm = switch (currentAlgorithmIndex) {
+            case 1 -> boid;
+            case 2 -> scout;
+            default -> ghost;
+        };
+        if (name.equals("scout-orca")) {
+            scout.setMode(Scout.Mode.ORCA);
+        }
+        scenario.applyParameters(currentAlgorithm);
+    }
+    
     private void startSimulation() {
         if (!isRunning) {
             isRunning = true;
             benchmark.startBenchmark(currentAlgorithm.toString());
+            engine.setPhaseTimer(benchmark.getPhaseTimer());
+            if (recording && recorder == null) {
+                openRecorder();
+            }
+            simulation.start();
         }
     }
     
     private void stopSimulation() {
         if (isRunning) {
             isRunning = false;
-            benchmark.endBenchmark(agents);
+            simulation.stop();
+            benchmark.endBenchmark(store);
+            try {
+                benchmark.exportPhaseTimings(PHASE_TIMINGS_FILE);
+            } catch (IOException e) {
+                System.err.println("Exporting phase timings failed: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void openRecorder() {
+        try {
+            recorder = new TrajectoryRecorder(TRAJECTORY_FILE, store, engine.getTimeStep());
+            simulation.setRecorder(recorder);
+        } catch (IOException e) {
+            System.err.println("Recording failed: " + e.getMessage());
+            recording = false;
+        }
+    }
+    
+    private void closeRecorder() {
+        if (recorder == null) return;
+        
+        simulation.setRecorder(null);
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            System.err.println("Closing recording failed: " + e.getMessage());
+        }
+        recorder = null;
+    }
+    
+    private void openReplay() {
+        stopSimulation();
+        closeRecorder();
+        try {
+            replay = new TrajectoryReader(TRAJECTORY_FILE);
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            return;
+        }
+        if (replay.getFrameCount() == 0) {
+            closeReplay();
+            return;
+        }
+        replayRenderer = new AgentRenderer(replay.getAgents());
+        replayRenderer.setDetailLimit(detailLimit);
+        replayFrame = 0;
+        replayPlaying = true;
+    }
+    
+    private void closeReplay() {
+        try {
+            replay.close();
+        } catch (IOException e) {
+            System.err.println("Closing replay failed: " + e.getMessage());
+        }
+        replay = null;
+        replayRenderer = null;
+    }
+    
+    private void seekReplay(int frame) {
+        replayFrame = constrain(frame, 0, replay.getFrameCount() - 1);
+    }
+    
+    @Override
+    public void mouseDragged() {
+        // Scrub through the replay by dragging across the simulation area
+        if (replay != null && mouseX < width - 300) {
+            seekReplay(round(map(mouseX, 0, width - 300, 0, replay.getFrameCount() - 1)));
+            replayPlaying = false;
         }
     }
     
     @Override
     public void keyPressed() {
+        if (replay != null) {
+            // Replay keys; any frame is read straight from the file, nothing is re-simulated
+            if (key == CODED && keyCode == LEFT) {
+                seekReplay(replayFrame - 1);
+            } else if (key == CODED && keyCode == RIGHT) {
+                seekReplay(replayFrame + 1);
+            } else if (key == ' ') {
+                replayPlaying = !replayPlaying;
+            } else if (key == 'y' || key == 'Y') {
+                closeReplay();
+            }
+            return;
+        }
+        
         switch (key) {
             case ' ' -> {
                 // Space - Start/Stop
@@ -226,38 +500,90 @@ public class App extends PApplet {
                 resetSimulation();
             }
                 
+            case 'l', 'L' -> {
+                // Toggle between the default detail limit and always drawing full detail
+                detailLimit = detailLimit == AgentRenderer.DEFAULT_DETAIL_LIMIT
+                        ? Integer.MAX_VALUE : AgentRenderer.DEFAULT_DETAIL_LIMIT;
+                renderer.setDetailLimit(detailLimit);
+            }
+            case 'v', 'V' -> {
+                // Record the next run to the trajectory file
+                if (!isRunning) {
+                    recording = !recording;
+                    if (!recording) {
+                        closeRecorder();
+                    }
+                }
+            }
+            case 'y', 'Y' -> openReplay();
+            case 'k', 'K' -> saveCheckpoint();
+            case 'j', 'J' -> restoreCheckpoint();
             case 'b', 'B' -> // Toggle benchmark display
                 showBenchmark = !showBenchmark;
             case 'c', 'C' -> // Clear benchmark
                 benchmark.clearResults();
+            case 'p', 'P' -> {
+                // Toggle parallel updates for all algorithms
+                parallel = !parallel;
+                ParallelExecutor executor = parallel ? new ParallelExecutor() : null;
+                simulation.execute(() -> {
+                    ghost.setParallelExecutor(executor);
+                    boid.setParallelExecutor(executor);
+                    scout.setParallelExecutor(executor);
+                });
+            }
+            case 'd', 'D' -> {
+                // Toggle level-of-detail scheduling, one scheduler per algorithm
+                levelOfDetail = !levelOfDetail;
+                boolean enabled = levelOfDetail;
+                simulation.execute(() -> {
+                    ghost.setUpdateScheduler(enabled ? new UpdateScheduler() : null);
+                    boid.setUpdateScheduler(enabled ? new UpdateScheduler() : null);
+                    scout.setUpdateScheduler(enabled ? new UpdateScheduler() : null);
+                });
+            }
+            case 'h', 'H' -> {
+                // Toggle Scout's density field for dense regions
+                hybrid = !hybrid;
+                boolean enabled = hybrid;
+                simulation.execute(() -> scout.setDensityField(enabled ? new DensityField() : null));
+            }
                 
+            // Parameter changes are applied by the simulation thread between steps
             case '1' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setSeparationWeight(1.0f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setSeparationWeight(1.0f));
             }
             case '2' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setSeparationWeight(2.0f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setSeparationWeight(2.0f));
             }
                 
             case '3' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setSeparationWeight(3.0f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setSeparationWeight(3.0f));
             }
             case '4' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setAlignmentWeight(2.0f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setAlignmentWeight(2.0f));
             }
             case '5' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setCohesionWeight(2.0f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setCohesionWeight(2.0f));
             }
             case 'q', 'Q' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setSeparationRadius(30f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setSeparationRadius(30f));
             }
             case 'w', 'W' -> {
-                if (currentAlgorithm instanceof Boid boid1) boid1.setSeparationRadius(70f);
+                if (currentAlgorithm instanceof Boid boid1) simulation.execute(() -> boid1.setSeparationRadius(70f));
+            }
+            case 'o', 'O' -> {
+                if (currentAlgorithm instanceof Scout scout1) {
+                    simulation.execute(() -> scout1.setMode(
+                            scout1.getMode() == Scout.Mode.ORCA ? Scout.Mode.RVO : Scout.Mode.ORCA));
+                }
             }
         }
         // Parameter adjustment for reactive algorithm
             }
 
     public static void main(String[] args) {
-        PApplet.main("crowd_simulation.App");
+        // An optional scenario file replaces the default 20-agent circle
+        PApplet.main("crowd_simulation.App", args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,303 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.Scout;
+
+// Runs every combination of algorithm, agent count, layout and parameters headless,
+// one single-threaded cell per core, and writes the results to CSV and JSON
+public class BatchRunner {
+    private static final String USAGE = "Usage: BatchRunner [--algorithms ghost,boid,scout,scout-orca] [--agents N,N]"
+            + " [--layouts circle,uniform] [--densities D,D] [--boid name=V,V;name=V] [--scout name=V,V]"
+            + " [--steps N] [--seed N] [--threads N] [--csv FILE] [--json FILE]";
+
+    // One configuration of the matrix
+    public static class Cell {
+        private final String algorithm;
+        private final int agentCount;
+        private final String layout;
+        private final float density;
+        private final Map<String, Float> parameters;
+        private final long seed;
+
+        public Cell(String algorithm, int agentCount, String layout, float density, Map<String, Float> parameters, long seed) {
+            this.algorithm = algorithm;
+            this.agentCount = agentCount;
+            this.layout = layout;
+            this.density = density;
+            this.parameters = parameters;
+            this.seed = seed;
+        }
+
+        AgentStore createScenario() {
+            return switch (layout) {
+                case "circle" -> Scenarios.circle(agentCount, 0, 0, Scenarios.circleRadiusFor(agentCount));
+                case "uniform" -> Scenarios.uniform(agentCount, density, seed);
+                default -> throw new IllegalArgumentException("Unknown layout: " + layout);
+            };
+        }
+
+        CrowdAlgorithm createAlgorithm() {
+            CrowdAlgorithm created = HeadlessRunner.createAlgorithm(algorithm);
+            parameters.forEach((name, value) -> applyParameter(created, name, value));
+            return created;
+        }
+
+        public String getAlgorithm() { return algorithm; }
+        public int getAgentCount() { return agentCount; }
+        public String getLayout() { return layout; }
+        public float getDensity() { return density; }
+        public Map<String, Float> getParameters() { return parameters; }
+        public long getSeed() { return seed; }
+    }
+
+    public static class CellResult {
+        private final Cell cell;
+        private final Benchmark.BenchmarkResult result;
+        private final long steps;
+        private final float simulatedTime;
+        private final double wallSeconds;
+
+        CellResult(Cell cell, Benchmark.BenchmarkResult result, long steps, float simulatedTime, double wallSeconds) {
+            this.cell = cell;
+            this.result = result;
+            this.steps = steps;
+            this.simulatedTime = simulatedTime;
+            this.wallSeconds = wallSeconds;
+        }
+
+        public Cell getCell() { return cell; }
+        public Benchmark.BenchmarkResult getResult() { return result; }
+        public long getSteps() { return steps; }
+        public float getSimulatedTime() { return simulatedTime; }
+        public double getWallSeconds() { return wallSeconds; }
+        public double getStepsPerSecond() { return wallSeconds > 0 ? steps / wallSeconds : 0; }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = HeadlessRunner.parseOptions(args);
+        List<Cell> cells = createMatrix(options);
+        long maxSteps = Long.parseLong(options.getOrDefault("steps", "1000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        System.out.printf("Running %d cells on %d threads%n", cells.size(), threads);
+        long start = System.nanoTime();
+        List<CellResult> results = run(cells, maxSteps, threads);
+        System.out.printf("Finished in %.1f seconds%n", (System.nanoTime() - start) / 1e9);
+
+        Path csv = Path.of(options.getOrDefault("csv", "batch-results.csv"));
+        Path json = Path.of(options.getOrDefault("json", "batch-results.json"));
+        writeCsv(results, csv);
+        writeJson(results, json);
+        System.out.printf("Wrote %s and %s%n", csv, json);
+    }
+
+    static List<Cell> createMatrix(Map<String, String> options) {
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        List<Map<String, Float>> boidParameters = parseParameterAxes(options.getOrDefault("boid", ""));
+        List<Map<String, Float>> scoutParameters = parseParameterAxes(options.getOrDefault("scout", ""));
+
+        List<Cell> cells = new ArrayList<>();
+        for (String algorithm : split(options.getOrDefault("algorithms", "ghost,boid,scout"))) {
+            List<Map<String, Float>> parameterSets = algorithm.startsWith("boid") ? boidParameters
+                    : algorithm.startsWith("scout") ? scoutParameters : List.of(Map.of());
+            for (String agents : split(options.getOrDefault("agents", "100,1000"))) {
+                for (String layout : split(options.getOrDefault("layouts", "circle"))) {
+                    // Density only shapes the uniform layout
+                    List<String> densities = layout.equals("uniform")
+                            ? split(options.getOrDefault("densities", "2")) : List.of("0");
+                    for (String density : densities) {
+                        for (Map<String, Float> parameters : parameterSets) {
+                            cells.add(new Cell(algorithm, Integer.parseInt(agents), layout,
+                                    Float.parseFloat(density), parameters, seed));
+                        }
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    // "a=1,2;b=3" becomes the cross product [{a=1,b=3}, {a=2,b=3}]
+    static List<Map<String, Float>> parseParameterAxes(String spec) {
+        List<Map<String, Float>> sets = new ArrayList<>();
+        sets.add(new LinkedHashMap<>());
+        for (String axis : spec.split(";")) {
+            if (axis.isBlank()) continue;
+
+            String[] nameAndValues = axis.split("=", 2);
+            if (nameAndValues.length != 2) {
+                throw new IllegalArgumentException("Expected name=values in " + axis + "\n" + USAGE);
+            }
+            List<Map<String, Float>> expanded = new ArrayList<>();
+            for (Map<String, Float> set : sets) {
+                for (String value : split(nameAndValues[1])) {
+                    Map<String, Float> next = new LinkedHashMap<>(set);
+                    next.put(nameAndValues[0].trim(), Float.parseFloat(value));
+                    expanded.add(next);
+                }
+            }
+            sets = expanded;
+        }
+        return sets;
+    }
+
+    static void applyParameter(CrowdAlgorithm algorithm, String name, float value) {
+        if (algorithm instanceof Boid boid) {
+            switch (name) {
+                case "separationRadius" -> boid.setSeparationRadius(value);
+                case "alignmentRadius" -> boid.setAlignmentRadius(value);
+                case "cohesionRadius" -> boid.setCohesionRadius(value);
+                case "separationWeight" -> boid.setSeparationWeight(value);
+                case "alignmentWeight" -> boid.setAlignmentWeight(value);
+                case "cohesionWeight" -> boid.setCohesionWeight(value);
+                case "goalWeight" -> boid.setGoalWeight(value);
+                default -> throw new IllegalArgumentException("Unknown Boid parameter: " + name);
+            }
+        } else if (algorithm instanceof Scout scout) {
+            switch (name) {
+                case "timeHorizon" -> scout.setTimeHorizon(value);
+                case "neighborDistance" -> scout.setNeighborDistance(value);
+                case "maxNeighbors" -> scout.setMaxNeighbors((int) value);
+                default -> throw new IllegalArgumentException("Unknown Scout parameter: " + name);
+            }
+        } else {
+            throw new IllegalArgumentException(algorithm + " has no parameter " + name);
+        }
+    }
+
+    // Results come back in matrix order, whatever order the cells finish in
+    public static List<CellResult> run(List<Cell> cells, long maxSteps, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<CellResult>> futures = new ArrayList<>();
+            for (Cell cell : cells) {
+                futures.add(pool.submit(() -> {
+                    CellResult result = runCell(cell, maxSteps);
+                    System.out.printf("%-12s %7d %-8s %5.1f %-30s %10.1f steps/s%n", cell.algorithm,
+                            cell.agentCount, cell.layout, cell.density, cell.parameters, result.getStepsPerSecond());
+                    return result;
+                }));
+            }
+
+            List<CellResult> results = new ArrayList<>();
+            for (Future<CellResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Batch cell failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static CellResult runCell(Cell cell, long maxSteps) {
+        AgentStore store = cell.createScenario();
+        SimulationEngine engine = new SimulationEngine(store, cell.createAlgorithm());
+
+        long start = System.nanoTime();
+        while (engine.getStepCount() < maxSteps && !engine.isFinished()) {
+            engine.step();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Benchmark.BenchmarkResult result = new Benchmark.BenchmarkResult(
+                engine.getAlgorithm().toString(), store, elapsed / 1_000_000);
+        return new CellResult(cell, result, engine.getStepCount(), engine.getSimulatedTime(), elapsed / 1e9);
+    }
+
+    static void writeCsv(List<CellResult> results, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("algorithm,agents,layout,density,parameters,seed,steps,simulated_seconds,wall_seconds,"
+                    + "steps_per_second,agent_steps_per_second,average_distance,total_collisions,"
+                    + "reached_goal,goal_percentage,average_time_to_goal\n");
+            for (CellResult cellResult : results) {
+                Cell cell = cellResult.cell;
+                Benchmark.BenchmarkResult result = cellResult.result;
+                StringBuilder parameters = new StringBuilder();
+                cell.parameters.forEach((name, value) ->
+                        parameters.append(parameters.length() > 0 ? ";" : "").append(name).append('=').append(value));
+                out.write(String.format(Locale.ROOT, "%s,%d,%s,%s,%s,%d,%d,%.4f,%.4f,%.2f,%.0f,%.4f,%d,%d,%.2f,%.4f\n",
+                        cell.algorithm, cell.agentCount, cell.layout, cell.density, parameters, cell.seed,
+                        cellResult.steps, cellResult.simulatedTime, cellResult.wallSeconds,
+                        cellResult.getStepsPerSecond(), cellResult.getStepsPerSecond() * cell.agentCount,
+                        result.getAverageDistanceTraveled(), result.getTotalCollisions(),
+                        result.getAgentsReachedGoal(), result.getGoalReachPercentage(), result.getAverageTimeToGoal()));
+            }
+        }
+    }
+
+    static void writeJson(List<CellResult> results, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                CellResult cellResult = results.get(i);
+                Cell cell = cellResult.cell;
+                Benchmark.BenchmarkResult result = cellResult.result;
+                StringBuilder parameters = new StringBuilder();
+                cell.parameters.forEach((name, value) -> parameters.append(parameters.length() > 0 ? ", " : "")
+                        .append(jsonString(name)).append(": ").append(value));
+                out.write(String.format(Locale.ROOT, "  {\"algorithm\": %s, \"agents\": %d, \"layout\": %s,"
+                                + " \"density\": %s, \"parameters\": {%s}, \"seed\": %d, \"steps\": %d,"
+                                + " \"simulatedSeconds\": %.4f, \"wallSeconds\": %.4f, \"stepsPerSecond\": %.2f,"
+                                + " \"averageDistance\": %.4f, \"totalCollisions\": %d, \"reachedGoal\": %d,"
+                                + " \"goalPercentage\": %.2f, \"averageTimeToGoal\": %.4f}%s\n",
+                        jsonString(cell.algorithm), cell.agentCount, jsonString(cell.layout), cell.density, parameters,
+                        cell.seed, cellResult.steps, cellResult.simulatedTime, cellResult.wallSeconds,
+                        cellResult.getStepsPerSecond(), result.getAverageDistanceTraveled(),
+                        result.getTotalCollisions(), result.getAgentsReachedGoal(), result.getGoalReachPercentage(),
+                        result.getAverageTimeToGoal(), i < results.size() - 1 ? "," : ""));
+            }
+            out.write("]\n");
+        }
+    }
+
+    // A quoted JSON string, for names that come from the command line or a request
+    static String jsonString(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            if (!value.isBlank()) values.add(value.trim());
+        }
+        return values;
+    }
+}
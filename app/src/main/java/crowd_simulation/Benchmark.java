@@ -1,5 +1,9 @@
 package crowd_simulation;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,6 +12,7 @@ public class Benchmark {
     private long startTime;
     private boolean isRunning;
     private String currentAlgorithm;
+    private PhaseTimer phaseTimer;
     
     public Benchmark() {
         this.results = new ArrayList<>();
@@ -17,16 +22,24 @@ public class Benchmark {
     public void startBenchmark(String algorithmName) {
         this.currentAlgorithm = algorithmName;
         this.startTime = System.currentTimeMillis();
+        this.phaseTimer = new PhaseTimer();
+        this.phaseTimer.startGcMonitoring();
         this.isRunning = true;
     }
     
     public void endBenchmark(List<Agent> agents) {
+        endBenchmark(AgentStore.of(agents));
+    }
+    
+    public void endBenchmark(AgentStore store) {
         if (!isRunning) return;
         
         long endTime = System.currentTimeMillis();
         long duration = endTime - startTime;
         
-        BenchmarkResult result = new BenchmarkResult(currentAlgorithm, agents, duration);
+        phaseTimer.stopGcMonitoring();
+        BenchmarkResult result = new BenchmarkResult(currentAlgorithm, store, duration);
+        result.phaseTimer = phaseTimer;
         results.add(result);
         
         isRunning = false;
@@ -40,6 +53,22 @@ public class Benchmark {
         results.clear();
     }
     
+    // Phase timings of the run in progress, or of the last run
+    public PhaseTimer getPhaseTimer() {
+        return phaseTimer;
+    }
+    
+    public void exportPhaseTimings(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write(PhaseTimer.getCsvHeader());
+            for (BenchmarkResult result : results) {
+                if (result.getPhaseTimer() != null) {
+                    result.getPhaseTimer().writeCsv(result.getAlgorithmName(), out);
+                }
+            }
+        }
+    }
+    
     public String getComparisonReport() {
         if (results.isEmpty()) {
             return "No benchmark results available";
@@ -57,6 +86,9 @@ public class Benchmark {
             report.append(String.format("Agents Reached Goal: %d/%d (%.1f%%)\n", 
                 result.getAgentsReachedGoal(), result.getTotalAgents(), result.getGoalReachPercentage()));
             report.append(String.format("Average Time to Goal: %.2f seconds\n", result.getAverageTimeToGoal()));
+            if (result.getPhaseTimer() != null) {
+                report.append(result.getPhaseTimer().getReport());
+            }
             report.append("\n");
         }
         
@@ -71,29 +103,34 @@ public class Benchmark {
         private int agentsReachedGoal;
         private final int totalAgents;
         private float averageTimeToGoal;
+        private PhaseTimer phaseTimer;
         
         public BenchmarkResult(String algorithmName, List<Agent> agents, long simulationTime) {
+            this(algorithmName, AgentStore.of(agents), simulationTime);
+        }
+        
+        public BenchmarkResult(String algorithmName, AgentStore store, long simulationTime) {
             this.algorithmName = algorithmName;
             this.simulationTime = simulationTime;
-            this.totalAgents = agents.size();
+            this.totalAgents = store.size();
             
-            calculateMetrics(agents);
+            calculateMetrics(store);
         }
         
-        private void calculateMetrics(List<Agent> agents) {
+        private void calculateMetrics(AgentStore store) {
             float totalDistance = 0;
             totalCollisions = 0;
             agentsReachedGoal = 0;
             float totalTimeToGoal = 0;
             int agentsWithGoalTime = 0;
             
-            for (Agent agent : agents) {
-                totalDistance += agent.getDistanceTraveled();
-                totalCollisions += agent.getCollisions();
+            for (int i = 0; i < store.size(); i++) {
+                totalDistance += store.getDistanceTraveled(i);
+                totalCollisions += store.getCollisions(i);
                 
-                if (agent.hasReachedGoal()) {
+                if (store.hasReachedGoal(i)) {
                     agentsReachedGoal++;
-                    totalTimeToGoal += agent.getTimeToGoal();
+                    totalTimeToGoal += store.getTimeToGoal(i);
                     agentsWithGoalTime++;
                 }
             }
@@ -111,5 +148,6 @@ public class Benchmark {
         public int getTotalAgents() { return totalAgents; }
         public float getGoalReachPercentage() { return (float)agentsReachedGoal / totalAgents * 100; }
         public float getAverageTimeToGoal() { return averageTimeToGoal; }
+        public PhaseTimer getPhaseTimer() { return phaseTimer; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package crowd_simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.Ghost;
+import crowd_simulation.algorithms.Scout;
+
+// Snapshot of a whole run: every agent's state and benchmark counters, the step count, and the
+// algorithm with its parameters and the structures it keeps between steps (neighbor lists, contacts,
+// LOD schedule, flow field layout, continuum flags). Restoring one continues the run step for step
+// as if it had never stopped, so many experiments can branch from one expensive prefix.
+// Layout (big-endian, as DataOutput writes): header, then AGENT_SIZE bytes per agent, then the
+// algorithm's own state.
+public final class Checkpoint {
+    static final int MAGIC = 0x4352434B; // "CRCK"
+    static final int VERSION = 1;
+    static final int AGENT_SIZE = 48;
+    private static final int AGENT_WORDS = AGENT_SIZE / 4;
+    private static final int BATCH = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private Checkpoint() {}
+
+    // Written next to the target, forced to disk and only then moved over it, so a crash or power loss
+    // mid-write keeps the last checkpoint
+    public static void write(SimulationEngine engine, Path file) throws IOException {
+        AgentStore store = engine.getStore();
+        int count = store.size();
+        if (store.getActiveCount() + store.getReachedGoalCount() != count) {
+            throw new IllegalStateException("Checkpoints do not hold passive agents");
+        }
+
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeLong(engine.getStepCount());
+            out.writeFloat(engine.getTimeStep());
+            out.writeUTF(nameOf(engine.getAlgorithm()));
+
+            // Agents go through in batches of raw words, swapped to big-endian in bulk
+            ByteBuffer batch = ByteBuffer.allocate(BATCH * AGENT_SIZE);
+            IntBuffer words = batch.asIntBuffer();
+            for (int from = 0; from < count; from += BATCH) {
+                int to = Math.min(count, from + BATCH);
+                words.clear();
+                for (int i = from; i < to; i++) {
+                    words.put(Float.floatToRawIntBits(store.getX(i)));
+                    words.put(Float.floatToRawIntBits(store.getY(i)));
+                    words.put(Float.floatToRawIntBits(store.getVelocityX(i)));
+                    words.put(Float.floatToRawIntBits(store.getVelocityY(i)));
+                    words.put(Float.floatToRawIntBits(store.getGoalX(i)));
+                    words.put(Float.floatToRawIntBits(store.getGoalY(i)));
+                    words.put(Float.floatToRawIntBits(store.getRadius(i)));
+                    words.put(Float.floatToRawIntBits(store.getMaxSpeed(i)));
+                    words.put(Float.floatToRawIntBits(store.getDistanceTraveled(i)));
+                    words.put(store.getCollisions(i));
+                    words.put(store.hasReachedGoal(i) ? 1 : 0);
+                    words.put(Float.floatToRawIntBits(store.getTimeToGoal(i)));
+                }
+                out.write(batch.array(), 0, (to - from) * AGENT_SIZE);
+            }
+
+            engine.getAlgorithm().writeState(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static SimulationEngine read(Path file) throws IOException {
+        return read(file, AgentStore::new);
+    }
+
+    // newStore makes an empty store with room for the given number of agents, e.g. off-heap
+    public static SimulationEngine read(Path file, IntFunction<AgentStore> newStore) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+            }
+            int count = in.readInt();
+            long stepCount = in.readLong();
+            float timeStep = in.readFloat();
+            CrowdAlgorithm algorithm = HeadlessRunner.createAlgorithm(in.readUTF());
+
+            AgentStore store = newStore.apply(count);
+            ByteBuffer batch = ByteBuffer.allocate(BATCH * AGENT_SIZE);
+            IntBuffer words = batch.asIntBuffer();
+            for (int from = 0; from < count; from += BATCH) {
+                int to = Math.min(count, from + BATCH);
+                in.readFully(batch.array(), 0, (to - from) * AGENT_SIZE);
+                for (int w = 0, i = from; i < to; i++, w += AGENT_WORDS) {
+                    int agent = store.add(word(words, w), word(words, w + 1), word(words, w + 4), word(words, w + 5),
+                            word(words, w + 6), word(words, w + 7));
+                    // Nothing reads the other velocity buffer before a step writes it, except for agents at rest
+                    store.setVelocity(agent, word(words, w + 2), word(words, w + 3));
+                    store.setNextVelocity(agent, word(words, w + 2), word(words, w + 3));
+                    store.setProgress(agent, word(words, w + 8), words.get(w + 9), words.get(w + 10) != 0,
+                            word(words, w + 11));
+                }
+            }
+
+            algorithm.readState(in, store);
+            SimulationEngine engine = new SimulationEngine(store, algorithm, timeStep);
+            engine.setStepCount(stepCount);
+            return engine;
+        }
+    }
+
+    private static float word(IntBuffer words, int w) {
+        return Float.intBitsToFloat(words.get(w));
+    }
+
+    private static String nameOf(CrowdAlgorithm algorithm) {
+        if (algorithm instanceof Ghost) return "ghost";
+        if (algorithm instanceof Boid) return "boid";
+        if (algorithm instanceof Scout) return "scout";
+        throw new IllegalArgumentException("Cannot checkpoint " + algorithm);
+    }
+}
@@ -0,0 +1,231 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.DensityField;
+import crowd_simulation.algorithms.Ghost;
+import crowd_simulation.algorithms.PairwiseKernel;
+import crowd_simulation.algorithms.ParallelExecutor;
+import crowd_simulation.algorithms.Scout;
+import crowd_simulation.algorithms.UpdateScheduler;
+import crowd_simulation.algorithms.VerletNeighborLists;
+
+// Command line entry point that steps the simulation as fast as possible, without a window
+public class HeadlessRunner {
+    private static final String USAGE =
+            "Usage: HeadlessRunner [--algorithm ghost|boid|scout|scout-orca] [--agents N] [--steps N] [--dt SECONDS] [--threads N]"
+            + " [--scenario FILE] [--record FILE] [--timings FILE] [--store heap|offheap|FILE]"
+            + " [--lod on|off] [--hybrid on|off] [--restore FILE] [--checkpoint FILE] [--checkpoint-every N]";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        long maxSteps = Long.parseLong(options.getOrDefault("steps", "1000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        long checkpointEvery = Long.parseLong(options.getOrDefault("checkpoint-every", "0"));
+        String checkpoint = options.get("checkpoint");
+        if (checkpointEvery > 0 && checkpoint == null) {
+            throw new IllegalArgumentException("--checkpoint-every needs --checkpoint FILE");
+        }
+
+        // A checkpoint brings its own agents, algorithm, time step, LOD and hybrid settings
+        SimulationEngine engine = options.containsKey("restore")
+                ? restore(Path.of(options.get("restore")), options.getOrDefault("store", "heap"))
+                : createEngine(options);
+        AgentStore store = engine.getStore();
+        CrowdAlgorithm algorithm = engine.getAlgorithm();
+        int agentCount = store.size();
+        float timeStep = engine.getTimeStep();
+        ParallelExecutor executor = threads > 1 ? new ParallelExecutor(threads) : null;
+        algorithm.setParallelExecutor(executor);
+        UpdateScheduler scheduler = algorithm instanceof Ghost ghost ? ghost.getUpdateScheduler()
+                : algorithm instanceof Boid boid ? boid.getUpdateScheduler()
+                : algorithm instanceof Scout scout ? scout.getUpdateScheduler() : null;
+        DensityField densityField = algorithm instanceof Scout scout ? scout.getDensityField() : null;
+
+        Benchmark benchmark = new Benchmark();
+        TrajectoryRecorder recorder = options.containsKey("record")
+                ? new TrajectoryRecorder(Path.of(options.get("record")), store, timeStep) : null;
+        PositionSnapshot frame = new PositionSnapshot();
+
+        benchmark.startBenchmark(algorithm.toString());
+        engine.setPhaseTimer(benchmark.getPhaseTimer());
+        long firstStep = engine.getStepCount();
+        long checkpointNanos = 0;
+        int checkpoints = 0;
+        long start = System.nanoTime();
+        while (engine.getStepCount() - firstStep < maxSteps && !engine.isFinished()) {
+            if (recorder != null) {
+                frame.capture(store, engine.getStepCount());
+                recorder.append(frame);
+            }
+            engine.step();
+            if (checkpointEvery > 0 && engine.getStepCount() % checkpointEvery == 0) {
+                long written = System.nanoTime();
+                Checkpoint.write(engine, checkpointPath(checkpoint, engine.getStepCount()));
+                checkpointNanos += System.nanoTime() - written;
+                checkpoints++;
+            }
+        }
+        // The run's last state too, unless the periodic checkpoint just wrote it
+        if (checkpoint != null && (checkpointEvery <= 0 || engine.getStepCount() % checkpointEvery != 0)) {
+            long written = System.nanoTime();
+            Checkpoint.write(engine, checkpointPath(checkpoint, engine.getStepCount()));
+            checkpointNanos += System.nanoTime() - written;
+            checkpoints++;
+        }
+        if (recorder != null) {
+            frame.capture(store, engine.getStepCount());
+            recorder.append(frame);
+            recorder.close();
+        }
+        double seconds = (System.nanoTime() - start - checkpointNanos) / 1e9;
+        long stepsRun = engine.getStepCount() - firstStep;
+        benchmark.endBenchmark(store);
+        if (options.containsKey("timings")) {
+            benchmark.exportPhaseTimings(Path.of(options.get("timings")));
+        }
+
+        double stepsPerSecond = stepsRun / seconds;
+        System.out.printf("Algorithm: %s%n", algorithm);
+        System.out.printf("Agents: %d%n", agentCount);
+        System.out.printf("Threads: %d%n", Math.max(1, threads));
+        System.out.printf("Distance Kernel: %s%n", PairwiseKernel.preferred());
+        if (options.containsKey("restore")) {
+            System.out.printf("Restored: step %d from %s%n", firstStep, options.get("restore"));
+        }
+        System.out.printf("Steps: %d (%.2f simulated seconds)%n", engine.getStepCount(), engine.getSimulatedTime());
+        System.out.printf("Wall Time: %.3f seconds%n", seconds);
+        System.out.printf("Steps per Second: %.1f%n", stepsPerSecond);
+        System.out.printf("Agent Steps per Second: %.0f%n", stepsPerSecond * agentCount);
+        VerletNeighborLists neighborLists = algorithm instanceof Boid boid ? boid.getNeighborLists()
+                : algorithm instanceof Scout scout ? scout.getNeighborLists() : null;
+        if (neighborLists != null) {
+            System.out.printf("Neighbor List Rebuilds: %d of %d steps (%.1f%%)%n", neighborLists.getRebuildCount(),
+                    neighborLists.getUpdateCount(), neighborLists.getRebuildRate() * 100);
+        }
+        if (scheduler != null) {
+            System.out.printf("LOD Tiers: %s (%.1f%% of agent steps steered)%n", scheduler.getTierReport(),
+                    scheduler.getSteeredFraction() * 100);
+        }
+        if (densityField != null) {
+            System.out.printf("Continuum: %.1f%% of agent steps steered from the density field%n",
+                    densityField.getDenseFraction() * 100);
+        }
+        if (checkpoints > 0) {
+            System.out.printf("Checkpoints: %d written to %s (%.3f seconds, not in the wall time)%n", checkpoints,
+                    checkpoint, checkpointNanos / 1e9);
+        }
+        if (recorder != null) {
+            System.out.printf("Recorded: %d frames to %s%n", recorder.getFrameCount(), options.get("record"));
+        }
+        if (store instanceof OffHeapAgentStore offHeap) {
+            System.out.printf("Agent Store: off-heap%s%n", offHeap.isMapped() ? ", mapped from " + options.get("store") : "");
+        }
+        System.out.println();
+        System.out.print(benchmark.getComparisonReport());
+
+        if (executor != null) {
+            executor.close();
+        }
+        if (store instanceof OffHeapAgentStore offHeap) {
+            offHeap.close();
+        }
+    }
+
+    private static SimulationEngine createEngine(Map<String, String> options) throws IOException {
+        // A scenario file supplies the agents and, unless --algorithm overrides it, the algorithm
+        Scenario scenario = options.containsKey("scenario") ? ScenarioLoader.load(Path.of(options.get("scenario"))) : null;
+        CrowdAlgorithm algorithm = createAlgorithm(options, scenario);
+        int agentCount = scenario != null ? scenario.getStore().size()
+                : Integer.parseInt(options.getOrDefault("agents", "20"));
+        float timeStep = Float.parseFloat(options.getOrDefault("dt", String.valueOf(SimulationEngine.DEFAULT_TIME_STEP)));
+        algorithm.setUpdateScheduler(options.getOrDefault("lod", "off").equals("on") ? new UpdateScheduler() : null);
+        // Only Scout steers from a density field; in Boid's counterflow it keeps agents from getting through
+        if (algorithm instanceof Scout scout && options.getOrDefault("hybrid", "off").equals("on")) {
+            scout.setDensityField(new DensityField());
+        }
+
+        AgentStore store = createStore(options.getOrDefault("store", "heap"), scenario, agentCount);
+        return new SimulationEngine(store, algorithm, timeStep);
+    }
+
+    // Into the heap or native memory; a mapped store is a checkpoint of its own
+    private static SimulationEngine restore(Path file, String kind) throws IOException {
+        return switch (kind) {
+            case "heap" -> Checkpoint.read(file);
+            case "offheap" -> Checkpoint.read(file, OffHeapAgentStore::new);
+            default -> throw new IllegalArgumentException("--restore takes --store heap or offheap, not " + kind);
+        };
+    }
+
+    // {step} in the name is replaced by the step the checkpoint was taken at, to keep every one of them
+    static Path checkpointPath(String name, long step) {
+        return Path.of(name.replace("{step}", Long.toString(step)));
+    }
+
+    // heap, offheap (native memory) or a file to map the off-heap store from; an existing file
+    // continues the run saved in it instead of starting the scenario over
+    static AgentStore createStore(String kind, Scenario scenario, int agentCount) throws IOException {
+        if (kind.equals("heap")) {
+            return scenario != null ? scenario.getStore()
+                    : Scenarios.circle(agentCount, 0, 0, Scenarios.circleRadiusFor(agentCount));
+        }
+
+        OffHeapAgentStore store;
+        if (kind.equals("offheap")) {
+            store = new OffHeapAgentStore(agentCount);
+        } else if (Files.exists(Path.of(kind))) {
+            return OffHeapAgentStore.open(Path.of(kind));
+        } else {
+            store = OffHeapAgentStore.create(Path.of(kind), agentCount);
+        }
+
+        if (scenario != null) {
+            store.addAll(scenario.getStore());
+        } else {
+            Scenarios.circle(store, agentCount, 0, 0, Scenarios.circleRadiusFor(agentCount));
+        }
+        return store;
+    }
+
+    // The algorithm named by --algorithm or else the scenario's; with a scenario it navigates the obstacles
+    static CrowdAlgorithm createAlgorithm(Map<String, String> options, Scenario scenario) {
+        CrowdAlgorithm algorithm = scenario != null && !options.containsKey("algorithm")
+                ? scenario.createAlgorithm() : createAlgorithm(options.getOrDefault("algorithm", "ghost"));
+        if (scenario != null && options.containsKey("algorithm")) {
+            algorithm.setNavigator(scenario.createNavigator());
+        }
+        return algorithm;
+    }
+
+    static CrowdAlgorithm createAlgorithm(String name) {
+        return switch (name.toLowerCase()) {
+            case "ghost" -> new Ghost();
+            case "boid", "boids" -> new Boid();
+            case "scout" -> new Scout();
+            case "scout-orca" -> {
+                Scout scout = new Scout();
+                scout.setMode(Scout.Mode.ORCA);
+                yield scout;
+            }
+            default -> throw new IllegalArgumentException("Unknown algorithm: " + name);
+        };
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,300 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+
+// Agent state in native memory, one AGENT_LAYOUT struct per agent after a fixed header, so crowds are
+// bounded by RAM and never scanned by the garbage collector. Backed by a mapped file, the segment is
+// also the on-disk form: force() checkpoints it and open() resumes from it without reading it in.
+//
+// File layout, little-endian: int magic "CRAO", int version, int agent count, int velocity buffer
+// (which of the two velocity slots is current), padding to HEADER_SIZE, then the agents.
+public class OffHeapAgentStore extends AgentStore implements AutoCloseable {
+    static final int MAGIC = 0x4352414F; // "CRAO"
+    static final int VERSION = 1;
+    static final long HEADER_SIZE = 64;
+    private static final long COUNT_OFFSET = 8;
+    private static final long VELOCITY_BUFFER_OFFSET = 12;
+
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // Velocities are double-buffered in place: swapVelocities flips which pair is current
+    public static final StructLayout AGENT_LAYOUT = MemoryLayout.structLayout(
+            FLOAT.withName("x"),
+            FLOAT.withName("y"),
+            FLOAT.withName("velocityX0"),
+            FLOAT.withName("velocityY0"),
+            FLOAT.withName("velocityX1"),
+            FLOAT.withName("velocityY1"),
+            FLOAT.withName("goalX"),
+            FLOAT.withName("goalY"),
+            FLOAT.withName("radius"),
+            FLOAT.withName("maxSpeed"),
+            FLOAT.withName("distanceTraveled"),
+            INT.withName("collisions"),
+            FLOAT.withName("timeToGoal"),
+            INT.withName("reachedGoal"));
+    static final long AGENT_SIZE = AGENT_LAYOUT.byteSize();
+
+    private static final long X = offsetOf("x");
+    private static final long Y = offsetOf("y");
+    private static final long VELOCITY_0 = offsetOf("velocityX0");
+    private static final long VELOCITY_1 = offsetOf("velocityX1");
+    private static final long GOAL_X = offsetOf("goalX");
+    private static final long GOAL_Y = offsetOf("goalY");
+    private static final long RADIUS = offsetOf("radius");
+    private static final long MAX_SPEED = offsetOf("maxSpeed");
+    private static final long DISTANCE_TRAVELED = offsetOf("distanceTraveled");
+    private static final long COLLISIONS = offsetOf("collisions");
+    private static final long TIME_TO_GOAL = offsetOf("timeToGoal");
+    private static final long REACHED_GOAL = offsetOf("reachedGoal");
+
+    private final FileChannel channel;
+    private Arena arena;
+    private MemorySegment segment;
+    private int capacity;
+    private int size = 0;
+    // Offsets of the current and next velocity pairs within an agent
+    private long velocity = VELOCITY_0;
+    private long nextVelocity = VELOCITY_1;
+
+    private static long offsetOf(String field) {
+        return AGENT_LAYOUT.byteOffset(groupElement(field));
+    }
+
+    // Anonymous native memory, freed on close
+    public OffHeapAgentStore(int capacity) {
+        this(null, capacity);
+        writeHeader();
+    }
+
+    private OffHeapAgentStore(FileChannel channel, int capacity) {
+        super(1);
+        this.channel = channel;
+        allocate(Math.max(1, capacity));
+    }
+
+    // A new store mapped from file, replacing any file already there
+    public static OffHeapAgentStore create(Path file, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OffHeapAgentStore store = new OffHeapAgentStore(channel, capacity);
+        store.writeHeader();
+        return store;
+    }
+
+    // Maps a store written by an earlier run and continues from its state
+    public static OffHeapAgentStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long agents = (channel.size() - HEADER_SIZE) / AGENT_SIZE;
+        if (channel.size() < HEADER_SIZE || agents > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not an agent store: " + file);
+        }
+
+        OffHeapAgentStore store = new OffHeapAgentStore(channel, (int) agents);
+        MemorySegment segment = store.segment;
+        if (segment.get(INT, 0) != MAGIC || segment.get(INT, 4) != VERSION
+                || segment.get(INT, COUNT_OFFSET) > agents) {
+            store.close();
+            throw new IOException("Not an agent store: " + file);
+        }
+        store.size = segment.get(INT, COUNT_OFFSET);
+        if (segment.get(INT, VELOCITY_BUFFER_OFFSET) == 1) {
+            store.velocity = VELOCITY_1;
+            store.nextVelocity = VELOCITY_0;
+        }
+
+        // The active list and totals live on the heap, so they are recounted from the agents
+        for (int i = 0; i < store.size; i++) {
+            store.activate(i);
+            if (store.hasReachedGoal(i)) {
+                store.countReachedGoal();
+            }
+            store.countCollisions(store.getCollisions(i));
+        }
+        return store;
+    }
+
+    // Maps or allocates room for capacity agents, carrying over the agents so far
+    private void allocate(int capacity) {
+        long bytes = HEADER_SIZE + capacity * AGENT_SIZE;
+        Arena next = Arena.ofShared();
+        MemorySegment grown;
+        try {
+            grown = channel != null
+                    ? channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes, next)
+                    : next.allocate(bytes, 8);
+        } catch (IOException e) {
+            next.close();
+            throw new IllegalStateException("Mapping the agent store failed", e);
+        }
+
+        if (segment != null) {
+            if (channel == null) {
+                MemorySegment.copy(segment, 0, grown, 0, HEADER_SIZE + size * AGENT_SIZE);
+            }
+            arena.close();
+        }
+        arena = next;
+        segment = grown;
+        this.capacity = capacity;
+    }
+
+    private void writeHeader() {
+        segment.set(INT, 0, MAGIC);
+        segment.set(INT, 4, VERSION);
+        segment.set(INT, COUNT_OFFSET, size);
+        segment.set(INT, VELOCITY_BUFFER_OFFSET, velocity == VELOCITY_0 ? 0 : 1);
+    }
+
+    private static long base(int i) {
+        return HEADER_SIZE + i * AGENT_SIZE;
+    }
+
+    @Override
+    public int add(float x, float y, float goalX, float goalY, float radius, float maxSpeed) {
+        if (size == capacity) {
+            allocate(capacity * 2);
+        }
+
+        int i = size++;
+        long base = base(i);
+        segment.asSlice(base, AGENT_SIZE).fill((byte) 0);
+        segment.set(FLOAT, base + X, x);
+        segment.set(FLOAT, base + Y, y);
+        segment.set(FLOAT, base + GOAL_X, goalX);
+        segment.set(FLOAT, base + GOAL_Y, goalY);
+        segment.set(FLOAT, base + RADIUS, radius);
+        segment.set(FLOAT, base + MAX_SPEED, maxSpeed);
+        segment.set(INT, COUNT_OFFSET, size);
+        activate(i);
+        return i;
+    }
+
+    // Same integration as the heap store, on the struct fields
+    @Override
+    public void update(int i, float deltaTime) {
+        long base = base(i);
+        float stepX = segment.get(FLOAT, base + velocity) * deltaTime;
+        float stepY = segment.get(FLOAT, base + velocity + 4) * deltaTime;
+        float x = segment.get(FLOAT, base + X) + stepX;
+        float y = segment.get(FLOAT, base + Y) + stepY;
+        segment.set(FLOAT, base + X, x);
+        segment.set(FLOAT, base + Y, y);
+        segment.set(FLOAT, base + DISTANCE_TRAVELED,
+                segment.get(FLOAT, base + DISTANCE_TRAVELED) + (float) Math.sqrt(stepX * stepX + stepY * stepY));
+
+        if (segment.get(INT, base + REACHED_GOAL) == 0) {
+            float dx = segment.get(FLOAT, base + GOAL_X) - x;
+            float dy = segment.get(FLOAT, base + GOAL_Y) - y;
+            float radius = segment.get(FLOAT, base + RADIUS);
+            if (dx * dx + dy * dy < radius * radius) {
+                segment.set(INT, base + REACHED_GOAL, 1);
+                countReachedGoal();
+                segment.asSlice(base + VELOCITY_0, 16).fill((byte) 0);
+            } else {
+                segment.set(FLOAT, base + TIME_TO_GOAL, segment.get(FLOAT, base + TIME_TO_GOAL) + deltaTime);
+            }
+        }
+    }
+
+    @Override
+    public void swapVelocities() {
+        long swap = velocity;
+        velocity = nextVelocity;
+        nextVelocity = swap;
+        segment.set(INT, VELOCITY_BUFFER_OFFSET, velocity == VELOCITY_0 ? 0 : 1);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity > this.capacity) {
+            allocate(capacity);
+        }
+    }
+
+    // Writes the mapped agents through to the file; a no-op for anonymous memory
+    public void force() {
+        if (channel != null) {
+            segment.force();
+        }
+    }
+
+    // Unmaps or frees the memory; a mapped file is trimmed to the agents in use
+    @Override
+    public void close() throws IOException {
+        if (arena == null) return;
+
+        arena.close();
+        arena = null;
+        segment = null;
+        if (channel != null) {
+            channel.truncate(HEADER_SIZE + size * AGENT_SIZE);
+            channel.close();
+        }
+    }
+
+    @Override public int size() { return size; }
+    @Override public float getX(int i) { return segment.get(FLOAT, base(i) + X); }
+    @Override public float getY(int i) { return segment.get(FLOAT, base(i) + Y); }
+    @Override public float getVelocityX(int i) { return segment.get(FLOAT, base(i) + velocity); }
+    @Override public float getVelocityY(int i) { return segment.get(FLOAT, base(i) + velocity + 4); }
+    @Override public float getGoalX(int i) { return segment.get(FLOAT, base(i) + GOAL_X); }
+    @Override public float getGoalY(int i) { return segment.get(FLOAT, base(i) + GOAL_Y); }
+    @Override public float getRadius(int i) { return segment.get(FLOAT, base(i) + RADIUS); }
+    @Override public float getMaxSpeed(int i) { return segment.get(FLOAT, base(i) + MAX_SPEED); }
+
+    @Override
+    public void setVelocity(int i, float vx, float vy) {
+        long base = base(i) + velocity;
+        segment.set(FLOAT, base, vx);
+        segment.set(FLOAT, base + 4, vy);
+    }
+
+    @Override
+    public void setNextVelocity(int i, float vx, float vy) {
+        long base = base(i) + nextVelocity;
+        segment.set(FLOAT, base, vx);
+        segment.set(FLOAT, base + 4, vy);
+    }
+
+    @Override public float getDistanceTraveled(int i) { return segment.get(FLOAT, base(i) + DISTANCE_TRAVELED); }
+    @Override public int getCollisions(int i) { return segment.get(INT, base(i) + COLLISIONS); }
+    @Override public boolean hasReachedGoal(int i) { return segment.get(INT, base(i) + REACHED_GOAL) != 0; }
+    @Override public float getTimeToGoal(int i) { return segment.get(FLOAT, base(i) + TIME_TO_GOAL); }
+
+    @Override
+    public void setProgress(int i, float distanceTraveled, int collisions, boolean reachedGoal, float timeToGoal) {
+        long base = base(i);
+        segment.set(FLOAT, base + DISTANCE_TRAVELED, distanceTraveled);
+        countCollisions(collisions - segment.get(INT, base + COLLISIONS));
+        segment.set(INT, base + COLLISIONS, collisions);
+        segment.set(FLOAT, base + TIME_TO_GOAL, timeToGoal);
+        if (reachedGoal && segment.get(INT, base + REACHED_GOAL) == 0) {
+            segment.set(INT, base + REACHED_GOAL, 1);
+            countReachedGoal();
+        }
+    }
+
+    @Override
+    public void incrementCollisions(int i) {
+        long offset = base(i) + COLLISIONS;
+        segment.set(INT, offset, segment.get(INT, offset) + 1);
+        countCollisions(1);
+    }
+
+    public boolean isMapped() { return channel != null; }
+    public int getCapacity() { return capacity; }
+}
@@ -0,0 +1,367 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.ContactListener;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.Scout;
+import crowd_simulation.algorithms.SweepAndPrune;
+
+// Searches Boid or Scout parameters for the best trade-offs between collisions (as time spent overlapping),
+// time to goal and steps per second. Candidates are drawn at random from ranges around the defaults, and the defaults themselves run as
+// candidate 0. Every candidate is its own single-threaded simulation of the same scenario, one per core.
+// Successive halving then keeps the better part of the candidates after each rung and lets them run on for
+// more steps, so most of the time goes to the promising ones. The finalists that no other finalist beats on
+// all three scores form the Pareto front.
+public class ParameterTuner {
+    private static final String USAGE =
+            "Usage: ParameterTuner [--algorithm boid|scout|scout-orca] [--agents N] [--layout circle|uniform]"
+            + " [--density D] [--scenario FILE] [--dt SECONDS] [--candidates N] [--finalists N] [--steps N]"
+            + " [--eta N] [--threads N] [--seed N] [--csv FILE] [--json FILE]";
+
+    // A second per step, so agents get home within a few short rungs
+    private static final String DEFAULT_TIME_STEP = "1";
+
+    // Search ranges, from min to max; maxNeighbors is rounded. Distances start above the default agent
+    // diameter, below which agents would not see each other before they touch
+    static final Map<String, float[]> BOID_RANGES = new LinkedHashMap<>();
+    static final Map<String, float[]> SCOUT_RANGES = new LinkedHashMap<>();
+    static {
+        BOID_RANGES.put("separationRadius", new float[] {25, 100});
+        BOID_RANGES.put("alignmentRadius", new float[] {25, 150});
+        BOID_RANGES.put("cohesionRadius", new float[] {25, 150});
+        BOID_RANGES.put("separationWeight", new float[] {0.5f, 5});
+        BOID_RANGES.put("alignmentWeight", new float[] {0, 2});
+        BOID_RANGES.put("cohesionWeight", new float[] {0, 2});
+        BOID_RANGES.put("goalWeight", new float[] {0.5f, 5});
+        SCOUT_RANGES.put("timeHorizon", new float[] {0.5f, 5});
+        SCOUT_RANGES.put("neighborDistance", new float[] {30, 200});
+        SCOUT_RANGES.put("maxNeighbors", new float[] {3, 20});
+    }
+
+    // One parameter set and its simulation, which carries on from rung to rung
+    public static class Candidate {
+        private final int id;
+        private final Map<String, Float> parameters;
+        private final SimulationEngine engine;
+        // Boid and Scout do not count collisions themselves, so overlaps are counted here as Ghost counts them
+        private final SweepAndPrune contacts = new SweepAndPrune();
+        private final ContactListener collisionCounter;
+        // Time spent stepping, without the collision counting
+        private double wallSeconds = 0;
+        // Seconds each overlapping pair spent overlapping, summed; unlike the collision count, which counts
+        // contacts as they begin, it does not favor agents that walk straight through each other over ones
+        // that brush past
+        private double overlapTime = 0;
+        private int rung = 0;
+
+        Candidate(int id, Map<String, Float> parameters, SimulationEngine engine) {
+            this.id = id;
+            this.parameters = parameters;
+            this.engine = engine;
+            AgentStore store = engine.getStore();
+            collisionCounter = new ContactListener() {
+                @Override
+                public void contactBegin(int first, int second) {
+                    store.incrementCollisions(first);
+                    store.incrementCollisions(second);
+                }
+
+                @Override
+                public void contactEnd(int first, int second) {}
+            };
+        }
+
+        // Steps until the engine has run maxSteps in total or every agent arrived
+        void run(long maxSteps) {
+            while (engine.getStepCount() < maxSteps && !engine.isFinished()) {
+                long start = System.nanoTime();
+                engine.step();
+                wallSeconds += (System.nanoTime() - start) / 1e9;
+                contacts.update(engine.getStore(), collisionCounter);
+                overlapTime += contacts.getContactCount() * engine.getTimeStep();
+            }
+        }
+
+        // Mean time to goal, where an agent still on its way is counted as arriving straight from where it is
+        // at full speed; short runs still rank candidates that are slow to get everyone home
+        public float getEstimatedTimeToGoal() {
+            AgentStore store = engine.getStore();
+            if (store.size() == 0) return 0;
+            double total = 0;
+            for (int i = 0; i < store.size(); i++) {
+                total += store.getTimeToGoal(i);
+                if (!store.hasReachedGoal(i)) {
+                    float dx = store.getGoalX(i) - store.getX(i);
+                    float dy = store.getGoalY(i) - store.getY(i);
+                    total += Math.sqrt(dx * dx + dy * dy) / Math.max(store.getMaxSpeed(i), 1e-3f);
+                }
+            }
+            return (float) (total / store.size());
+        }
+
+        // No worse on any score and better on at least one
+        boolean dominates(Candidate other) {
+            boolean noWorse = overlapTime <= other.overlapTime
+                    && getEstimatedTimeToGoal() <= other.getEstimatedTimeToGoal()
+                    && getStepsPerSecond() >= other.getStepsPerSecond();
+            boolean better = overlapTime < other.overlapTime
+                    || getEstimatedTimeToGoal() < other.getEstimatedTimeToGoal()
+                    || getStepsPerSecond() > other.getStepsPerSecond();
+            return noWorse && better;
+        }
+
+        public int getId() { return id; }
+        // Empty for the defaults
+        public Map<String, Float> getParameters() { return parameters; }
+        public int getCollisions() { return engine.getStore().getTotalCollisions(); }
+        public double getOverlapTime() { return overlapTime; }
+        public int getReachedGoalCount() { return engine.getStore().getReachedGoalCount(); }
+        public long getSteps() { return engine.getStepCount(); }
+        public double getStepsPerSecond() { return wallSeconds > 0 ? engine.getStepCount() / wallSeconds : 0; }
+        // How many rungs it survived
+        public int getRung() { return rung; }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = HeadlessRunner.parseOptions(args);
+        String algorithm = options.getOrDefault("algorithm", "boid");
+        int candidateCount = Integer.parseInt(options.getOrDefault("candidates", "64"));
+        int finalistCount = Integer.parseInt(options.getOrDefault("finalists", "8"));
+        long steps = Long.parseLong(options.getOrDefault("steps", "200"));
+        int eta = Integer.parseInt(options.getOrDefault("eta", "2"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        if (eta < 2 || candidateCount < 1 || finalistCount < 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        long start = System.nanoTime();
+        List<Candidate> candidates = createCandidates(options, algorithm, candidateCount);
+        warmUp(options, algorithm, steps, threads);
+        List<Candidate> finalists = tune(candidates, finalistCount, steps, eta, threads);
+        List<Candidate> front = paretoFront(finalists);
+        System.out.printf("Finished in %.1f seconds%n%n", (System.nanoTime() - start) / 1e9);
+
+        System.out.printf("Pareto front of the %d finalists:%n", finalists.size());
+        System.out.printf("%5s %10s %10s %12s %12s  %s%n", "id", "overlap s", "collisions", "time to goal", "steps/s",
+                "parameters");
+        for (Candidate candidate : front) {
+            System.out.printf(Locale.ROOT, "%5d %10.1f %10d %12.2f %12.1f  %s%n", candidate.id, candidate.overlapTime,
+                    candidate.getCollisions(), candidate.getEstimatedTimeToGoal(), candidate.getStepsPerSecond(),
+                    candidate.parameters.isEmpty() ? "(defaults)" : candidate.parameters);
+        }
+
+        Path csv = Path.of(options.getOrDefault("csv", "tuning-results.csv"));
+        Path json = Path.of(options.getOrDefault("json", "tuning-results.json"));
+        writeCsv(candidates, front, csv);
+        writeJson(candidates, front, json);
+        System.out.printf("%nWrote %s and %s%n", csv, json);
+    }
+
+    // Candidate 0 keeps the defaults, the others draw every parameter from its range
+    static List<Candidate> createCandidates(Map<String, String> options, String algorithm, int count) throws IOException {
+        Map<String, float[]> ranges = algorithm.startsWith("boid") ? BOID_RANGES
+                : algorithm.startsWith("scout") ? SCOUT_RANGES : null;
+        if (ranges == null) {
+            throw new IllegalArgumentException("Only Boid and Scout have parameters to tune: " + algorithm);
+        }
+        Random random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+        List<Candidate> candidates = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            Map<String, Float> parameters = new LinkedHashMap<>();
+            if (id > 0) {
+                ranges.forEach((name, range) -> {
+                    float value = range[0] + random.nextFloat() * (range[1] - range[0]);
+                    parameters.put(name, name.equals("maxNeighbors") ? Math.round(value) : value);
+                });
+            }
+            candidates.add(new Candidate(id, parameters, createEngine(options, algorithm, parameters)));
+        }
+        return candidates;
+    }
+
+    // Every candidate gets its own copy of the same scenario
+    private static SimulationEngine createEngine(Map<String, String> options, String algorithm,
+            Map<String, Float> parameters) throws IOException {
+        Scenario scenario = options.containsKey("scenario") ? ScenarioLoader.load(Path.of(options.get("scenario"))) : null;
+        Map<String, String> algorithmOptions = new LinkedHashMap<>(options);
+        algorithmOptions.put("algorithm", algorithm);
+        CrowdAlgorithm created = HeadlessRunner.createAlgorithm(algorithmOptions, scenario);
+        if (!(created instanceof Boid) && !(created instanceof Scout)) {
+            throw new IllegalArgumentException("Only Boid and Scout have parameters to tune: " + algorithm);
+        }
+        parameters.forEach((name, value) -> BatchRunner.applyParameter(created, name, value));
+
+        AgentStore store = scenario != null ? scenario.getStore()
+                : new BatchRunner.Cell(algorithm, Integer.parseInt(options.getOrDefault("agents", "200")),
+                        options.getOrDefault("layout", "uniform"), Float.parseFloat(options.getOrDefault("density", "2")),
+                        Map.of(), Long.parseLong(options.getOrDefault("seed", "1"))).createScenario();
+        float timeStep = Float.parseFloat(options.getOrDefault("dt", DEFAULT_TIME_STEP));
+        return new SimulationEngine(store, created, timeStep);
+    }
+
+    // Runs throwaway copies of the defaults first, so the first candidates are not timed while the JIT compiles
+    private static void warmUp(Map<String, String> options, String algorithm, long steps, int threads)
+            throws IOException, InterruptedException {
+        List<Candidate> throwaway = createCandidates(options, algorithm, 1);
+        for (int k = 1; k < Math.max(1, threads); k++) {
+            throwaway.add(new Candidate(-k, Map.of(), createEngine(options, algorithm, Map.of())));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            runAll(pool, throwaway, steps);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Successive halving: every rung runs the survivors to steps * eta^rung in total and keeps the best
+    // 1/eta of them, until no more than finalistCount are left for a last rung
+    static List<Candidate> tune(List<Candidate> candidates, int finalistCount, long steps, int eta, int threads)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Candidate> survivors = new ArrayList<>(candidates);
+            long budget = steps;
+            for (int rung = 0; ; rung++) {
+                runAll(pool, survivors, budget);
+                for (Candidate candidate : survivors) {
+                    candidate.rung = rung;
+                }
+                List<Candidate> ranked = rank(survivors);
+                System.out.printf(Locale.ROOT, "Rung %d: %d candidates at %d steps, best %s%n", rung, survivors.size(),
+                        budget, describe(ranked.get(0)));
+                if (survivors.size() <= finalistCount) {
+                    return ranked;
+                }
+                survivors = new ArrayList<>(ranked.subList(0, Math.max(finalistCount, survivors.size() / eta)));
+                budget *= eta;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void runAll(ExecutorService pool, List<Candidate> candidates, long maxSteps)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            futures.add(pool.submit(() -> candidate.run(maxSteps)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tuning run failed", e.getCause());
+            }
+        }
+    }
+
+    // Best first: by Pareto layer (the front, then the front of the rest, ...), and within a layer by the
+    // sum of the candidate's ranks on the three scores, which favors balanced trade-offs over extremes
+    static List<Candidate> rank(List<Candidate> candidates) {
+        Map<Candidate, Integer> layers = new LinkedHashMap<>();
+        List<Candidate> remaining = new ArrayList<>(candidates);
+        for (int layer = 0; !remaining.isEmpty(); layer++) {
+            List<Candidate> front = paretoFront(remaining);
+            for (Candidate candidate : front) {
+                layers.put(candidate, layer);
+            }
+            remaining.removeAll(front);
+        }
+
+        Map<Candidate, Integer> rankSums = new LinkedHashMap<>();
+        List<Comparator<Candidate>> scores = List.of(
+                Comparator.comparingDouble(Candidate::getOverlapTime),
+                Comparator.comparingDouble(Candidate::getEstimatedTimeToGoal),
+                Comparator.comparingDouble(Candidate::getStepsPerSecond).reversed());
+        for (Comparator<Candidate> score : scores) {
+            List<Candidate> sorted = new ArrayList<>(candidates);
+            sorted.sort(score);
+            for (int i = 0; i < sorted.size(); i++) {
+                rankSums.merge(sorted.get(i), i, Integer::sum);
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.<Candidate>comparingInt(layers::get).thenComparingInt(rankSums::get)
+                .thenComparingInt(Candidate::getId));
+        return ranked;
+    }
+
+    // The candidates no other one dominates, in id order
+    static List<Candidate> paretoFront(List<Candidate> candidates) {
+        List<Candidate> front = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            boolean dominated = false;
+            for (Candidate other : candidates) {
+                if (other != candidate && other.dominates(candidate)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) front.add(candidate);
+        }
+        front.sort(Comparator.comparingInt(Candidate::getId));
+        return front;
+    }
+
+    private static String describe(Candidate candidate) {
+        return String.format(Locale.ROOT, "#%d (%.1f s overlapping, %.2f s to goal, %.1f steps/s)", candidate.id,
+                candidate.overlapTime, candidate.getEstimatedTimeToGoal(), candidate.getStepsPerSecond());
+    }
+
+    // Every candidate with the rung it reached; scores are only comparable within a rung
+    static void writeCsv(List<Candidate> candidates, List<Candidate> front, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("id,rung,pareto,parameters,steps,steps_per_second,overlap_seconds,total_collisions,reached_goal,"
+                    + "estimated_time_to_goal\n");
+            for (Candidate candidate : candidates) {
+                StringBuilder parameters = new StringBuilder();
+                candidate.parameters.forEach((name, value) ->
+                        parameters.append(parameters.length() > 0 ? ";" : "").append(name).append('=').append(value));
+                out.write(String.format(Locale.ROOT, "%d,%d,%b,%s,%d,%.2f,%.4f,%d,%d,%.4f\n", candidate.id,
+                        candidate.rung, front.contains(candidate), parameters, candidate.getSteps(),
+                        candidate.getStepsPerSecond(), candidate.overlapTime, candidate.getCollisions(),
+                        candidate.getReachedGoalCount(), candidate.getEstimatedTimeToGoal()));
+            }
+        }
+    }
+
+    static void writeJson(List<Candidate> candidates, List<Candidate> front, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("[\n");
+            for (int i = 0; i < candidates.size(); i++) {
+                Candidate candidate = candidates.get(i);
+                StringBuilder parameters = new StringBuilder();
+                candidate.parameters.forEach((name, value) -> parameters.append(parameters.length() > 0 ? ", " : "")
+                        .append(BatchRunner.jsonString(name)).append(": ").append(value));
+                out.write(String.format(Locale.ROOT, "  {\"id\": %d, \"rung\": %d, \"pareto\": %b, \"parameters\": {%s},"
+                                + " \"steps\": %d, \"stepsPerSecond\": %.2f, \"overlapSeconds\": %.4f,"
+                                + " \"totalCollisions\": %d, \"reachedGoal\": %d,"
+                                + " \"estimatedTimeToGoal\": %.4f}%s\n",
+                        candidate.id, candidate.rung, front.contains(candidate), parameters, candidate.getSteps(),
+                        candidate.getStepsPerSecond(), candidate.overlapTime, candidate.getCollisions(),
+                        candidate.getReachedGoalCount(), candidate.getEstimatedTimeToGoal(),
+                        i < candidates.size() - 1 ? "," : ""));
+            }
+            out.write("]\n");
+        }
+    }
+}
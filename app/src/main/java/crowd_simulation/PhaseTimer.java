@@ -0,0 +1,125 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+// Latency histograms for each phase of a step and a frame
+public class PhaseTimer {
+    public enum Phase {
+        UPDATE_AGENTS("updateAgents"),
+        INTEGRATE("Agent.update"),
+        STEP("step"),
+        DRAW("draw"),
+        GUI("drawGUI"),
+        FRAME("frame"),
+        GC("GC pause");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final List<NotificationEmitter> gcEmitters = new ArrayList<>();
+    private final NotificationListener gcListener = (notification, handback) -> {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            record(Phase.GC, info.getGcInfo().getDuration() * 1_000_000L);
+        }
+    };
+
+    public PhaseTimer() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // Records the time since a System.nanoTime() reading taken at the start of the phase
+    public void recordSince(Phase phase, long startNanos) {
+        histograms[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    // GC pauses are reported by the JVM after the fact, with millisecond resolution
+    public void startGcMonitoring() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter && isPauseCollector(collector.getName())
+                    && !gcEmitters.contains(emitter)) {
+                emitter.addNotificationListener(gcListener, null, null);
+                gcEmitters.add(emitter);
+            }
+        }
+    }
+
+    // G1's concurrent collector and ZGC's and Shenandoah's cycle collectors report whole concurrent cycles,
+    // which run beside the application instead of stopping it
+    static boolean isPauseCollector(String name) {
+        return !name.equals("G1 Concurrent GC") && !name.endsWith("Cycles");
+    }
+
+    public void stopGcMonitoring() {
+        for (NotificationEmitter emitter : gcEmitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (javax.management.ListenerNotFoundException e) {
+                // Already gone
+            }
+        }
+        gcEmitters.clear();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    // One line per phase that has samples, in microseconds
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-13s %7s %7s %7s %7s\n", "Phase (us)", "p50", "p99", "p999", "max"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = getHistogram(phase);
+            if (histogram.getCount() == 0) continue;
+            report.append(String.format("%-13s %7.0f %7.0f %7.0f %7.0f\n", phase,
+                    histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                    histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3));
+        }
+        return report.toString();
+    }
+
+    // Appends one CSV row per phase; durations in nanoseconds
+    public void writeCsv(String algorithmName, Writer out) throws IOException {
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = getHistogram(phase);
+            out.write(String.format("\"%s\",%s,%d,%d,%d,%d,%d\n", algorithmName, phase, histogram.getCount(),
+                    histogram.getPercentile(50), histogram.getPercentile(99), histogram.getPercentile(99.9),
+                    histogram.getMax()));
+        }
+    }
+
+    public static String getCsvHeader() {
+        return "algorithm,phase,count,p50_ns,p99_ns,p999_ns,max_ns\n";
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) { return histograms[phase.ordinal()]; }
+}
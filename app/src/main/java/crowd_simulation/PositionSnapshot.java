@@ -0,0 +1,83 @@
+package crowd_simulation;
+
+import java.util.Arrays;
+
+// Agent positions and velocities after one simulation step, handed from the simulation thread to the renderer
+public class PositionSnapshot {
+    private float[] positionX = new float[0];
+    private float[] positionY = new float[0];
+    private float[] velocityX = new float[0];
+    private float[] velocityY = new float[0];
+    private int count = 0;
+    private long step = 0;
+    private long publishedNanos = 0;
+    private int agentsReachedGoal = 0;
+    private int totalCollisions = 0;
+
+    public void capture(AgentStore store, long step) {
+        ensureCapacity(store.size());
+        count = store.size();
+        agentsReachedGoal = store.getReachedGoalCount();
+        totalCollisions = store.getTotalCollisions();
+
+        for (int i = 0; i < count; i++) {
+            positionX[i] = store.getX(i);
+            positionY[i] = store.getY(i);
+            velocityX[i] = store.getVelocityX(i);
+            velocityY[i] = store.getVelocityY(i);
+        }
+
+        this.step = step;
+        this.publishedNanos = System.nanoTime();
+    }
+
+    public void copyFrom(PositionSnapshot other) {
+        ensureCapacity(other.count);
+        count = other.count;
+        System.arraycopy(other.positionX, 0, positionX, 0, count);
+        System.arraycopy(other.positionY, 0, positionY, 0, count);
+        System.arraycopy(other.velocityX, 0, velocityX, 0, count);
+        System.arraycopy(other.velocityY, 0, velocityY, 0, count);
+        step = other.step;
+        publishedNanos = other.publishedNanos;
+        agentsReachedGoal = other.agentsReachedGoal;
+        totalCollisions = other.totalCollisions;
+    }
+
+    // Filled agent by agent with set, e.g. when reading a recorded frame
+    void reset(int count, long step, int agentsReachedGoal, int totalCollisions) {
+        ensureCapacity(count);
+        this.count = count;
+        this.step = step;
+        this.agentsReachedGoal = agentsReachedGoal;
+        this.totalCollisions = totalCollisions;
+        this.publishedNanos = System.nanoTime();
+    }
+
+    void set(int i, float x, float y, float velocityX, float velocityY) {
+        positionX[i] = x;
+        positionY[i] = y;
+        this.velocityX[i] = velocityX;
+        this.velocityY[i] = velocityY;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (positionX.length >= capacity) return;
+
+        positionX = Arrays.copyOf(positionX, capacity);
+        positionY = Arrays.copyOf(positionY, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+    }
+
+    public int size() { return count; }
+    public float getX(int i) { return positionX[i]; }
+    public float getY(int i) { return positionY[i]; }
+    public float getVelocityX(int i) { return velocityX[i]; }
+    public float getVelocityY(int i) { return velocityY[i]; }
+    public long getStep() { return step; }
+    public long getPublishedNanos() { return publishedNanos; }
+    public int getAgentsReachedGoal() { return agentsReachedGoal; }
+    public int getTotalCollisions() { return totalCollisions; }
+    public boolean isFinished() { return agentsReachedGoal == count; }
+}
@@ -0,0 +1,55 @@
+package crowd_simulation;
+
+import java.util.Map;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.FlowFieldNavigator;
+import crowd_simulation.algorithms.Obstacles;
+
+// A loaded scenario file: the agents and obstacles plus the algorithm and parameters it asks for
+public class Scenario {
+    private final String name;
+    private final AgentStore store;
+    private final String algorithm;
+    private final Map<String, Float> parameters;
+    private final long seed;
+    private final Obstacles obstacles;
+
+    public Scenario(String name, AgentStore store, String algorithm, Map<String, Float> parameters, long seed) {
+        this(name, store, algorithm, parameters, seed, new Obstacles());
+    }
+
+    public Scenario(String name, AgentStore store, String algorithm, Map<String, Float> parameters, long seed,
+            Obstacles obstacles) {
+        this.name = name;
+        this.store = store;
+        this.algorithm = algorithm;
+        this.parameters = parameters;
+        this.seed = seed;
+        this.obstacles = obstacles;
+    }
+
+    // A new instance of the scenario's algorithm with its parameters applied, navigating its obstacles
+    public CrowdAlgorithm createAlgorithm() {
+        CrowdAlgorithm created = HeadlessRunner.createAlgorithm(algorithm);
+        applyParameters(created);
+        created.setNavigator(createNavigator());
+        return created;
+    }
+
+    // Flow fields around the obstacles, or null when there are none and agents can walk straight
+    public FlowFieldNavigator createNavigator() {
+        return obstacles.isEmpty() ? null : new FlowFieldNavigator(obstacles);
+    }
+
+    public void applyParameters(CrowdAlgorithm target) {
+        parameters.forEach((parameter, value) -> BatchRunner.applyParameter(target, parameter, value));
+    }
+
+    public String getName() { return name; }
+    public AgentStore getStore() { return store; }
+    public String getAlgorithm() { return algorithm; }
+    public Map<String, Float> getParameters() { return parameters; }
+    public long getSeed() { return seed; }
+    public Obstacles getObstacles() { return obstacles; }
+}
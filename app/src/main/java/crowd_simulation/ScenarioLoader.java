@@ -0,0 +1,447 @@
+package crowd_simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import crowd_simulation.algorithms.Obstacles;
+
+// Reads scenario files, one directive per line ('#' starts a comment):
+//
+//   name    <text>
+//   seed    <number>
+//   algorithm ghost|boid|scout|scout-orca
+//   param   <name> <value>                   Boid or Scout setter, e.g. param timeHorizon 2
+//   group   count=N spawn=<region> goal=<region> [radius=R|MIN..MAX] [maxSpeed=S|MIN..MAX]
+//   agents  <file.csv|file.bin> [radius=R] [maxSpeed=S]
+//   obstacle rect:x0,y0,x1,y1|disk:cx,cy,r   static wall that agents path around
+//
+// Regions are rect:x0,y0,x1,y1, disk:cx,cy,r and point:x,y (random points inside), ring:cx,cy,r
+// (evenly spaced along the circle, in agent order) and, for goals only, mirror:cx,cy (the spawn point
+// mirrored through cx,cy). Bulk agent files are relative to the scenario file. CSV rows are
+// x,y,goalX,goalY[,radius,maxSpeed] and are parsed straight from the byte stream; the binary form is
+// written by writeAgentsBinary and mapped from disk.
+public final class ScenarioLoader {
+    static final int BINARY_MAGIC = 0x43524147; // "CRAG"
+    static final int BINARY_VERSION = 1;
+    static final int BINARY_HEADER_SIZE = 16;
+    static final int BINARY_AGENT_SIZE = 24;
+
+    private ScenarioLoader() {}
+
+    public static Scenario load(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        String algorithm = "ghost";
+        Map<String, Float> parameters = new LinkedHashMap<>();
+        long seed = 1;
+        Obstacles obstacles = new Obstacles();
+        List<String[]> agentLines = new ArrayList<>();
+        List<Integer> agentLineNumbers = new ArrayList<>();
+        int lineNumber = 0;
+
+        // Directives first, so agent sources can use the seed wherever it is declared
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String[] tokens = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+                if (tokens[0].isEmpty()) continue;
+
+                try {
+                    switch (tokens[0]) {
+                        case "name" -> name = String.join(" ", Arrays.copyOfRange(tokens, 1, tokens.length));
+                        case "seed" -> seed = Long.parseLong(argument(tokens, 1));
+                        case "algorithm" -> algorithm = argument(tokens, 1);
+                        case "param" -> parameters.put(argument(tokens, 1), Float.parseFloat(argument(tokens, 2)));
+                        case "obstacle" -> addObstacle(argument(tokens, 1), obstacles);
+                        case "group", "agents" -> {
+                            agentLines.add(tokens);
+                            agentLineNumbers.add(lineNumber);
+                        }
+                        default -> throw new IllegalArgumentException("Unknown directive " + tokens[0]);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        AgentStore store = new AgentStore(estimateAgentCount(file, agentLines));
+        Random random = new Random(seed);
+        for (int i = 0; i < agentLines.size(); i++) {
+            String[] tokens = agentLines.get(i);
+            try {
+                if (tokens[0].equals("group")) {
+                    addGroup(tokens, store, random);
+                } else {
+                    addAgents(file.resolveSibling(argument(tokens, 1)), tokens, store);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + agentLineNumbers.get(i) + ": " + e.getMessage(), e);
+            }
+        }
+
+        Scenario scenario = new Scenario(name, store, algorithm, parameters, seed, obstacles);
+        // Fail on an unknown algorithm or parameter now rather than when the run starts
+        scenario.createAlgorithm();
+        return scenario;
+    }
+
+    // Sizes the store up front so a million agents do not go through repeated growth
+    private static int estimateAgentCount(Path file, List<String[]> agentLines) throws IOException {
+        long count = 0;
+        for (String[] tokens : agentLines) {
+            if (tokens[0].equals("group")) {
+                String value = attributes(tokens).get("count");
+                count += value != null ? Integer.parseInt(value) : 0;
+            } else {
+                Path agents = file.resolveSibling(argument(tokens, 1));
+                if (isBinary(agents) && Files.size(agents) >= BINARY_HEADER_SIZE) {
+                    count += (Files.size(agents) - BINARY_HEADER_SIZE) / BINARY_AGENT_SIZE;
+                }
+            }
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE - 8);
+    }
+
+    private static void addGroup(String[] tokens, AgentStore store, Random random) {
+        Map<String, String> attributes = attributes(tokens);
+        int count = Integer.parseInt(required(attributes, "count"));
+        Region spawn = Region.parse(required(attributes, "spawn"), false);
+        Region goal = Region.parse(required(attributes, "goal"), true);
+        float[] radius = range(attributes.getOrDefault("radius", String.valueOf(AgentStore.DEFAULT_RADIUS)));
+        float[] maxSpeed = range(attributes.getOrDefault("maxSpeed", String.valueOf(AgentStore.DEFAULT_MAX_SPEED)));
+        float[] start = new float[2];
+        float[] end = new float[2];
+
+        for (int i = 0; i < count; i++) {
+            spawn.point(random, i, count, 0, 0, start);
+            goal.point(random, i, count, start[0], start[1], end);
+            store.add(start[0], start[1], end[0], end[1], sample(random, radius), sample(random, maxSpeed));
+        }
+    }
+
+    private static void addObstacle(String spec, Obstacles obstacles) {
+        Region region = Region.parse(spec, false);
+        float[] values = region.values;
+        switch (region.shape) {
+            case "rect" -> obstacles.addRect(values[0], values[1], values[2], values[3]);
+            case "disk" -> obstacles.addDisk(values[0], values[1], values[2]);
+            default -> throw new IllegalArgumentException("Obstacles are rect or disk, not " + region.shape);
+        }
+    }
+
+    private static void addAgents(Path agents, String[] tokens, AgentStore store) throws IOException {
+        if (isBinary(agents)) {
+            readAgentsBinary(agents, store);
+        } else {
+            Map<String, String> attributes = attributes(tokens);
+            readAgentsCsv(agents, store,
+                    Float.parseFloat(attributes.getOrDefault("radius", String.valueOf(AgentStore.DEFAULT_RADIUS))),
+                    Float.parseFloat(attributes.getOrDefault("maxSpeed", String.valueOf(AgentStore.DEFAULT_MAX_SPEED))));
+        }
+    }
+
+    private static boolean isBinary(Path file) {
+        return file.getFileName().toString().endsWith(".bin");
+    }
+
+    // Rows of x,y,goalX,goalY[,radius,maxSpeed]; lines that start with a letter (headers) are skipped
+    public static int readAgentsCsv(Path file, AgentStore store, float defaultRadius, float defaultMaxSpeed)
+            throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            CsvNumbers numbers = new CsvNumbers(in);
+            float[] row = new float[6];
+            int added = 0;
+            int columns;
+            while ((columns = numbers.readRow(row)) >= 0) {
+                if (columns == 0) continue;
+                if (columns != 4 && columns != 6) {
+                    throw new IllegalArgumentException(file + ":" + numbers.line + ": expected 4 or 6 columns, got " + columns);
+                }
+                store.add(row[0], row[1], row[2], row[3],
+                        columns == 6 ? row[4] : defaultRadius, columns == 6 ? row[5] : defaultMaxSpeed);
+                added++;
+            }
+            return added;
+        }
+    }
+
+    public static int readAgentsBinary(Path file, AgentStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {}
+            header.flip();
+            if (header.remaining() < BINARY_HEADER_SIZE || header.getInt() != BINARY_MAGIC) {
+                throw new IOException("Not an agent file: " + file);
+            }
+            if (header.getInt() != BINARY_VERSION) {
+                throw new IOException("Unsupported agent file version: " + file);
+            }
+            long count = header.getLong();
+            if (count < 0 || store.size() + count > Integer.MAX_VALUE) {
+                throw new IOException("Agent file holds " + count + " agents, which do not fit a store: " + file);
+            }
+            if (BINARY_HEADER_SIZE + count * BINARY_AGENT_SIZE > channel.size()) {
+                throw new IOException("Agent file is truncated: " + file);
+            }
+            store.ensureCapacity((int) (store.size() + count));
+
+            // Mapped in windows, since one mapping cannot exceed 2 GB
+            long agentsPerWindow = (1 << 30) / BINARY_AGENT_SIZE;
+            for (long first = 0; first < count; first += agentsPerWindow) {
+                long agents = Math.min(agentsPerWindow, count - first);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        BINARY_HEADER_SIZE + first * BINARY_AGENT_SIZE, agents * BINARY_AGENT_SIZE);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                for (long i = 0; i < agents; i++) {
+                    store.add(window.getFloat(), window.getFloat(), window.getFloat(), window.getFloat(),
+                            window.getFloat(), window.getFloat());
+                }
+            }
+            return (int) count;
+        }
+    }
+
+    public static void writeAgentsBinary(AgentStore store, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putLong(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                if (buffer.remaining() < BINARY_AGENT_SIZE) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                buffer.putFloat(store.getX(i)).putFloat(store.getY(i))
+                        .putFloat(store.getGoalX(i)).putFloat(store.getGoalY(i))
+                        .putFloat(store.getRadius(i)).putFloat(store.getMaxSpeed(i));
+            }
+            out.write(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    private static String argument(String[] tokens, int index) {
+        if (index >= tokens.length) {
+            throw new IllegalArgumentException(tokens[0] + " is missing an argument");
+        }
+        return tokens[index];
+    }
+
+    private static Map<String, String> attributes(String[] tokens) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 1; i < tokens.length; i++) {
+            int equals = tokens[i].indexOf('=');
+            if (equals > 0) {
+                attributes.put(tokens[i].substring(0, equals), tokens[i].substring(equals + 1));
+            }
+        }
+        return attributes;
+    }
+
+    private static String required(Map<String, String> attributes, String name) {
+        String value = attributes.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("group is missing " + name + "=");
+        }
+        return value;
+    }
+
+    // "R" or "MIN..MAX"
+    private static float[] range(String value) {
+        int dots = value.indexOf("..");
+        if (dots < 0) {
+            float single = Float.parseFloat(value);
+            return new float[] {single, single};
+        }
+        return new float[] {Float.parseFloat(value.substring(0, dots)), Float.parseFloat(value.substring(dots + 2))};
+    }
+
+    private static float sample(Random random, float[] range) {
+        return range[0] == range[1] ? range[0] : range[0] + random.nextFloat() * (range[1] - range[0]);
+    }
+
+    private static class Region {
+        private final String shape;
+        private final float[] values;
+
+        private Region(String shape, float[] values) {
+            this.shape = shape;
+            this.values = values;
+        }
+
+        static Region parse(String spec, boolean goal) {
+            int colon = spec.indexOf(':');
+            String shape = colon < 0 ? spec : spec.substring(0, colon);
+            String[] parts = colon < 0 ? new String[0] : spec.substring(colon + 1).split(",");
+            float[] values = new float[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Float.parseFloat(parts[i]);
+            }
+
+            int expected = switch (shape) {
+                case "rect" -> 4;
+                case "disk", "ring" -> 3;
+                case "point" -> 2;
+                case "mirror" -> goal ? 2 : -1;
+                default -> -1;
+            };
+            if (expected < 0) {
+                throw new IllegalArgumentException("Unknown " + (goal ? "goal" : "spawn") + " region " + shape);
+            }
+            if (values.length != expected) {
+                throw new IllegalArgumentException(shape + " takes " + expected + " numbers: " + spec);
+            }
+            return new Region(shape, values);
+        }
+
+        // Point for agent index of count; from is the agent's spawn point, used by mirror goals
+        void point(Random random, int index, int count, float fromX, float fromY, float[] point) {
+            switch (shape) {
+                case "rect" -> {
+                    point[0] = values[0] + random.nextFloat() * (values[2] - values[0]);
+                    point[1] = values[1] + random.nextFloat() * (values[3] - values[1]);
+                }
+                case "disk" -> {
+                    double angle = random.nextDouble() * Math.PI * 2;
+                    double distance = values[2] * Math.sqrt(random.nextDouble());
+                    point[0] = values[0] + (float) (distance * Math.cos(angle));
+                    point[1] = values[1] + (float) (distance * Math.sin(angle));
+                }
+                case "ring" -> {
+                    float angle = (float) (index * (Math.PI * 2 / count));
+                    point[0] = values[0] + values[2] * (float) Math.cos(angle);
+                    point[1] = values[1] + values[2] * (float) Math.sin(angle);
+                }
+                case "point" -> {
+                    point[0] = values[0];
+                    point[1] = values[1];
+                }
+                default -> {
+                    point[0] = 2 * values[0] - fromX;
+                    point[1] = 2 * values[1] - fromY;
+                }
+            }
+        }
+    }
+
+    // Parses comma-separated decimal numbers directly from bytes, one row at a time
+    private static class CsvNumbers {
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position = 0;
+        private int limit = 0;
+        private int line = 0;
+
+        CsvNumbers(InputStream in) {
+            this.in = in;
+        }
+
+        private int next() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        // Returns the number of columns read into row, 0 for a blank or skipped line, -1 at the end
+        int readRow(float[] row) throws IOException {
+            int c = next();
+            if (c < 0) return -1;
+            line++;
+
+            int columns = 0;
+            while (true) {
+                while (c == ' ' || c == '\t' || c == '\r') c = next();
+                if (c == '\n' || c < 0) return columns;
+                if (columns == 0 && (Character.isLetter(c) || c == '#')) {
+                    while (c != '\n' && c >= 0) c = next();
+                    return 0;
+                }
+                if (columns == row.length) {
+                    throw new IllegalArgumentException("line " + line + ": too many columns");
+                }
+
+                // Sign, digits, fraction and exponent, accumulated into a long mantissa
+                boolean negative = c == '-';
+                if (c == '-' || c == '+') c = next();
+                long mantissa = 0;
+                int exponent = 0;
+                int digits = 0;
+                while (c >= '0' && c <= '9') {
+                    if (mantissa < 100_000_000_000_000_000L) mantissa = mantissa * 10 + (c - '0'); else exponent++;
+                    digits++;
+                    c = next();
+                }
+                if (c == '.') {
+                    c = next();
+                    while (c >= '0' && c <= '9') {
+                        if (mantissa < 100_000_000_000_000_000L) {
+                            mantissa = mantissa * 10 + (c - '0');
+                            exponent--;
+                        }
+                        digits++;
+                        c = next();
+                    }
+                }
+                if (digits == 0) {
+                    throw new IllegalArgumentException("line " + line + ": expected a number");
+                }
+                if (c == 'e' || c == 'E') {
+                    c = next();
+                    boolean negativeExponent = c == '-';
+                    if (c == '-' || c == '+') c = next();
+                    int value = 0;
+                    while (c >= '0' && c <= '9') {
+                        value = Math.min(value * 10 + (c - '0'), 10_000);
+                        c = next();
+                    }
+                    exponent += negativeExponent ? -value : value;
+                }
+
+                double value = mantissa;
+                if (exponent != 0) {
+                    int magnitude = Math.abs(exponent);
+                    double scale = magnitude < POWERS_OF_TEN.length ? POWERS_OF_TEN[magnitude] : Math.pow(10, magnitude);
+                    value = exponent < 0 ? value / scale : value * scale;
+                }
+                row[columns++] = (float) (negative ? -value : value);
+
+                while (c == ' ' || c == '\t' || c == '\r') c = next();
+                if (c == ',' || c == ';') {
+                    c = next();
+                } else if (c != '\n' && c >= 0) {
+                    throw new IllegalArgumentException("line " + line + ": unexpected '" + (char) c + "'");
+                }
+            }
+        }
+    }
+}
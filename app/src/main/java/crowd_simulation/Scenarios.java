@@ -0,0 +1,52 @@
+package crowd_simulation;
+
+import java.util.Random;
+
+public final class Scenarios {
+    private Scenarios() {}
+
+    // Agents in a circle formation with goals on the opposite side
+    public static AgentStore circle(int agentCount, float centerX, float centerY, float radius) {
+        return circle(new AgentStore(agentCount), agentCount, centerX, centerY, radius);
+    }
+
+    // Adds the circle to an existing store, e.g. one kept off the heap
+    public static AgentStore circle(AgentStore store, int agentCount, float centerX, float centerY, float radius) {
+        store.ensureCapacity(store.size() + agentCount);
+        for (int i = 0; i < agentCount; i++) {
+            float angle = (float)(i * (Math.PI * 2 / agentCount));
+            float startX = centerX + radius * (float) Math.cos(angle);
+            float startY = centerY + radius * (float) Math.sin(angle);
+
+            // Goal is on opposite side
+            float goalX = centerX - radius * (float) Math.cos(angle);
+            float goalY = centerY - radius * (float) Math.sin(angle);
+
+            store.add(startX, startY, goalX, goalY);
+        }
+
+        return store;
+    }
+
+    // Circle radius that keeps agents about two diameters apart along the ring
+    public static float circleRadiusFor(int agentCount) {
+        float spacing = AgentStore.DEFAULT_RADIUS * 4;
+        return Math.max(150, agentCount * spacing / (float) (Math.PI * 2));
+    }
+
+    // Agents scattered over a square at the given density (agents per 100x100 area),
+    // each heading for the point mirrored through the center
+    public static AgentStore uniform(int agentCount, float density, long seed) {
+        AgentStore store = new AgentStore(agentCount);
+        Random random = new Random(seed);
+        float side = (float) Math.sqrt(agentCount / density) * 100;
+
+        for (int i = 0; i < agentCount; i++) {
+            float x = random.nextFloat() * side;
+            float y = random.nextFloat() * side;
+            store.add(x, y, side - x, side - y);
+        }
+
+        return store;
+    }
+}
@@ -0,0 +1,306 @@
+package crowd_simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+
+// Runs a simulation split across ShardWorker processes on this machine. The world is cut into strips
+// along x at quantiles of the starting positions, so each worker starts with the same number of agents.
+// The coordinator starts the workers, deals out the agents, steps all workers in lockstep and gathers
+// the agents back at the end for the benchmark.
+public class ShardCoordinator implements AutoCloseable {
+    private static final String USAGE =
+            "Usage: ShardCoordinator [--workers N] [--algorithm ghost|boid|scout|scout-orca] [--agents N] [--steps N]"
+            + " [--dt SECONDS] [--threads N] [--scenario FILE]";
+    // Options that the workers need to build the same algorithm
+    private static final List<String> WORKER_OPTIONS = List.of("algorithm", "scenario", "dt", "threads");
+    // Extra halo width, so agents right at the interaction radius are not lost to rounding
+    private static final float HALO_MARGIN = 1f;
+    private static final int CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    private final int agentCount;
+    private final float halo;
+    // Strip k runs from borders[k] inclusive to borders[k + 1] exclusive
+    private final float[] borders;
+    private final List<Process> processes = new ArrayList<>();
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+    private final int[] ownedCounts;
+    private int reachedGoalCount;
+    private long stepCount = 0;
+    private long migrationCount = 0;
+
+    // Starts the workers and deals out the store's agents; options configure the algorithm as for
+    // HeadlessRunner and are passed on to the workers
+    public ShardCoordinator(AgentStore store, Scenario scenario, Map<String, String> options, int workerCount)
+            throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Need at least one worker: " + workerCount);
+        }
+        agentCount = store.size();
+        reachedGoalCount = store.getReachedGoalCount();
+        CrowdAlgorithm algorithm = HeadlessRunner.createAlgorithm(options, scenario);
+        float timeStep = Float.parseFloat(options.getOrDefault("dt", String.valueOf(SimulationEngine.DEFAULT_TIME_STEP)));
+
+        // Neighbors within the interaction radius steer each other and touching agents collide, so the
+        // halo covers both, plus a step's travel for agents that just moved out and are seen from there
+        float largestRadius = 0;
+        float fastestSpeed = 0;
+        for (int i = 0; i < agentCount; i++) {
+            largestRadius = Math.max(largestRadius, store.getRadius(i));
+            fastestSpeed = Math.max(fastestSpeed, store.getMaxSpeed(i));
+        }
+        halo = Math.max(algorithm.getInteractionRadius(), 2 * largestRadius) + fastestSpeed * timeStep + HALO_MARGIN;
+        borders = cutStrips(store, workerCount);
+        // Copies only come from the next strip over, and migrants only move one strip per step
+        for (int k = 1; k < workerCount - 1; k++) {
+            if (borders[k + 1] - borders[k] < halo + fastestSpeed * timeStep) {
+                throw new IllegalArgumentException(String.format(
+                        "Strips of %d workers are narrower than the %.1f halo; use fewer workers", workerCount, halo));
+            }
+        }
+
+        sockets = new Socket[workerCount];
+        inputs = new DataInputStream[workerCount];
+        outputs = new DataOutputStream[workerCount];
+        ownedCounts = new int[workerCount];
+        try (ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int k = 0; k < workerCount; k++) {
+                processes.add(launch(k, server.getLocalPort(), options));
+            }
+
+            // Workers say hello in whatever order they start up in
+            int[] ports = new int[workerCount];
+            for (int connected = 0; connected < workerCount; connected++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                int shard = in.readInt();
+                ports[shard] = in.readInt();
+                sockets[shard] = socket;
+                inputs[shard] = in;
+                outputs[shard] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+
+            for (int k = 0; k < workerCount; k++) {
+                deal(store, k, k > 0 ? ports[k - 1] : -1);
+            }
+        } catch (IOException | RuntimeException e) {
+            shutDown();
+            throw e;
+        }
+    }
+
+    // Borders at quantiles of x; the outer strips reach to infinity
+    private static float[] cutStrips(AgentStore store, int workerCount) {
+        float[] positions = new float[store.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = store.getX(i);
+        }
+        Arrays.sort(positions);
+
+        float[] borders = new float[workerCount + 1];
+        borders[0] = Float.NEGATIVE_INFINITY;
+        borders[workerCount] = Float.POSITIVE_INFINITY;
+        for (int k = 1; k < workerCount; k++) {
+            borders[k] = positions.length > 0 ? positions[(int) ((long) positions.length * k / workerCount)] : 0;
+        }
+        return borders;
+    }
+
+    // Starts a worker JVM with the flags this one runs with (modules, preview, heap) except debugger
+    // and profiler agents
+    private Process launch(int shard, int port, Map<String, String> options) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!argument.startsWith("-agentlib") && !argument.startsWith("-javaagent") && !argument.startsWith("-Xrunjdwp")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(),
+                "--coordinator", String.valueOf(port), "--shard", String.valueOf(shard)));
+        for (String option : WORKER_OPTIONS) {
+            if (options.containsKey(option)) {
+                command.add("--" + option);
+                command.add(options.get(option));
+            }
+        }
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private void deal(AgentStore store, int shard, int leftPort) throws IOException {
+        DataOutputStream out = outputs[shard];
+        out.writeFloat(borders[shard]);
+        out.writeFloat(borders[shard + 1]);
+        out.writeFloat(halo);
+        out.writeInt(leftPort);
+        out.writeBoolean(shard < sockets.length - 1);
+        out.writeInt(agentCount);
+
+        int count = 0;
+        for (int i = 0; i < agentCount; i++) {
+            if (stripOf(store.getX(i)) == shard) count++;
+        }
+        out.writeInt(count);
+        for (int i = 0; i < agentCount; i++) {
+            if (stripOf(store.getX(i)) == shard) {
+                ShardWorker.writeAgent(out, store, i, i);
+            }
+        }
+        out.flush();
+        ownedCounts[shard] = count;
+    }
+
+    private int stripOf(float x) {
+        int k = 0;
+        while (x >= borders[k + 1]) {
+            k++;
+        }
+        return k;
+    }
+
+    // One step on every worker, in lockstep
+    public void step() throws IOException {
+        for (DataOutputStream out : outputs) {
+            out.writeByte(ShardWorker.STEP);
+            out.flush();
+        }
+        reachedGoalCount = 0;
+        for (int k = 0; k < inputs.length; k++) {
+            ownedCounts[k] = inputs[k].readInt();
+            reachedGoalCount += inputs[k].readInt();
+            migrationCount += inputs[k].readInt();
+        }
+        stepCount++;
+    }
+
+    // Stops the workers and returns every agent's final state, in the order of the starting store
+    public AgentStore gather() throws IOException {
+        for (DataOutputStream out : outputs) {
+            out.writeByte(ShardWorker.FINISH);
+            out.flush();
+        }
+
+        AgentStore[] parts = new AgentStore[inputs.length];
+        int[] partOf = new int[agentCount];
+        int[] indexInPart = new int[agentCount];
+        Arrays.fill(partOf, -1);
+        for (int k = 0; k < inputs.length; k++) {
+            int count = inputs[k].readInt();
+            parts[k] = new AgentStore(count);
+            for (int j = 0; j < count; j++) {
+                int id = ShardWorker.readAgent(inputs[k], parts[k], false);
+                partOf[id] = k;
+                indexInPart[id] = j;
+            }
+        }
+
+        AgentStore gathered = new AgentStore(agentCount);
+        for (int id = 0; id < agentCount; id++) {
+            if (partOf[id] < 0) {
+                throw new IllegalStateException("No worker returned agent " + id);
+            }
+            ShardWorker.copyAgent(parts[partOf[id]], indexInPart[id], gathered, false);
+        }
+        close();
+        return gathered;
+    }
+
+    @Override
+    public void close() throws IOException {
+        shutDown();
+    }
+
+    // Not close() itself, which a subclass could override before the constructor has finished
+    private void shutDown() throws IOException {
+        for (Socket socket : sockets) {
+            if (socket != null) socket.close();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isFinished() { return reachedGoalCount == agentCount; }
+    public long getStepCount() { return stepCount; }
+    // Agents that crossed into another strip, over all steps
+    public long getMigrationCount() { return migrationCount; }
+    public int getWorkerCount() { return sockets.length; }
+    // Agents the worker owned after the last step
+    public int getOwnedCount(int worker) { return ownedCounts[worker]; }
+    public float getHalo() { return halo; }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = HeadlessRunner.parseOptions(args);
+        if (options.containsKey("store")) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        Scenario scenario = options.containsKey("scenario") ? ScenarioLoader.load(Path.of(options.get("scenario"))) : null;
+        int agentCount = scenario != null ? scenario.getStore().size()
+                : Integer.parseInt(options.getOrDefault("agents", "20"));
+        AgentStore store = HeadlessRunner.createStore("heap", scenario, agentCount);
+        long maxSteps = Long.parseLong(options.getOrDefault("steps", "1000"));
+        int workerCount = Integer.parseInt(options.getOrDefault("workers", "2"));
+        String algorithmName = HeadlessRunner.createAlgorithm(options, scenario).toString();
+
+        Benchmark benchmark = new Benchmark();
+        benchmark.startBenchmark(algorithmName);
+        long start = System.nanoTime();
+        AgentStore gathered;
+        int[] ownedCounts = new int[workerCount];
+        long steps;
+        long migrations;
+        float halo;
+        try (ShardCoordinator coordinator = new ShardCoordinator(store, scenario, options, workerCount)) {
+            while (coordinator.getStepCount() < maxSteps && !coordinator.isFinished()) {
+                coordinator.step();
+            }
+            for (int k = 0; k < workerCount; k++) {
+                ownedCounts[k] = coordinator.getOwnedCount(k);
+            }
+            steps = coordinator.getStepCount();
+            migrations = coordinator.getMigrationCount();
+            halo = coordinator.getHalo();
+            gathered = coordinator.gather();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        benchmark.endBenchmark(gathered);
+
+        double stepsPerSecond = steps / seconds;
+        System.out.printf("Algorithm: %s%n", algorithmName);
+        System.out.printf("Agents: %d%n", agentCount);
+        System.out.printf("Workers: %d (halo %.1f)%n", workerCount, halo);
+        System.out.printf("Agents per Worker: %s%n", Arrays.toString(ownedCounts));
+        System.out.printf("Migrations: %d%n", migrations);
+        System.out.printf("Steps: %d%n", steps);
+        System.out.printf("Wall Time: %.3f seconds%n", seconds);
+        System.out.printf("Steps per Second: %.1f%n", stepsPerSecond);
+        System.out.printf("Agent Steps per Second: %.0f%n", stepsPerSecond * agentCount);
+        System.out.println();
+        System.out.print(benchmark.getComparisonReport());
+    }
+}
@@ -0,0 +1,349 @@
+package crowd_simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.ParallelExecutor;
+
+// One strip of a sharded simulation, run as its own process by ShardCoordinator. The worker owns the
+// agents inside its strip and steps them with the crowd algorithm. Before every step it swaps agents
+// with the workers on either side over local sockets: agents that crossed a border move to the strip
+// they are in now, and agents within the halo width of a border are sent as passive copies, so the
+// algorithm sees every agent that its own agents can interact with.
+//
+// The store is rebuilt each step with the owned agents first and the passive copies after them, so
+// per-store caches such as neighbor lists and contact tracking start over every step.
+public class ShardWorker {
+    // Commands from the coordinator
+    static final byte STEP = 1;
+    static final byte FINISH = 2;
+
+    private final CrowdAlgorithm algorithm;
+    private final float timeStep;
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shard-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private float minX;
+    private float maxX;
+    private float halo;
+    private Neighbor left;
+    private Neighbor right;
+
+    // The owned agents are the first ownedCount in the store, the passive copies follow; ids are the
+    // agents' indices in the coordinator's store
+    private AgentStore store = new AgentStore();
+    private int ownedCount = 0;
+    private int[] ids = new int[0];
+    // Index in the next store by id while it is built, -1 otherwise
+    private int[] slots = new int[0];
+    // Where each owned agent goes at the next exchange: -1 to the left neighbor, 1 to the right, 0 stays
+    private byte[] sides = new byte[0];
+
+    // A worker on the other side of a border
+    private static class Neighbor {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Neighbor(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    ShardWorker(CrowdAlgorithm algorithm, float timeStep) {
+        this.algorithm = algorithm;
+        this.timeStep = timeStep;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = HeadlessRunner.parseOptions(args);
+        Scenario scenario = options.containsKey("scenario") ? ScenarioLoader.load(Path.of(options.get("scenario"))) : null;
+        CrowdAlgorithm algorithm = HeadlessRunner.createAlgorithm(options, scenario);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        float timeStep = Float.parseFloat(options.getOrDefault("dt", String.valueOf(SimulationEngine.DEFAULT_TIME_STEP)));
+        ShardWorker worker = new ShardWorker(algorithm, timeStep);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ParallelExecutor executor = threads > 1 ? new ParallelExecutor(threads) : null;
+                Socket coordinator = new Socket(loopback, Integer.parseInt(options.get("coordinator")));
+                ServerSocket server = new ServerSocket(0, 1, loopback)) {
+            algorithm.setParallelExecutor(executor);
+            coordinator.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(coordinator.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(coordinator.getOutputStream()));
+            out.writeInt(Integer.parseInt(options.get("shard")));
+            out.writeInt(server.getLocalPort());
+            out.flush();
+
+            worker.configure(in, server);
+            worker.serve(in, out);
+        } finally {
+            worker.close();
+        }
+    }
+
+    // Reads the strip, the halo width, the left neighbor's port, the crowd size and the starting agents,
+    // then links up with both neighbors
+    private void configure(DataInputStream in, ServerSocket server) throws IOException {
+        minX = in.readFloat();
+        maxX = in.readFloat();
+        halo = in.readFloat();
+        int leftPort = in.readInt();
+        boolean hasRight = in.readBoolean();
+        slots = new int[in.readInt()];
+        Arrays.fill(slots, -1);
+
+        int count = in.readInt();
+        store = new AgentStore(count);
+        ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = readAgent(in, store, false);
+        }
+        ownedCount = count;
+
+        // Each worker connects to its left neighbor and accepts its right one, so no two wait on each other
+        if (leftPort >= 0) {
+            left = new Neighbor(new Socket(InetAddress.getLoopbackAddress(), leftPort));
+        }
+        if (hasRight) {
+            right = new Neighbor(server.accept());
+        }
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte command;
+            try {
+                command = in.readByte();
+            } catch (EOFException e) {
+                // The coordinator gave up on the run
+                return;
+            }
+            if (command == STEP) {
+                int migrated = step();
+                out.writeInt(ownedCount);
+                out.writeInt(store.getReachedGoalCount());
+                out.writeInt(migrated);
+                out.flush();
+            } else if (command == FINISH) {
+                out.writeInt(ownedCount);
+                for (int i = 0; i < ownedCount; i++) {
+                    writeAgent(out, store, i, ids[i]);
+                }
+                out.flush();
+                return;
+            } else {
+                throw new IOException("Unknown command: " + command);
+            }
+        }
+    }
+
+    // Swaps border agents with the neighbors and steps the strip; returns how many agents left it
+    private int step() throws IOException {
+        if (sides.length < ownedCount) {
+            sides = new byte[store.size()];
+        }
+        int migrated = 0;
+        for (int i = 0; i < ownedCount; i++) {
+            float x = store.getX(i);
+            sides[i] = (byte) (x < minX ? -1 : x >= maxX ? 1 : 0);
+            if (sides[i] != 0) migrated++;
+        }
+
+        // Both neighbors write while this worker reads, so sends go out on their own thread; otherwise two
+        // workers with full socket buffers would wait on each other forever
+        Future<?> sent = sender.submit(() -> {
+            if (left != null) send(left, -1);
+            if (right != null) send(right, 1);
+            return null;
+        });
+        AgentStore arrivals = new AgentStore();
+        AgentStore copies = new AgentStore();
+        int[] arrivalIds = new int[0];
+        int[] copyIds = new int[0];
+        for (Neighbor neighbor : new Neighbor[] {left, right}) {
+            if (neighbor == null) continue;
+            arrivalIds = receive(neighbor.in, arrivals, arrivalIds, false);
+            copyIds = receive(neighbor.in, copies, copyIds, true);
+        }
+        try {
+            sent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending to a neighbor", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Sending to a neighbor failed", e.getCause());
+        }
+
+        // Owned agents first: those that stayed, then those that moved in. Agents that moved out stay
+        // visible as passive copies for this step, since the neighbor's copies were picked before they arrived
+        AgentStore next = new AgentStore(ownedCount + arrivals.size() + copies.size());
+        int[] nextIds = new int[ownedCount + arrivals.size() + copies.size()];
+        for (int i = 0; i < ownedCount; i++) {
+            if (sides[i] == 0) {
+                nextIds[next.size()] = ids[i];
+                copyAgent(store, i, next, false);
+            }
+        }
+        for (int j = 0; j < arrivals.size(); j++) {
+            nextIds[next.size()] = arrivalIds[j];
+            copyAgent(arrivals, j, next, false);
+        }
+        int nextOwned = next.size();
+        for (int i = 0; i < ownedCount; i++) {
+            if (sides[i] != 0) {
+                nextIds[next.size()] = ids[i];
+                copyAgent(store, i, next, true);
+            }
+        }
+        for (int j = 0; j < copies.size(); j++) {
+            nextIds[next.size()] = copyIds[j];
+            copyAgent(copies, j, next, true);
+        }
+
+        // Agents that were here last step too, owned or not, keep what the algorithm knows about them
+        int[] newIndexOf = new int[store.size()];
+        for (int j = 0; j < next.size(); j++) {
+            slots[nextIds[j]] = j;
+        }
+        for (int i = 0; i < store.size(); i++) {
+            newIndexOf[i] = slots[ids[i]];
+        }
+        for (int j = 0; j < next.size(); j++) {
+            slots[nextIds[j]] = -1;
+        }
+        algorithm.remapAgents(next, newIndexOf);
+
+        algorithm.updateAgents(next, timeStep);
+        next.update(timeStep);
+        store = next;
+        ownedCount = nextOwned;
+        ids = nextIds;
+        return migrated;
+    }
+
+    // Reads a count and that many agents into the store, appending their ids
+    private static int[] receive(DataInputStream in, AgentStore store, int[] ids, boolean passive) throws IOException {
+        int count = in.readInt();
+        int first = ids.length;
+        ids = Arrays.copyOf(ids, first + count);
+        for (int j = 0; j < count; j++) {
+            ids[first + j] = readAgent(in, store, passive);
+        }
+        return ids;
+    }
+
+    // Agents leaving for the neighbor, then copies of the agents within the halo of the shared border
+    private void send(Neighbor neighbor, int side) throws IOException {
+        int migrants = 0;
+        int copies = 0;
+        for (int i = 0; i < ownedCount; i++) {
+            if (sides[i] == side) {
+                migrants++;
+            } else if (sides[i] == 0 && nearBorder(i, side)) {
+                copies++;
+            }
+        }
+
+        neighbor.out.writeInt(migrants);
+        for (int i = 0; i < ownedCount; i++) {
+            if (sides[i] == side) {
+                writeAgent(neighbor.out, store, i, ids[i]);
+            }
+        }
+        neighbor.out.writeInt(copies);
+        for (int i = 0; i < ownedCount; i++) {
+            if (sides[i] == 0 && nearBorder(i, side)) {
+                writeAgent(neighbor.out, store, i, ids[i]);
+            }
+        }
+        neighbor.out.flush();
+    }
+
+    private boolean nearBorder(int i, int side) {
+        return side < 0 ? store.getX(i) < minX + halo : store.getX(i) >= maxX - halo;
+    }
+
+    private void close() throws IOException {
+        sender.shutdownNow();
+        if (left != null) left.socket.close();
+        if (right != null) right.socket.close();
+    }
+
+    // One agent's full state on the wire, with its id
+    static void writeAgent(DataOutputStream out, AgentStore store, int i, int id) throws IOException {
+        out.writeInt(id);
+        out.writeFloat(store.getX(i));
+        out.writeFloat(store.getY(i));
+        out.writeFloat(store.getVelocityX(i));
+        out.writeFloat(store.getVelocityY(i));
+        out.writeFloat(store.getGoalX(i));
+        out.writeFloat(store.getGoalY(i));
+        out.writeFloat(store.getRadius(i));
+        out.writeFloat(store.getMaxSpeed(i));
+        out.writeFloat(store.getDistanceTraveled(i));
+        out.writeInt(store.getCollisions(i));
+        out.writeBoolean(store.hasReachedGoal(i));
+        out.writeFloat(store.getTimeToGoal(i));
+    }
+
+    // Adds the next agent on the wire to the store and returns its id
+    static int readAgent(DataInputStream in, AgentStore store, boolean passive) throws IOException {
+        int id = in.readInt();
+        float x = in.readFloat();
+        float y = in.readFloat();
+        float velocityX = in.readFloat();
+        float velocityY = in.readFloat();
+        float goalX = in.readFloat();
+        float goalY = in.readFloat();
+        float radius = in.readFloat();
+        float maxSpeed = in.readFloat();
+        float distanceTraveled = in.readFloat();
+        int collisions = in.readInt();
+        boolean reachedGoal = in.readBoolean();
+        float timeToGoal = in.readFloat();
+
+        if (passive) {
+            store.addPassive(x, y, velocityX, velocityY, radius, maxSpeed);
+        } else {
+            int i = store.add(x, y, goalX, goalY, radius, maxSpeed);
+            store.setVelocity(i, velocityX, velocityY);
+            store.setNextVelocity(i, velocityX, velocityY);
+            store.setProgress(i, distanceTraveled, collisions, reachedGoal, timeToGoal);
+        }
+        return id;
+    }
+
+    static void copyAgent(AgentStore from, int i, AgentStore to, boolean passive) {
+        if (passive) {
+            to.addPassive(from.getX(i), from.getY(i), from.getVelocityX(i), from.getVelocityY(i),
+                    from.getRadius(i), from.getMaxSpeed(i));
+            return;
+        }
+        int j = to.add(from.getX(i), from.getY(i), from.getGoalX(i), from.getGoalY(i), from.getRadius(i), from.getMaxSpeed(i));
+        to.setVelocity(j, from.getVelocityX(i), from.getVelocityY(i));
+        to.setNextVelocity(j, from.getVelocityX(i), from.getVelocityY(i));
+        to.setProgress(j, from.getDistanceTraveled(i), from.getCollisions(i), from.hasReachedGoal(i), from.getTimeToGoal(i));
+    }
+}
@@ -0,0 +1,78 @@
+package crowd_simulation;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+
+// Steps a crowd at a fixed timestep, independent of any window or frame rate
+public class SimulationEngine {
+    public static final float DEFAULT_TIME_STEP = 1f / 60f;
+
+    // Cap on catch-up steps per advance so a stalled caller cannot spiral
+    private static final int MAX_STEPS_PER_ADVANCE = 8;
+
+    private final AgentStore store;
+    private CrowdAlgorithm algorithm;
+    private final float timeStep;
+    private float accumulator = 0;
+    private long stepCount = 0;
+    private PhaseTimer timer;
+
+    public SimulationEngine(AgentStore store, CrowdAlgorithm algorithm) {
+        this(store, algorithm, DEFAULT_TIME_STEP);
+    }
+
+    public SimulationEngine(AgentStore store, CrowdAlgorithm algorithm, float timeStep) {
+        if (timeStep <= 0) {
+            throw new IllegalArgumentException("Time step must be positive: " + timeStep);
+        }
+        this.store = store;
+        this.algorithm = algorithm;
+        this.timeStep = timeStep;
+    }
+
+    public void step() {
+        if (timer == null) {
+            algorithm.updateAgents(store, timeStep);
+            store.update(timeStep);
+        } else {
+            long start = System.nanoTime();
+            algorithm.updateAgents(store, timeStep);
+            long updated = System.nanoTime();
+            store.update(timeStep);
+            long end = System.nanoTime();
+            timer.record(PhaseTimer.Phase.UPDATE_AGENTS, updated - start);
+            timer.record(PhaseTimer.Phase.INTEGRATE, end - updated);
+            timer.record(PhaseTimer.Phase.STEP, end - start);
+        }
+        stepCount++;
+    }
+
+    // Runs as many fixed steps as fit in the elapsed real time, returns the number run
+    public int advance(float elapsedSeconds) {
+        accumulator += elapsedSeconds;
+        int steps = 0;
+        while (accumulator >= timeStep && steps < MAX_STEPS_PER_ADVANCE) {
+            step();
+            accumulator -= timeStep;
+            steps++;
+        }
+        if (steps == MAX_STEPS_PER_ADVANCE) {
+            accumulator = 0;
+        }
+        return steps;
+    }
+
+    public boolean isFinished() {
+        return store.isFinished();
+    }
+
+    public AgentStore getStore() { return store; }
+    public CrowdAlgorithm getAlgorithm() { return algorithm; }
+    public void setAlgorithm(CrowdAlgorithm algorithm) { this.algorithm = algorithm; }
+    // Times each step's phases into the timer; null turns timing off
+    public void setPhaseTimer(PhaseTimer timer) { this.timer = timer; }
+    public float getTimeStep() { return timeStep; }
+    public long getStepCount() { return stepCount; }
+    // For runs restored from a checkpoint, which carry on counting from where it was written
+    void setStepCount(long stepCount) { this.stepCount = stepCount; }
+    public float getSimulatedTime() { return stepCount * timeStep; }
+}
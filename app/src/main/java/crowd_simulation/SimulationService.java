@@ -0,0 +1,345 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+
+// Local HTTP service for what-if runs from other tools; everything answers in JSON:
+//   POST   /sessions?algorithm=scout&agents=500     new session; layout (circle or uniform), density, seed, dt,
+//                                                  scenario (a file on this machine) and algorithm parameters
+//                                                  such as timeHorizon=2 are optional
+//   GET    /sessions                               all sessions
+//   GET    /sessions/{id}                          the session's metrics
+//   POST   /sessions/{id}/step?steps=N             runs N steps or until everyone arrived, returns the metrics
+//   GET    /sessions/{id}/positions                agent positions and velocities
+//   POST   /sessions/{id}/stream?steps=N&every=K   runs N steps and streams positions every K steps as JSON
+//                                                  lines, then the metrics
+//   DELETE /sessions/{id}                          ends the session
+// Requests and sessions each get a virtual thread, so hundreds of mostly idle sessions are cheap. The
+// stepping itself runs on a pool with one thread per core.
+public class SimulationService implements AutoCloseable {
+    private static final String USAGE =
+            "Usage: SimulationService [--port N] [--cpus N] [--max-sessions N] [--max-agents N]";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_MAX_SESSIONS = 1000;
+    // Per session; every session shares this JVM's heap
+    private static final int DEFAULT_MAX_AGENTS = 1_000_000;
+
+    private final HttpServer server;
+    private final ExecutorService requestThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService cpuPool;
+    private final Map<Integer, SimulationSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final int maxSessions;
+    private final int maxAgents;
+    // Sessions open or being created, so concurrent requests cannot together go over maxSessions
+    private final AtomicInteger reservedSessions = new AtomicInteger();
+
+    public SimulationService(int port, int cpuCount, int maxSessions) throws IOException {
+        this(port, cpuCount, maxSessions, DEFAULT_MAX_AGENTS);
+    }
+
+    // Port 0 picks a free one; the service only listens on loopback
+    public SimulationService(int port, int cpuCount, int maxSessions, int maxAgents) throws IOException {
+        if (cpuCount < 1) {
+            throw new IllegalArgumentException("Need at least one CPU: " + cpuCount);
+        }
+        this.maxSessions = maxSessions;
+        this.maxAgents = maxAgents;
+        AtomicInteger cpuThreads = new AtomicInteger();
+        cpuPool = Executors.newFixedThreadPool(cpuCount, task -> {
+            Thread thread = new Thread(task, "service-cpu-" + cpuThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/sessions", this::handle);
+        server.setExecutor(requestThreads);
+    }
+
+    public void start() { server.start(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        sessions.values().forEach(SimulationSession::close);
+        sessions.clear();
+        // Slices that never started are cancelled, so sessions waiting on them fail instead of hanging
+        for (Runnable slice : cpuPool.shutdownNow()) {
+            if (slice instanceof Future<?> future) {
+                future.cancel(false);
+            }
+        }
+        requestThreads.shutdownNow();
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+    public int getSessionCount() { return sessions.size(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            // path is "", "sessions", then the id and the action
+            if (path.length == 2) {
+                switch (method) {
+                    case "GET" -> send(exchange, 200, listJson());
+                    case "POST" -> {
+                        SimulationSession session = createSession(query);
+                        send(exchange, 201, session.call(() -> metricsJson(session)));
+                    }
+                    default -> send(exchange, 405, errorJson("Use GET or POST on /sessions"));
+                }
+                return;
+            }
+            SimulationSession session = findSession(path[2]);
+            String action = path.length > 3 ? path[3] : "";
+            switch (method + " " + action) {
+                case "GET " -> send(exchange, 200, session.call(() -> metricsJson(session)));
+                case "DELETE " -> {
+                    if (sessions.remove(session.getId()) != null) {
+                        reservedSessions.decrementAndGet();
+                    }
+                    session.close();
+                    send(exchange, 200, "{\"id\": " + session.getId() + ", \"closed\": true}");
+                }
+                case "POST step" -> {
+                    long steps = Long.parseLong(query.getOrDefault("steps", "1"));
+                    send(exchange, 200, session.call(() -> {
+                        session.advance(steps);
+                        return metricsJson(session);
+                    }));
+                }
+                case "GET positions" -> send(exchange, 200, session.call(() -> positionsJson(session)));
+                case "POST stream" -> stream(exchange, session, Long.parseLong(query.getOrDefault("steps", "1")),
+                        Long.parseLong(query.getOrDefault("every", "1")));
+                default -> send(exchange, 404, errorJson("No " + method + " " + exchange.getRequestURI().getPath()));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, errorJson(e.getMessage()));
+        } catch (NoSuchElementException e) {
+            send(exchange, 404, errorJson(e.getMessage()));
+        } catch (IllegalStateException e) {
+            send(exchange, 409, errorJson(e.getMessage()));
+        } catch (Exception e) {
+            send(exchange, 500, errorJson(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private SimulationSession createSession(Map<String, String> query) throws IOException {
+        if (reservedSessions.incrementAndGet() > maxSessions) {
+            reservedSessions.decrementAndGet();
+            throw new IllegalStateException("All " + maxSessions + " sessions are taken");
+        }
+        try {
+            return openSession(query);
+        } catch (IOException | RuntimeException e) {
+            reservedSessions.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private SimulationSession openSession(Map<String, String> query) throws IOException {
+        // Whatever is not a setting is an algorithm parameter
+        Map<String, String> settings = new HashMap<>(query);
+        String scenarioFile = settings.remove("scenario");
+        Scenario scenario = scenarioFile != null ? ScenarioLoader.load(Path.of(scenarioFile)) : null;
+        Map<String, String> options = new HashMap<>();
+        if (settings.containsKey("algorithm")) {
+            options.put("algorithm", settings.remove("algorithm"));
+        }
+        CrowdAlgorithm algorithm = HeadlessRunner.createAlgorithm(options, scenario);
+        int agentCount = Integer.parseInt(remove(settings, "agents", "100"));
+        if (agentCount < 0 || agentCount > maxAgents) {
+            throw new IllegalArgumentException("Sessions hold 0 to " + maxAgents + " agents: " + agentCount);
+        }
+        if (scenario != null && scenario.getStore().size() > maxAgents) {
+            throw new IllegalArgumentException("Sessions hold at most " + maxAgents + " agents; "
+                    + scenarioFile + " has " + scenario.getStore().size());
+        }
+        String layout = remove(settings, "layout", "circle");
+        float density = Float.parseFloat(remove(settings, "density", "2"));
+        long seed = Long.parseLong(remove(settings, "seed", "1"));
+        float timeStep = Float.parseFloat(remove(settings, "dt", String.valueOf(SimulationEngine.DEFAULT_TIME_STEP)));
+        settings.forEach((name, value) -> BatchRunner.applyParameter(algorithm, name, Float.parseFloat(value)));
+        AgentStore store = scenario != null ? scenario.getStore()
+                : new BatchRunner.Cell(algorithm.toString(), agentCount, layout, density, Map.of(), seed).createScenario();
+
+        int id = nextId.getAndIncrement();
+        SimulationSession session = new SimulationSession(id, algorithm.toString(),
+                new SimulationEngine(store, algorithm, timeStep), cpuPool);
+        sessions.put(id, session);
+        return session;
+    }
+
+    private static String remove(Map<String, String> settings, String name, String defaultValue) {
+        String value = settings.remove(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private SimulationSession findSession(String id) {
+        SimulationSession session = null;
+        try {
+            session = sessions.get(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            // Not a session id either
+        }
+        if (session == null) {
+            throw new NoSuchElementException("No session " + id);
+        }
+        return session;
+    }
+
+    // Positions every few steps as JSON lines while the session runs, then its metrics
+    private void stream(HttpExchange exchange, SimulationSession session, long steps, long every) throws Exception {
+        if (every < 1) {
+            throw new IllegalArgumentException("every must be at least 1: " + every);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        // The status is already sent, so a failure ends the stream with an error line instead
+        String last;
+        try {
+            last = session.call(() -> {
+                long done = 0;
+                while (done < steps && !session.getEngine().isFinished()) {
+                    done += session.advance(Math.min(every, steps - done));
+                    body.write((positionsJson(session) + "\n").getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                }
+                return metricsJson(session);
+            });
+        } catch (IOException e) {
+            // The client went away
+            return;
+        } catch (Exception e) {
+            last = errorJson(e.toString());
+        }
+        body.write((last + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String listJson() {
+        List<SimulationSession> all = new ArrayList<>(sessions.values());
+        all.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        StringBuilder json = new StringBuilder("[");
+        for (SimulationSession session : all) {
+            json.append(json.length() > 1 ? ", " : "").append(String.format(Locale.ROOT,
+                    "{\"id\": %d, \"algorithm\": %s, \"agents\": %d, \"steps\": %d, \"reachedGoal\": %d}",
+                    session.getId(), BatchRunner.jsonString(session.getAlgorithmName()), session.getAgentCount(),
+                    session.getStepCount(), session.getReachedGoalCount()));
+        }
+        return json.append("]").toString();
+    }
+
+    // Same fields as BatchRunner's JSON; only on the session thread
+    private static String metricsJson(SimulationSession session) {
+        SimulationEngine engine = session.getEngine();
+        Benchmark.BenchmarkResult result = new Benchmark.BenchmarkResult(session.getAlgorithmName(),
+                engine.getStore(), session.getSteppingNanos() / 1_000_000);
+        double wallSeconds = session.getSteppingNanos() / 1e9;
+        return String.format(Locale.ROOT, "{\"id\": %d, \"algorithm\": %s, \"agents\": %d, \"steps\": %d,"
+                        + " \"simulatedSeconds\": %.4f, \"wallSeconds\": %.4f, \"stepsPerSecond\": %.2f,"
+                        + " \"averageDistance\": %.4f, \"totalCollisions\": %d, \"reachedGoal\": %d,"
+                        + " \"goalPercentage\": %.2f, \"averageTimeToGoal\": %.4f, \"finished\": %b}",
+                session.getId(), BatchRunner.jsonString(session.getAlgorithmName()), result.getTotalAgents(),
+                engine.getStepCount(), engine.getSimulatedTime(), wallSeconds,
+                wallSeconds > 0 ? engine.getStepCount() / wallSeconds : 0,
+                result.getAverageDistanceTraveled(), result.getTotalCollisions(), result.getAgentsReachedGoal(),
+                result.getGoalReachPercentage(), result.getAverageTimeToGoal(), engine.isFinished());
+    }
+
+    // Only on the session thread
+    private static String positionsJson(SimulationSession session) {
+        AgentStore store = session.getEngine().getStore();
+        StringBuilder json = new StringBuilder(64 + store.size() * 48);
+        json.append("{\"id\": ").append(session.getId())
+                .append(", \"step\": ").append(session.getEngine().getStepCount())
+                .append(", \"reachedGoal\": ").append(store.getReachedGoalCount());
+        appendColumn(json, "x", store, 0);
+        appendColumn(json, "y", store, 1);
+        appendColumn(json, "vx", store, 2);
+        appendColumn(json, "vy", store, 3);
+        return json.append("}").toString();
+    }
+
+    private static void appendColumn(StringBuilder json, String name, AgentStore store, int column) {
+        json.append(", \"").append(name).append("\": [");
+        for (int i = 0; i < store.size(); i++) {
+            float value = switch (column) {
+                case 0 -> store.getX(i);
+                case 1 -> store.getY(i);
+                case 2 -> store.getVelocityX(i);
+                default -> store.getVelocityY(i);
+            };
+            json.append(i > 0 ? "," : "").append(value);
+        }
+        json.append("]");
+    }
+
+    private static String errorJson(String message) {
+        return "{\"error\": " + BatchRunner.jsonString(message != null ? message : "") + "}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=value: " + pair);
+            }
+            values.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = HeadlessRunner.parseOptions(args);
+        for (String option : options.keySet()) {
+            if (!List.of("port", "cpus", "max-sessions", "max-agents").contains(option)) {
+                throw new IllegalArgumentException(USAGE);
+            }
+        }
+        SimulationService service = new SimulationService(
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(DEFAULT_PORT))),
+                Integer.parseInt(options.getOrDefault("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(options.getOrDefault("max-sessions", String.valueOf(DEFAULT_MAX_SESSIONS))),
+                Integer.parseInt(options.getOrDefault("max-agents", String.valueOf(DEFAULT_MAX_AGENTS))));
+        service.start();
+        System.out.printf("Listening on http://localhost:%d/sessions%n", service.getPort());
+    }
+}
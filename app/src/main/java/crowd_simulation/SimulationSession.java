@@ -0,0 +1,112 @@
+package crowd_simulation;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// One simulation of SimulationService. Its commands run in order on the session's own virtual thread, so
+// the engine needs no locks and an idle session costs little more than its agents. Steps run on the
+// service's CPU pool in short slices, so a long run takes turns with the other sessions instead of
+// holding a core.
+class SimulationSession {
+    private static final long SLICE_NANOS = 5_000_000;
+
+    private final int id;
+    private final String algorithmName;
+    private final SimulationEngine engine;
+    private final ExecutorService cpuPool;
+    private final BlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+
+    // Written by the pool between slices, read by the session thread after the slice is done
+    private long steppingNanos = 0;
+    // Progress for listing sessions without waiting for their commands
+    private volatile long stepCount = 0;
+    private volatile int reachedGoalCount = 0;
+
+    SimulationSession(int id, String algorithmName, SimulationEngine engine, ExecutorService cpuPool) {
+        this.id = id;
+        this.algorithmName = algorithmName;
+        this.engine = engine;
+        this.cpuPool = cpuPool;
+        reachedGoalCount = engine.getStore().getReachedGoalCount();
+        Thread.ofVirtual().name("session-" + id).start(this::run);
+    }
+
+    // Runs the task on the session thread after the ones queued before it and returns its result
+    <T> T call(Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Checked and queued together, so a command is either refused or queued ahead of close's wake-up
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Session " + id + " is closed");
+            }
+            commands.add(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    private void run() {
+        while (!closed || !commands.isEmpty()) {
+            try {
+                commands.take().run();
+            } catch (InterruptedException e) {
+                // Woken up by close; commands queued before it still run
+            }
+        }
+    }
+
+    // Steps until count steps have run or every agent has arrived and returns how many ran; only on the
+    // session thread
+    long advance(long count) throws InterruptedException, ExecutionException {
+        long done = 0;
+        while (done < count && !engine.isFinished()) {
+            long remaining = count - done;
+            done += cpuPool.submit(() -> runSlice(remaining)).get();
+            stepCount = engine.getStepCount();
+            reachedGoalCount = engine.getStore().getReachedGoalCount();
+        }
+        return done;
+    }
+
+    private long runSlice(long limit) {
+        long start = System.nanoTime();
+        long steps = 0;
+        do {
+            engine.step();
+            steps++;
+        } while (steps < limit && !engine.isFinished() && System.nanoTime() - start < SLICE_NANOS);
+        steppingNanos += System.nanoTime() - start;
+        return steps;
+    }
+
+    // Commands already queued still run; later ones are refused
+    synchronized void close() {
+        closed = true;
+        commands.add(() -> { });
+    }
+
+    int getId() { return id; }
+    String getAlgorithmName() { return algorithmName; }
+    // Engine and timing are only for the session thread
+    SimulationEngine getEngine() { return engine; }
+    long getSteppingNanos() { return steppingNanos; }
+    long getStepCount() { return stepCount; }
+    int getReachedGoalCount() { return reachedGoalCount; }
+    int getAgentCount() { return engine.getStore().size(); }
+    boolean isClosed() { return closed; }
+}
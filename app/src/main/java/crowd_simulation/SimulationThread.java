@@ -0,0 +1,164 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs a SimulationEngine on its own thread at the engine's fixed rate, or as fast as it can keep up,
+// and publishes a PositionSnapshot after every step
+public class SimulationThread {
+    private final SimulationEngine engine;
+    private final TripleBuffer<PositionSnapshot> snapshots = new TripleBuffer<>(PositionSnapshot::new);
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+    private TrajectoryRecorder recorder;
+    private volatile boolean running = false;
+    private volatile boolean finished = false;
+    private volatile float stepsPerSecond = 0;
+
+    // Reader side, owned by the render thread
+    private final PositionSnapshot previous = new PositionSnapshot();
+    private PositionSnapshot latest;
+
+    public SimulationThread(SimulationEngine engine) {
+        this.engine = engine;
+        publishSnapshot();
+        snapshots.acquire();
+        latest = snapshots.getReadBuffer();
+        previous.copyFrom(latest);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+
+        running = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Blocks until the simulation thread has finished its current step
+    public synchronized void stop() {
+        if (thread == null) return;
+
+        running = false;
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        runCommands();
+        stepsPerSecond = 0;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Records the current state, then every step until the recorder is replaced; only while stopped
+    public synchronized void setRecorder(TrajectoryRecorder recorder) {
+        if (thread != null) {
+            throw new IllegalStateException("Cannot change the recorder while the simulation is running");
+        }
+        this.recorder = recorder;
+        if (recorder != null) {
+            publishSnapshot();
+        }
+    }
+
+    // Runs the command between two steps, or right away when the thread is not running
+    public void execute(Runnable command) {
+        commands.add(command);
+        synchronized (this) {
+            if (thread == null) {
+                runCommands();
+            }
+        }
+    }
+
+    // Takes the newest snapshot if one was published; call from the render thread only
+    public boolean pollSnapshot() {
+        PositionSnapshot current = latest;
+        if (!snapshots.acquire()) {
+            return false;
+        }
+        previous.copyFrom(current);
+        latest = snapshots.getReadBuffer();
+        return true;
+    }
+
+    // How far the render time has moved from the previous snapshot towards the latest one
+    public float getInterpolation(long nowNanos) {
+        long interval = latest.getPublishedNanos() - previous.getPublishedNanos();
+        if (interval <= 0) return 1;
+        return Math.min(1, (float) (nowNanos - latest.getPublishedNanos()) / interval);
+    }
+
+    private void run() {
+        long stepNanos = (long) (engine.getTimeStep() * 1e9);
+        long nextStep = System.nanoTime();
+        long windowStart = nextStep;
+        int windowSteps = 0;
+
+        while (running) {
+            runCommands();
+            engine.step();
+            publishSnapshot();
+
+            windowSteps++;
+            long now = System.nanoTime();
+            if (now - windowStart >= 500_000_000L) {
+                stepsPerSecond = windowSteps * 1e9f / (now - windowStart);
+                windowStart = now;
+                windowSteps = 0;
+            }
+
+            if (finished) {
+                running = false;
+                break;
+            }
+
+            // Hold the fixed rate, but do not pile up debt when a step runs long
+            nextStep += stepNanos;
+            long wait = nextStep - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextStep = System.nanoTime();
+            }
+        }
+    }
+
+    private void publishSnapshot() {
+        PositionSnapshot snapshot = snapshots.getWriteBuffer();
+        snapshot.capture(engine.getStore(), engine.getStepCount());
+        finished = snapshot.isFinished();
+        if (recorder != null) {
+            try {
+                recorder.append(snapshot);
+            } catch (IOException e) {
+                System.err.println("Recording stopped: " + e.getMessage());
+                recorder = null;
+            }
+        }
+        snapshots.publish();
+    }
+
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
+    }
+
+    public SimulationEngine getEngine() { return engine; }
+    public PositionSnapshot getLatestSnapshot() { return latest; }
+    public PositionSnapshot getPreviousSnapshot() { return previous; }
+    public boolean isRunning() { return running; }
+    public boolean isFinished() { return finished; }
+    public float getStepsPerSecond() { return stepsPerSecond; }
+}
@@ -0,0 +1,105 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static crowd_simulation.TrajectoryRecorder.*;
+
+// Random access to a file written by TrajectoryRecorder; any frame is one offset computation away
+public class TrajectoryReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final int agentCount;
+    private final float timeStep;
+    private final float velocityScale;
+    private final int frameCount;
+    private final long dataOffset;
+    private final int frameSize;
+    private final int framesPerWindow;
+    private final AgentStore agents;
+    private MappedByteBuffer window;
+    private int windowIndex = -1;
+
+    public TrajectoryReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_BYTES);
+    }
+
+    TrajectoryReader(Path path, long windowBytes) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()));
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.limit() < HEADER_SIZE || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a trajectory file: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported trajectory version " + version + ": " + path);
+        }
+        agentCount = header.getInt();
+        timeStep = header.getFloat();
+        velocityScale = header.getFloat();
+        dataOffset = HEADER_SIZE + (long) agentCount * AGENT_SIZE;
+        frameSize = FRAME_HEADER_SIZE + agentCount * FRAME_AGENT_SIZE;
+        framesPerWindow = (int) Math.max(1, Math.min(Integer.MAX_VALUE / frameSize, windowBytes / frameSize));
+        // Trust the file length over the header if the recorder did not close cleanly
+        frameCount = (int) Math.min(header.getInt(), (channel.size() - dataOffset) / frameSize);
+
+        MappedByteBuffer statics = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, dataOffset - HEADER_SIZE);
+        statics.order(ByteOrder.LITTLE_ENDIAN);
+        agents = new AgentStore(agentCount);
+        for (int i = 0; i < agentCount; i++) {
+            float goalX = statics.getFloat();
+            float goalY = statics.getFloat();
+            float radius = statics.getFloat();
+            agents.add(goalX, goalY, goalX, goalY, radius, velocityScale * VELOCITY_LEVELS);
+        }
+    }
+
+    public void readFrame(int frame, PositionSnapshot target) throws IOException {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        int index = frame / framesPerWindow;
+        if (index != windowIndex) {
+            long start = dataOffset + (long) index * framesPerWindow * frameSize;
+            long frames = Math.min(framesPerWindow, frameCount - (long) index * framesPerWindow);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, frames * frameSize);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowIndex = index;
+        }
+
+        window.position((frame % framesPerWindow) * frameSize);
+        long step = window.getLong();
+        int reachedGoal = window.getInt();
+        int collisions = window.getInt();
+        float originX = window.getFloat();
+        float originY = window.getFloat();
+        float scale = window.getFloat();
+
+        target.reset(agentCount, step, reachedGoal, collisions);
+        for (int i = 0; i < agentCount; i++) {
+            float x = originX + (window.getShort() & 0xFFFF) * scale;
+            float y = originY + (window.getShort() & 0xFFFF) * scale;
+            float velocityX = window.getShort() * velocityScale;
+            float velocityY = window.getShort() * velocityScale;
+            target.set(i, x, y, velocityX, velocityY);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // The recorded agents' goals and radii, positioned at their goals
+    public AgentStore getAgents() { return agents; }
+    public int getAgentCount() { return agentCount; }
+    public int getFrameCount() { return frameCount; }
+    public float getTimeStep() { return timeStep; }
+}
@@ -0,0 +1,128 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends one fixed-size, quantized frame per simulation step to a memory-mapped file.
+// Layout: header, then goal x/y and radius per agent, then the frames. Each frame holds
+// its step, goal and collision counts, and a bounding box; positions are 16-bit offsets
+// into that box and velocities are 16-bit fractions of the fastest agent's max speed.
+public class TrajectoryRecorder implements AutoCloseable {
+    static final int MAGIC = 0x43524A54; // "CRJT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int FRAME_COUNT_OFFSET = 20;
+    static final int AGENT_SIZE = 12;
+    static final int FRAME_HEADER_SIZE = 28;
+    static final int FRAME_AGENT_SIZE = 8;
+    static final int POSITION_LEVELS = 65535;
+    static final int VELOCITY_LEVELS = 32767;
+    static final long DEFAULT_WINDOW_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int agentCount;
+    private final long dataOffset;
+    private final int frameSize;
+    private final int framesPerWindow;
+    private final float velocityScale;
+    private MappedByteBuffer window;
+    private int frameCount = 0;
+
+    public TrajectoryRecorder(Path path, AgentStore store, float timeStep) throws IOException {
+        this(path, store, timeStep, DEFAULT_WINDOW_BYTES);
+    }
+
+    TrajectoryRecorder(Path path, AgentStore store, float timeStep, long windowBytes) throws IOException {
+        agentCount = store.size();
+        dataOffset = HEADER_SIZE + (long) agentCount * AGENT_SIZE;
+        frameSize = FRAME_HEADER_SIZE + agentCount * FRAME_AGENT_SIZE;
+        framesPerWindow = (int) Math.max(1, Math.min(Integer.MAX_VALUE / frameSize, windowBytes / frameSize));
+
+        float fastest = 0;
+        for (int i = 0; i < agentCount; i++) {
+            fastest = Math.max(fastest, store.getMaxSpeed(i));
+        }
+        velocityScale = (fastest > 0 ? fastest : 1) / VELOCITY_LEVELS;
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(agentCount);
+        header.putFloat(timeStep);
+        header.putFloat(velocityScale);
+        header.putInt(0);
+        header.position(HEADER_SIZE);
+        for (int i = 0; i < agentCount; i++) {
+            header.putFloat(store.getGoalX(i));
+            header.putFloat(store.getGoalY(i));
+            header.putFloat(store.getRadius(i));
+        }
+    }
+
+    public void append(PositionSnapshot snapshot) throws IOException {
+        if (snapshot.size() != agentCount) {
+            throw new IllegalArgumentException("Snapshot has " + snapshot.size() + " agents, recording has " + agentCount);
+        }
+        if (frameCount % framesPerWindow == 0) {
+            window = channel.map(FileChannel.MapMode.READ_WRITE,
+                    dataOffset + (long) frameCount * frameSize, (long) framesPerWindow * frameSize);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < agentCount; i++) {
+            minX = Math.min(minX, snapshot.getX(i));
+            minY = Math.min(minY, snapshot.getY(i));
+            maxX = Math.max(maxX, snapshot.getX(i));
+            maxY = Math.max(maxY, snapshot.getY(i));
+        }
+        float extent = Math.max(maxX - minX, maxY - minY);
+        float scale = extent > 0 ? extent / POSITION_LEVELS : 1;
+        if (agentCount == 0) {
+            minX = 0;
+            minY = 0;
+        }
+
+        window.position((frameCount % framesPerWindow) * frameSize);
+        window.putLong(snapshot.getStep());
+        window.putInt(snapshot.getAgentsReachedGoal());
+        window.putInt(snapshot.getTotalCollisions());
+        window.putFloat(minX);
+        window.putFloat(minY);
+        window.putFloat(scale);
+        for (int i = 0; i < agentCount; i++) {
+            window.putShort((short) Math.round((snapshot.getX(i) - minX) / scale));
+            window.putShort((short) Math.round((snapshot.getY(i) - minY) / scale));
+            window.putShort(quantizeVelocity(snapshot.getVelocityX(i)));
+            window.putShort(quantizeVelocity(snapshot.getVelocityY(i)));
+        }
+
+        frameCount++;
+        header.putInt(FRAME_COUNT_OFFSET, frameCount);
+    }
+
+    private short quantizeVelocity(float velocity) {
+        return (short) Math.max(-VELOCITY_LEVELS, Math.min(VELOCITY_LEVELS, Math.round(velocity / velocityScale)));
+    }
+
+    // Drops the unused tail of the last window
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.truncate(dataOffset + (long) frameCount * frameSize);
+        channel.close();
+    }
+
+    public int getFrameCount() { return frameCount; }
+}
@@ -0,0 +1,47 @@
+package crowd_simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Lock-free hand-off from one writer thread to one reader thread; the writer never waits
+// and the reader always gets the most recently published buffer
+public class TripleBuffer<T> {
+    // Set on the shared index when it holds a buffer the reader has not taken yet
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+
+    // Writer side
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    public void publish() {
+        writeIndex = shared.getAndSet(writeIndex | FRESH) & INDEX;
+    }
+
+    // Reader side; returns false when nothing new was published since the last call
+    public boolean acquire() {
+        if ((shared.get() & FRESH) == 0) {
+            return false;
+        }
+        readIndex = shared.getAndSet(readIndex) & INDEX;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        return (T) buffers[readIndex];
+    }
+}
@@ -1,11 +1,13 @@
 package crowd_simulation.algorithms;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import crowd_simulation.Agent;
-import processing.core.PVector;
+import crowd_simulation.AgentStore;
 
 public class Boid implements CrowdAlgorithm {
+    public static final float DEFAULT_NEIGHBOR_SKIN = 10f;
 
     private float separationRadius = 50f;
     private float alignmentRadius = 80f;
@@ -15,115 +17,344 @@ public class Boid implements CrowdAlgorithm {
     private float cohesionWeight = 1.0f;
     private float goalWeight = 3.0f;
 
+    private final SpatialIndex spatialIndex;
+    private final VerletNeighborLists neighborLists;
+    private final Workspace workspace = new Workspace();
+    private final ThreadLocal<Workspace> workerWorkspaces = ThreadLocal.withInitial(Workspace::new);
+    private ParallelExecutor executor;
+    private FlowFieldNavigator navigator;
+    private UpdateScheduler scheduler;
+    // Runs the original three-pass separate/align/cohesion, to check the fused kernel against
+    private boolean referenceMode = false;
+
+    // Scratch neighbor list and steering vectors, reused for every agent
+    private static class Workspace {
+        final NeighborList neighbors = new NeighborList();
+        final float[] separation = new float[2];
+        final float[] alignment = new float[2];
+        final float[] cohesion = new float[2];
+        final float[] goal = new float[2];
+        final float[] direction = new float[2];
+    }
+
+    public Boid() {
+        this(new UniformGrid(100f));
+    }
+
+    public Boid(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+        this.neighborLists = new VerletNeighborLists(spatialIndex, DEFAULT_NEIGHBOR_SKIN);
+    }
+
     @Override
-    public void updateAgents(List<Agent> agents, double deltaTime) {
-        for (Agent agent : agents) {
-            if (!agent.hasReachedGoal()) {
-                PVector separation = separate(agent, agents);
-                PVector alignment = align(agent, agents);
-                PVector cohesion = cohesion(agent, agents);
-                PVector goal = seek(agent, agent.getGoal());
-
-                separation.mult(separationWeight);
-                alignment.mult(alignmentWeight);
-                cohesion.mult(cohesionWeight);
-                goal.mult(goalWeight);
-
-                PVector totalForce = new PVector();
-                totalForce.add(separation)
-                          .add(alignment)
-                          .add(cohesion)
-                          .add(goal);
-                
-                totalForce.limit(agent.getMaxSpeed());
-                agent.setVelocity(totalForce);
+    public void updateAgents(AgentStore store, double deltaTime) {
+        if (usesNeighborLists()) {
+            neighborLists.update(store, getQueryRadius(), executor);
+        } else {
+            spatialIndex.rebuild(store);
+        }
+        if (navigator != null) {
+            navigator.prepare(store, executor);
+        }
+
+        // Finished agents stay in the index as obstacles but are not steered; with a scheduler, neither
+        // are agents in free flow between their updates
+        int steerCount = scheduler != null
+                ? scheduler.schedule(store, (float) deltaTime, getQueryRadius(), executor) : store.getActiveCount();
+        // Alignment reads neighbors' velocities, so every agent steers from the last step's and the
+        // result is the same with or without an executor
+        if (executor == null) {
+            for (int k = 0; k < steerCount; k++) {
+                int i = steeredAgent(store, k);
+                updateAgent(store, i, workspace);
+            }
+        } else {
+            executor.forEachRange(steerCount, (from, to) -> {
+                Workspace scratch = workerWorkspaces.get();
+                for (int k = from; k < to; k++) {
+                    int i = steeredAgent(store, k);
+                    updateAgent(store, i, scratch);
+                }
+            });
+        }
+        store.swapVelocities();
+    }
+
+    private void updateAgent(AgentStore store, int i, Workspace scratch) {
+        float totalX = 0;
+        float totalY = 0;
+
+        if (!store.hasReachedGoal(i)) {
+            float[] separation = scratch.separation;
+            float[] alignment = scratch.alignment;
+            float[] cohesion = scratch.cohesion;
+            float[] goal = scratch.goal;
+
+            if (referenceMode) {
+                separate(store, i, scratch.neighbors, separation);
+                align(store, i, scratch.neighbors, alignment);
+                cohesion(store, i, scratch.neighbors, cohesion);
+            } else {
+                flock(store, i, scratch);
+            }
+            if (navigator != null && navigator.getDirection(store, i, scratch.direction)) {
+                steerToward(store, i, scratch.direction[0], scratch.direction[1], goal);
             } else {
-                agent.setVelocity(new PVector(0, 0));
+                seek(store, i, store.getGoalX(i), store.getGoalY(i), goal);
+            }
+
+            totalX = separation[0] * separationWeight
+                    + alignment[0] * alignmentWeight
+                    + cohesion[0] * cohesionWeight
+                    + goal[0] * goalWeight;
+            totalY = separation[1] * separationWeight
+                    + alignment[1] * alignmentWeight
+                    + cohesion[1] * cohesionWeight
+                    + goal[1] * goalWeight;
+
+            float maxSpeed = store.getMaxSpeed(i);
+            float magnitudeSquared = totalX * totalX + totalY * totalY;
+            if (magnitudeSquared > maxSpeed * maxSpeed) {
+                float scale = maxSpeed / (float) Math.sqrt(magnitudeSquared);
+                totalX *= scale;
+                totalY *= scale;
             }
         }
+
+        store.setNextVelocity(i, totalX, totalY);
     }
 
-    private PVector separate(Agent agent, List<Agent> agents) {
-        PVector steer = new PVector();
+    // Separation, alignment and cohesion from a single neighbor pass, on squared distances
+    private void flock(AgentStore store, int agent, Workspace scratch) {
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float separationRadiusSquared = separationRadius * separationRadius;
+        float alignmentRadiusSquared = alignmentRadius * alignmentRadius;
+        float cohesionRadiusSquared = cohesionRadius * cohesionRadius;
+        float queryRadius = getQueryRadius();
+
+        float separationX = 0, separationY = 0;
+        float alignmentX = 0, alignmentY = 0;
+        float cohesionX = 0, cohesionY = 0;
+        int separationCount = 0, alignmentCount = 0, cohesionCount = 0;
+
+        NeighborList neighbors = scratch.neighbors;
+        if (usesNeighborLists()) {
+            neighborLists.queryRange(store, agent, queryRadius, neighbors);
+        } else {
+            spatialIndex.queryRange(x, y, queryRadius, neighbors);
+        }
+
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
+            float distanceSquared = neighbors.getDistanceSquared(n);
+            if (other == agent || distanceSquared == 0) continue;
+
+            float otherX = store.getX(other);
+            float otherY = store.getY(other);
+
+            if (distanceSquared < separationRadiusSquared) {
+                // Normalized difference divided by distance is the difference over distance squared
+                separationX += (x - otherX) / distanceSquared;
+                separationY += (y - otherY) / distanceSquared;
+                separationCount++;
+            }
+            if (distanceSquared < alignmentRadiusSquared) {
+                alignmentX += store.getVelocityX(other);
+                alignmentY += store.getVelocityY(other);
+                alignmentCount++;
+            }
+            if (distanceSquared < cohesionRadiusSquared) {
+                cohesionX += otherX;
+                cohesionY += otherY;
+                cohesionCount++;
+            }
+        }
+
+        float[] separation = scratch.separation;
+        float[] alignment = scratch.alignment;
+        float[] cohesion = scratch.cohesion;
+        separation[0] = separation[1] = 0;
+        alignment[0] = alignment[1] = 0;
+        cohesion[0] = cohesion[1] = 0;
+
+        if (separationCount > 0) {
+            steerToward(store, agent, separationX, separationY, separation);
+        }
+        if (alignmentCount > 0) {
+            steerToward(store, agent, alignmentX, alignmentY, alignment);
+        }
+        if (cohesionCount > 0) {
+            seek(store, agent, cohesionX / cohesionCount, cohesionY / cohesionCount, cohesion);
+        }
+    }
+
+    private float getQueryRadius() {
+        return Math.max(separationRadius, Math.max(alignmentRadius, cohesionRadius));
+    }
+
+    // The reference mode always queries the spatial index directly
+    private boolean usesNeighborLists() {
+        return !referenceMode && neighborLists.getSkin() > 0;
+    }
+
+    private void separate(AgentStore store, int agent, NeighborList neighbors, float[] steer) {
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float steerX = 0;
+        float steerY = 0;
         int count = 0;
 
-        for (Agent other : agents) {
+        spatialIndex.queryRange(x, y, separationRadius, neighbors);
+
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
             if (other != agent) {
-                float distance = PVector.dist(agent.getPosition(), other.getPosition());
+                float distance = (float) Math.sqrt(neighbors.getDistanceSquared(n));
                 if (distance > 0 && distance < separationRadius) {
-                    PVector difference = PVector.sub(agent.getPosition(), other.getPosition());
-
-                    difference.normalize();
-                    difference.div(distance);
-                    steer.add(difference);
+                    // Difference normalized, then divided by distance
+                    steerX += (x - store.getX(other)) / distance / distance;
+                    steerY += (y - store.getY(other)) / distance / distance;
                     count++;
                 }
             }
         }
 
         if (count > 0) {
-            steer.div(count);
-            steer.normalize();
-            steer.mult(agent.getMaxSpeed());
-            steer.sub(agent.getVelocity());
+            steerToward(store, agent, steerX, steerY, steer);
+        } else {
+            steer[0] = 0;
+            steer[1] = 0;
         }
-
-        return steer;
     }
 
-    private PVector align(Agent agent, List<Agent> agents) {
-        PVector sum = new PVector();
+    private void align(AgentStore store, int agent, NeighborList neighbors, float[] steer) {
+        float sumX = 0;
+        float sumY = 0;
         int count = 0;
 
-        for (Agent other : agents) {
+        spatialIndex.queryRange(store.getX(agent), store.getY(agent), alignmentRadius, neighbors);
+
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
             if (other != agent) {
-                float distance = PVector.dist(agent.getPosition(), other.getPosition());
+                float distance = (float) Math.sqrt(neighbors.getDistanceSquared(n));
                 if (distance > 0 && distance < alignmentRadius) {
-                    sum.add(other.getVelocity());
+                    sumX += store.getVelocityX(other);
+                    sumY += store.getVelocityY(other);
                     count++;
                 }
             }
         }
 
         if (count > 0) {
-            sum.div(count);
-            sum.normalize();
-            sum.mult(agent.getMaxSpeed());
-            sum.sub(agent.getVelocity());
-            return sum;
+            steerToward(store, agent, sumX, sumY, steer);
+        } else {
+            steer[0] = 0;
+            steer[1] = 0;
         }
-        return new PVector();
     }
 
-    private PVector cohesion(Agent agent, List<Agent> agents) {
-        PVector sum = new PVector();
+    private void cohesion(AgentStore store, int agent, NeighborList neighbors, float[] steer) {
+        float sumX = 0;
+        float sumY = 0;
         int count = 0;
 
-        for (Agent other : agents) {
+        spatialIndex.queryRange(store.getX(agent), store.getY(agent), cohesionRadius, neighbors);
+
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
             if (other != agent) {
-                float distance = PVector.dist(agent.getPosition(), other.getPosition());
+                float distance = (float) Math.sqrt(neighbors.getDistanceSquared(n));
                 if (distance > 0 && distance < cohesionRadius) {
-                    sum.add(other.getPosition());
+                    sumX += store.getX(other);
+                    sumY += store.getY(other);
                     count++;
                 }
             }
         }
 
         if (count > 0) {
-            sum.div(count);
-            return seek(agent, sum);
+            seek(store, agent, sumX / count, sumY / count, steer);
+        } else {
+            steer[0] = 0;
+            steer[1] = 0;
         }
+    }
 
-        return new PVector();
+    private void seek(AgentStore store, int agent, float targetX, float targetY, float[] steer) {
+        steerToward(store, agent, targetX - store.getX(agent), targetY - store.getY(agent), steer);
     }
 
-    private PVector seek(Agent agent, PVector target) {
-        PVector desired = PVector.sub(target, agent.getPosition());
-        desired.normalize();
-        desired.mult(agent.getMaxSpeed());
+    // Desired direction scaled to max speed, minus the current velocity
+    private void steerToward(AgentStore store, int agent, float desiredX, float desiredY, float[] steer) {
+        float magnitude = (float) Math.sqrt(desiredX * desiredX + desiredY * desiredY);
+        float scale = magnitude > 0 ? store.getMaxSpeed(agent) / magnitude : 0;
+        steer[0] = desiredX * scale - store.getVelocityX(agent);
+        steer[1] = desiredY * scale - store.getVelocityY(agent);
+    }
 
-        PVector steer = PVector.sub(desired, agent.getVelocity());
-        return steer;
+    @Override
+    public void setParallelExecutor(ParallelExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void setUpdateScheduler(UpdateScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public UpdateScheduler getUpdateScheduler() { return scheduler; }
+
+    @Override
+    public float getInteractionRadius() { return getQueryRadius(); }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(separationRadius);
+        out.writeFloat(alignmentRadius);
+        out.writeFloat(cohesionRadius);
+        out.writeFloat(separationWeight);
+        out.writeFloat(alignmentWeight);
+        out.writeFloat(cohesionWeight);
+        out.writeFloat(goalWeight);
+        out.writeBoolean(referenceMode);
+        neighborLists.writeState(out);
+        out.writeBoolean(navigator != null);
+        if (navigator != null) navigator.writeState(out);
+        out.writeBoolean(scheduler != null);
+        if (scheduler != null) scheduler.writeState(out);
+    }
+
+    @Override
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        separationRadius = in.readFloat();
+        alignmentRadius = in.readFloat();
+        cohesionRadius = in.readFloat();
+        separationWeight = in.readFloat();
+        alignmentWeight = in.readFloat();
+        cohesionWeight = in.readFloat();
+        goalWeight = in.readFloat();
+        referenceMode = in.readBoolean();
+        neighborLists.readState(in, store);
+        navigator = in.readBoolean() ? FlowFieldNavigator.readState(in, store) : null;
+        scheduler = in.readBoolean() ? new UpdateScheduler() : null;
+        if (scheduler != null) scheduler.readState(in, store);
+    }
+
+    private int steeredAgent(AgentStore store, int k) {
+        return scheduler != null ? scheduler.getDueAgent(k) : store.getActiveAgent(k);
+    }
+
+    @Override
+    public void setNavigator(FlowFieldNavigator navigator) {
+        this.navigator = navigator;
+    }
+
+    public FlowFieldNavigator getNavigator() { return navigator; }
+
+    public void setReferenceMode(boolean referenceMode) {
+        this.referenceMode = referenceMode;
     }
 
     @Override
@@ -132,6 +363,13 @@ public class Boid implements CrowdAlgorithm {
     }
 
     // Setters for parameter fields
+    // Margin kept around the flocking radius in the cached neighbor lists; 0 queries the index every step
+    public void setNeighborSkin(float skin) {
+        neighborLists.setSkin(skin);
+    }
+
+    public VerletNeighborLists getNeighborLists() { return neighborLists; }
+
     public void setSeparationRadius(float separationRadius) {
         this.separationRadius = separationRadius;
     }
@@ -159,4 +397,4 @@ public class Boid implements CrowdAlgorithm {
     public void setGoalWeight(float goalWeight) {
         this.goalWeight = goalWeight;
     }
-}
\ No newline at end of file
+}
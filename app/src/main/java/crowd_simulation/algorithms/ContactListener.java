@@ -0,0 +1,9 @@
+package crowd_simulation.algorithms;
+
+public interface ContactListener {
+    // Called once when two agents start overlapping, with first < second
+    void contactBegin(int first, int second);
+
+    // Called once when a contact reported by contactBegin stops overlapping
+    void contactEnd(int first, int second);
+}
@@ -1,9 +1,44 @@
 package crowd_simulation.algorithms;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 import crowd_simulation.Agent;
+import crowd_simulation.AgentStore;
 
 public interface CrowdAlgorithm {
-    void updateAgents(List<Agent> agents, double deltaTime);
-}
\ No newline at end of file
+    void updateAgents(AgentStore store, double deltaTime);
+
+    default void updateAgents(List<Agent> agents, double deltaTime) {
+        updateAgents(AgentStore.of(agents), deltaTime);
+    }
+
+    // With an executor agents are updated in parallel, with null one at a time; either way they react to
+    // the previous step's velocities, so both give the same result
+    void setParallelExecutor(ParallelExecutor executor);
+
+    // Agents follow the navigator's flow fields around obstacles instead of heading straight for
+    // their goals; null walks straight
+    void setNavigator(FlowFieldNavigator navigator);
+
+    // Steers agents in free flow less often than crowded ones; null steers every active agent every step
+    void setUpdateScheduler(UpdateScheduler scheduler);
+
+    // Distance within which an agent's steering depends on other agents; 0 when agents ignore each other
+    float getInteractionRadius();
+
+    // The agents were copied into a new store, agent i of the last one to newIndexOf[i], or dropped where
+    // that is -1; state an algorithm keeps between steps can follow them instead of starting over
+    default void remapAgents(AgentStore store, int[] newIndexOf) {
+    }
+
+    // Parameters and every structure kept between steps, for checkpoints; reading them back for the
+    // same agents continues the run exactly where it was written
+    default void writeState(DataOutput out) throws IOException {
+    }
+
+    default void readState(DataInput in, AgentStore store) throws IOException {
+    }
+}
@@ -0,0 +1,314 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import crowd_simulation.AgentStore;
+
+// Density, average velocity and average heading of the crowd on a grid, for Scout's hybrid mode.
+// Agents where the crowd covers more than the threshold fraction of the ground and mostly
+// heads the same way, like a queue into a chokepoint, are steered from these fields instead of from
+// their neighbors, continuum-crowd style: they walk their preferred direction at a speed that falls
+// from their own toward the crowd's speed along it as the density ahead rises toward jammed, and are
+// pushed down the density gradient. That costs the same per agent at any density. Where headings
+// disagree, as where opposing flows meet, agents keep steering from their neighbors.
+//
+// Agents are splatted onto the grid nodes bilinearly and the fields are read back the same way, so
+// all of them are continuous across cells. Nodes at obstacles count as jammed, which keeps the crowd
+// from being pushed into walls.
+public class DensityField {
+    public static final float DEFAULT_CELL_SIZE = 25f;
+    public static final float DEFAULT_THRESHOLD = 0.35f;
+    // Covered fraction at which agents move only as fast as the crowd around them
+    private static final float JAMMED_DENSITY = 0.9f;
+    // Agents leave the continuum only once density falls this far below the threshold, so agents on
+    // the boundary do not switch back and forth
+    private static final float HYSTERESIS = 0.8f;
+    // Fraction of its own speed an agent keeps below jammed density however still the crowd is, fading
+    // to nothing at jammed; a crowd that has stopped would otherwise never start again
+    private static final float CREEP = 0.5f;
+    // Length of the average unit heading toward the goals above which a dense crowd moves as one
+    private static final float COHERENCE = 0.7f;
+    // Push down the density gradient, in max speeds per unit of density change across one cell
+    private static final float PRESSURE = 1f;
+    private static final int MAX_NODES_PER_AGENT = 4;
+
+    private final float preferredCellSize;
+    private final float threshold;
+    private float cellSize;
+    private float minX;
+    private float minY;
+    private int columns;
+    private int rows;
+
+    private float[] density = new float[0];
+    private float[] velocityX = new float[0];
+    private float[] velocityY = new float[0];
+    private float[] headingX = new float[0];
+    private float[] headingY = new float[0];
+    private float[] weight = new float[0];
+
+    private AgentStore store;
+    private boolean[] dense = new boolean[0];
+    private int denseCount = 0;
+    private long denseSteps = 0;
+    private long agentSteps = 0;
+
+    public DensityField() {
+        this(DEFAULT_CELL_SIZE, DEFAULT_THRESHOLD);
+    }
+
+    public DensityField(float cellSize, float threshold) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        if (threshold <= 0 || threshold >= JAMMED_DENSITY) {
+            throw new IllegalArgumentException("Density threshold must be in (0, " + JAMMED_DENSITY + "): " + threshold);
+        }
+        this.preferredCellSize = cellSize;
+        this.threshold = threshold;
+    }
+
+    // Call once per step before steering: splats the active agents and decides which of them are in
+    // the continuum; obstacles may be null
+    public void rebuild(AgentStore store, Obstacles obstacles) {
+        int count = store.size();
+        if (store != this.store || dense.length != count) {
+            this.store = store;
+            dense = new boolean[count];
+        }
+        if (count == 0) {
+            columns = 0;
+            rows = 0;
+            denseCount = 0;
+            return;
+        }
+
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        minX = Float.POSITIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, store.getX(i));
+            minY = Math.min(minY, store.getY(i));
+            maxX = Math.max(maxX, store.getX(i));
+            maxY = Math.max(maxY, store.getY(i));
+        }
+
+        // Coarser cells when the crowd is spread too thin for the preferred size
+        cellSize = preferredCellSize;
+        long maxNodes = (long) count * MAX_NODES_PER_AGENT + 9;
+        while ((long) nodesAlong(maxX - minX + cellSize) * nodesAlong(maxY - minY + cellSize) > maxNodes) {
+            cellSize *= 2;
+        }
+        // A cell of margin before the first agent too, so walls on either side are on the grid
+        minX -= cellSize;
+        minY -= cellSize;
+        columns = nodesAlong(maxX - minX);
+        rows = nodesAlong(maxY - minY);
+        int nodes = columns * rows;
+        if (density.length < nodes) {
+            density = new float[nodes];
+            velocityX = new float[nodes];
+            velocityY = new float[nodes];
+            headingX = new float[nodes];
+            headingY = new float[nodes];
+            weight = new float[nodes];
+        } else {
+            Arrays.fill(density, 0, nodes, 0);
+            Arrays.fill(velocityX, 0, nodes, 0);
+            Arrays.fill(velocityY, 0, nodes, 0);
+            Arrays.fill(headingX, 0, nodes, 0);
+            Arrays.fill(headingY, 0, nodes, 0);
+            Arrays.fill(weight, 0, nodes, 0);
+        }
+
+        // Finished agents have left the flow and would only pile up density on the goals
+        int activeCount = store.getActiveCount();
+        for (int k = 0; k < activeCount; k++) {
+            int i = store.getActiveAgent(k);
+            float gridX = (store.getX(i) - minX) / cellSize;
+            float gridY = (store.getY(i) - minY) / cellSize;
+            int column = (int) gridX;
+            int row = (int) gridY;
+            float fractionX = gridX - column;
+            float fractionY = gridY - row;
+            float radius = store.getRadius(i);
+            float area = (float) Math.PI * radius * radius;
+            float goalX = store.getGoalX(i) - store.getX(i);
+            float goalY = store.getGoalY(i) - store.getY(i);
+            float distance = (float) Math.sqrt(goalX * goalX + goalY * goalY);
+            if (distance > 0) {
+                goalX /= distance;
+                goalY /= distance;
+            }
+            int node = column + row * columns;
+            splat(node, (1 - fractionX) * (1 - fractionY), area, goalX, goalY, store, i);
+            splat(node + 1, fractionX * (1 - fractionY), area, goalX, goalY, store, i);
+            splat(node + columns, (1 - fractionX) * fractionY, area, goalX, goalY, store, i);
+            splat(node + columns + 1, fractionX * fractionY, area, goalX, goalY, store, i);
+        }
+
+        // The bilinear kernel covers one cell's area, so node sums over it are covered fractions
+        float cellArea = cellSize * cellSize;
+        for (int node = 0; node < nodes; node++) {
+            density[node] /= cellArea;
+            if (weight[node] > 0) {
+                velocityX[node] /= weight[node];
+                velocityY[node] /= weight[node];
+                headingX[node] /= weight[node];
+                headingY[node] /= weight[node];
+            }
+        }
+        // Half a cell of clearance, so walls thinner than a cell still cover a node
+        if (obstacles != null && !obstacles.isEmpty()) {
+            for (int node = 0; node < nodes; node++) {
+                float nodeX = minX + (node % columns) * cellSize;
+                float nodeY = minY + (node / columns) * cellSize;
+                if (obstacles.isBlocked(nodeX, nodeY, cellSize / 2)) {
+                    density[node] = Math.max(density[node], JAMMED_DENSITY);
+                }
+            }
+        }
+
+        denseCount = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int i = store.getActiveAgent(k);
+            float x = store.getX(i);
+            float y = store.getY(i);
+            float local = sample(density, x, y);
+            float alongX = sample(headingX, x, y);
+            float alongY = sample(headingY, x, y);
+            float hysteresis = dense[i] ? HYSTERESIS : 1;
+            dense[i] = local > threshold * hysteresis
+                    && alongX * alongX + alongY * alongY > COHERENCE * COHERENCE * hysteresis * hysteresis;
+            if (dense[i]) {
+                denseCount++;
+            }
+        }
+        denseSteps += denseCount;
+        agentSteps += activeCount;
+    }
+
+    // Settings and which agents are in the continuum; the fields are recomputed on every rebuild
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(preferredCellSize);
+        out.writeFloat(threshold);
+        out.writeLong(denseSteps);
+        out.writeLong(agentSteps);
+        out.writeInt(denseCount);
+        out.writeInt(dense.length);
+        for (boolean inContinuum : dense) {
+            out.writeBoolean(inContinuum);
+        }
+    }
+
+    public static DensityField readState(DataInput in, AgentStore store) throws IOException {
+        DensityField field = new DensityField(in.readFloat(), in.readFloat());
+        field.denseSteps = in.readLong();
+        field.agentSteps = in.readLong();
+        field.denseCount = in.readInt();
+        field.dense = new boolean[in.readInt()];
+        for (int i = 0; i < field.dense.length; i++) {
+            field.dense[i] = in.readBoolean();
+        }
+        if (field.dense.length == store.size()) {
+            field.store = store;
+        }
+        return field;
+    }
+
+    private void splat(int node, float w, float area, float goalX, float goalY, AgentStore store, int agent) {
+        density[node] += w * area;
+        velocityX[node] += w * store.getVelocityX(agent);
+        velocityY[node] += w * store.getVelocityY(agent);
+        headingX[node] += w * goalX;
+        headingY[node] += w * goalY;
+        weight[node] += w;
+    }
+
+    // Whether the agent was in a dense region at the last rebuild
+    public boolean isDense(int agent) {
+        return agent < dense.length && dense[agent];
+    }
+
+    // Turns the agent's preferred velocity into its continuum velocity, in place
+    public void steer(AgentStore store, int agent, float[] velocity) {
+        float preferredSpeed = (float) Math.sqrt(velocity[0] * velocity[0] + velocity[1] * velocity[1]);
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float directionX = preferredSpeed > 0 ? velocity[0] / preferredSpeed : 0;
+        float directionY = preferredSpeed > 0 ? velocity[1] / preferredSpeed : 0;
+
+        // Speed depends on the crowd one cell ahead: between the threshold and jammed it blends from
+        // the agent's own to the speed the crowd there makes along the agent's way
+        float aheadX = x + directionX * cellSize;
+        float aheadY = y + directionY * cellSize;
+        float ahead = sample(density, aheadX, aheadY);
+        float jam = Math.max(0, Math.min(1, (ahead - threshold) / (JAMMED_DENSITY - threshold)));
+        float flowX = sample(velocityX, aheadX, aheadY);
+        float flowY = sample(velocityY, aheadX, aheadY);
+        float flowSpeed = Math.max(0, Math.min(preferredSpeed, flowX * directionX + flowY * directionY));
+        float speed = Math.max(preferredSpeed + jam * (flowSpeed - preferredSpeed), CREEP * (1 - jam) * preferredSpeed);
+
+        // Density gradient of the bilinear field, scaled to the change across one cell
+        float gridX = clampedGrid(x - minX, columns);
+        float gridY = clampedGrid(y - minY, rows);
+        int column = (int) gridX;
+        int row = (int) gridY;
+        float fractionX = gridX - column;
+        float fractionY = gridY - row;
+        int node = column + row * columns;
+        float gradientX = (density[node + 1] - density[node]) * (1 - fractionY)
+                + (density[node + columns + 1] - density[node + columns]) * fractionY;
+        float gradientY = (density[node + columns] - density[node]) * (1 - fractionX)
+                + (density[node + columns + 1] - density[node + 1]) * fractionX;
+
+        float maxSpeed = store.getMaxSpeed(agent);
+        float resultX = directionX * speed - gradientX * PRESSURE * maxSpeed;
+        float resultY = directionY * speed - gradientY * PRESSURE * maxSpeed;
+        float magnitudeSquared = resultX * resultX + resultY * resultY;
+        if (magnitudeSquared > maxSpeed * maxSpeed) {
+            float scale = maxSpeed / (float) Math.sqrt(magnitudeSquared);
+            resultX *= scale;
+            resultY *= scale;
+        }
+        velocity[0] = resultX;
+        velocity[1] = resultY;
+    }
+
+    // Bilinear read of a node field at a point, clamped to the grid
+    private float sample(float[] field, float x, float y) {
+        if (columns == 0) return 0;
+
+        float gridX = clampedGrid(x - minX, columns);
+        float gridY = clampedGrid(y - minY, rows);
+        int column = (int) gridX;
+        int row = (int) gridY;
+        float fractionX = gridX - column;
+        float fractionY = gridY - row;
+        int node = column + row * columns;
+        return (field[node] * (1 - fractionX) + field[node + 1] * fractionX) * (1 - fractionY)
+                + (field[node + columns] * (1 - fractionX) + field[node + columns + 1] * fractionX) * fractionY;
+    }
+
+    // Position in cells, kept inside the last cell so the node after it exists
+    private float clampedGrid(float offset, int nodes) {
+        return Math.max(0, Math.min(nodes - 1.001f, offset / cellSize));
+    }
+
+    // Two nodes beyond the last cell boundary, so every agent's cell has all four corners
+    private int nodesAlong(float extent) {
+        return (int) Math.min(Integer.MAX_VALUE - 2, extent / cellSize) + 2;
+    }
+
+    public float getDensity(float x, float y) { return sample(density, x, y); }
+    public float getThreshold() { return threshold; }
+    public float getCellSize() { return cellSize; }
+    // Active agents in the continuum at the last rebuild
+    public int getDenseCount() { return denseCount; }
+    // Fraction of active agent-steps steered from the fields
+    public float getDenseFraction() { return agentSteps > 0 ? (float) denseSteps / agentSteps : 0; }
+}
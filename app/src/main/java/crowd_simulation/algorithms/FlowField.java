@@ -0,0 +1,158 @@
+package crowd_simulation.algorithms;
+
+import java.util.Arrays;
+
+// Walking cost to one goal region from every cell of a grid, and the direction to walk in from each
+// cell, found by Dijkstra over the 8-connected free cells. Built once and then read in O(1) per agent.
+public class FlowField {
+    private static final float DIAGONAL = (float) Math.sqrt(2);
+
+    private final int columns;
+    private final int rows;
+    private final float[] cost;
+    // Unit direction toward the goal per cell; zero in goal cells and where the goal cannot be reached
+    private final float[] directionX;
+    private final float[] directionY;
+
+    // Seeds are the goal cells; blocked cells are never entered, but ones next to free cells point out
+    FlowField(int columns, int rows, boolean[] blocked, int[] seeds, int seedCount) {
+        this.columns = columns;
+        this.rows = rows;
+        int cells = columns * rows;
+        cost = new float[cells];
+        directionX = new float[cells];
+        directionY = new float[cells];
+        Arrays.fill(cost, Float.POSITIVE_INFINITY);
+
+        CellHeap open = new CellHeap(Math.max(16, seedCount * 4));
+        for (int s = 0; s < seedCount; s++) {
+            cost[seeds[s]] = 0;
+            open.push(0, seeds[s]);
+        }
+
+        while (!open.isEmpty()) {
+            float current = open.peekCost();
+            int cell = open.pop();
+            if (current > cost[cell]) continue;
+
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (!canStep(blocked, column, row, dx, dy)) continue;
+
+                    int next = cell + dy * columns + dx;
+                    float nextCost = current + (dx != 0 && dy != 0 ? DIAGONAL : 1);
+                    if (nextCost < cost[next]) {
+                        cost[next] = nextCost;
+                        open.push(nextCost, next);
+                    }
+                }
+            }
+        }
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (cost[cell] > 0) {
+                pointDownhill(blocked, cell);
+            }
+        }
+    }
+
+    // A step to a neighbor inside the grid that is free, without cutting a blocked corner
+    private boolean canStep(boolean[] blocked, int column, int row, int dx, int dy) {
+        if (dx == 0 && dy == 0) return false;
+        int nextColumn = column + dx;
+        int nextRow = row + dy;
+        if (nextColumn < 0 || nextColumn >= columns || nextRow < 0 || nextRow >= rows) return false;
+        if (blocked[nextRow * columns + nextColumn]) return false;
+        return dx == 0 || dy == 0
+                || (!blocked[row * columns + nextColumn] && !blocked[nextRow * columns + column]);
+    }
+
+    // Points the cell at its cheapest neighbor; blocked cells look at free neighbors only, to walk out
+    private void pointDownhill(boolean[] blocked, int cell) {
+        int column = cell % columns;
+        int row = cell / columns;
+        float best = blocked[cell] ? Float.POSITIVE_INFINITY : cost[cell];
+        int bestX = 0;
+        int bestY = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (blocked[cell] ? !isFree(blocked, column + dx, row + dy)
+                        : !canStep(blocked, column, row, dx, dy)) continue;
+
+                float neighborCost = cost[(row + dy) * columns + column + dx];
+                if (neighborCost < best) {
+                    best = neighborCost;
+                    bestX = dx;
+                    bestY = dy;
+                }
+            }
+        }
+        if (bestX != 0 || bestY != 0) {
+            float scale = bestX != 0 && bestY != 0 ? 1 / DIAGONAL : 1;
+            directionX[cell] = bestX * scale;
+            directionY[cell] = bestY * scale;
+        }
+        if (blocked[cell] && best < Float.POSITIVE_INFINITY) {
+            cost[cell] = best + 1;
+        }
+    }
+
+    private boolean isFree(boolean[] blocked, int column, int row) {
+        return column >= 0 && column < columns && row >= 0 && row < rows && !blocked[row * columns + column];
+    }
+
+    public int getColumns() { return columns; }
+    public int getRows() { return rows; }
+    // Cost in cells from the cell to the nearest goal cell, infinite if it cannot be reached
+    public float getCost(int cell) { return cost[cell]; }
+    public float getDirectionX(int cell) { return directionX[cell]; }
+    public float getDirectionY(int cell) { return directionY[cell]; }
+
+    // Binary min-heap of cells keyed by cost; stale entries are skipped when popped
+    private static class CellHeap {
+        private long[] entries;
+        private int size = 0;
+
+        CellHeap(int capacity) {
+            entries = new long[capacity];
+        }
+
+        // Non-negative float bits order the same as the floats, so one long compare orders by cost
+        void push(float cost, int cell) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            long entry = ((long) Float.floatToIntBits(cost) << 32) | cell;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (entries[parent] <= entry) break;
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            entries[i] = entry;
+        }
+
+        float peekCost() { return Float.intBitsToFloat((int) (entries[0] >>> 32)); }
+
+        int pop() {
+            int cell = (int) entries[0];
+            long last = entries[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && entries[child + 1] < entries[child]) child++;
+                if (entries[child] >= last) break;
+                entries[i] = entries[child];
+                i = child;
+            }
+            entries[i] = last;
+            return cell;
+        }
+
+        boolean isEmpty() { return size == 0; }
+    }
+}
@@ -0,0 +1,237 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import crowd_simulation.AgentStore;
+
+// Preferred walking directions around static obstacles, shared by every agent heading to the same goal
+// region. Goals are grouped by the tile of GOAL_TILE x GOAL_TILE cells they fall in; each tile gets one
+// flow field seeded with its goal cells, so a few exits cost a few fields whatever the crowd size.
+public class FlowFieldNavigator {
+    public static final float DEFAULT_CELL_SIZE = 20f;
+    private static final int GOAL_TILE = 4;
+    // Free cells kept around the agents, goals and obstacles so paths can go around the outside
+    private static final int MARGIN_CELLS = 3;
+
+    private final Obstacles obstacles;
+    private final float cellSize;
+    private float clearance = AgentStore.DEFAULT_RADIUS;
+
+    // Grid covering the prepared store, shared by all fields
+    private float originX;
+    private float originY;
+    private int columns = 0;
+    private int rows = 0;
+    private boolean[] blocked = new boolean[0];
+
+    private final Map<Integer, FlowField> fields = new HashMap<>();
+    // Field each agent reads from, assigned when a store is prepared
+    private FlowField[] fieldOf = new FlowField[0];
+    private AgentStore preparedStore;
+    private int preparedCount = -1;
+
+    public FlowFieldNavigator(Obstacles obstacles) {
+        this(obstacles, DEFAULT_CELL_SIZE);
+    }
+
+    public FlowFieldNavigator(Obstacles obstacles, float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.obstacles = obstacles;
+        this.cellSize = cellSize;
+    }
+
+    // Call once per step before reading directions; only does work for a new store or new agents
+    public void prepare(AgentStore store, ParallelExecutor executor) {
+        if (store == preparedStore && store.size() == preparedCount) return;
+
+        if (!covers(store)) {
+            layOutGrid(store);
+        }
+        assignFields(store, executor);
+    }
+
+    // Layout, clearance and obstacles; the fields themselves are rebuilt from them on reading
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(cellSize);
+        out.writeFloat(clearance);
+        obstacles.writeState(out);
+        out.writeInt(columns);
+        out.writeInt(rows);
+        out.writeFloat(originX);
+        out.writeFloat(originY);
+    }
+
+    // A navigator prepared for store on the grid writeState saved, which may no longer cover every
+    // agent, exactly as the saved one was
+    public static FlowFieldNavigator readState(DataInput in, AgentStore store) throws IOException {
+        float cellSize = in.readFloat();
+        float clearance = in.readFloat();
+        FlowFieldNavigator navigator = new FlowFieldNavigator(Obstacles.readState(in), cellSize);
+        navigator.clearance = clearance;
+        navigator.columns = in.readInt();
+        navigator.rows = in.readInt();
+        navigator.originX = in.readFloat();
+        navigator.originY = in.readFloat();
+        if (navigator.columns > 0) {
+            navigator.markBlocked();
+            navigator.assignFields(store, null);
+        }
+        return navigator;
+    }
+
+    private void assignFields(AgentStore store, ParallelExecutor executor) {
+        // Fields for goal tiles not seen before, built together and then kept
+        Map<Integer, int[]> seeds = new HashMap<>();
+        int count = store.size();
+        for (int i = 0; i < count; i++) {
+            int goalCell = cellOf(store.getGoalX(i), store.getGoalY(i));
+            int tile = tileOf(goalCell);
+            if (fields.containsKey(tile)) continue;
+
+            int[] tileSeeds = seeds.computeIfAbsent(tile, t -> new int[GOAL_TILE * GOAL_TILE + 1]);
+            addSeed(tileSeeds, goalCell);
+        }
+        List<Integer> tiles = new ArrayList<>(seeds.keySet());
+        FlowField[] built = new FlowField[tiles.size()];
+        ParallelExecutor.RangeBody build = (from, to) -> {
+            for (int t = from; t < to; t++) {
+                int[] tileSeeds = seeds.get(tiles.get(t));
+                built[t] = new FlowField(columns, rows, blocked, tileSeeds, tileSeeds[tileSeeds.length - 1]);
+            }
+        };
+        if (executor == null) {
+            build.run(0, tiles.size());
+        } else {
+            executor.forEachRange(tiles.size(), build);
+        }
+        for (int t = 0; t < tiles.size(); t++) {
+            fields.put(tiles.get(t), built[t]);
+        }
+
+        if (fieldOf.length < count) {
+            fieldOf = new FlowField[count];
+        }
+        for (int i = 0; i < count; i++) {
+            fieldOf[i] = fields.get(tileOf(cellOf(store.getGoalX(i), store.getGoalY(i))));
+        }
+        preparedStore = store;
+        preparedCount = count;
+    }
+
+    // The last slot counts the seeds in use; a tile holds at most GOAL_TILE^2 distinct cells
+    private static void addSeed(int[] seeds, int cell) {
+        int used = seeds[seeds.length - 1];
+        for (int s = 0; s < used; s++) {
+            if (seeds[s] == cell) return;
+        }
+        seeds[used] = cell;
+        seeds[seeds.length - 1] = used + 1;
+    }
+
+    private boolean covers(AgentStore store) {
+        if (columns == 0) return false;
+        float maxX = originX + columns * cellSize;
+        float maxY = originY + rows * cellSize;
+        for (int i = preparedStore == store ? preparedCount : 0; i < store.size(); i++) {
+            if (!within(store.getX(i), store.getY(i), maxX, maxY)
+                    || !within(store.getGoalX(i), store.getGoalY(i), maxX, maxY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean within(float x, float y, float maxX, float maxY) {
+        return x >= originX && y >= originY && x < maxX && y < maxY;
+    }
+
+    // Fits the grid around every agent, goal and obstacle; existing fields no longer match it
+    private void layOutGrid(AgentStore store) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < store.size(); i++) {
+            minX = Math.min(minX, Math.min(store.getX(i), store.getGoalX(i)));
+            minY = Math.min(minY, Math.min(store.getY(i), store.getGoalY(i)));
+            maxX = Math.max(maxX, Math.max(store.getX(i), store.getGoalX(i)));
+            maxY = Math.max(maxY, Math.max(store.getY(i), store.getGoalY(i)));
+        }
+        float[] bounds = obstacles.getBounds();
+        if (bounds != null) {
+            minX = Math.min(minX, bounds[0]);
+            minY = Math.min(minY, bounds[1]);
+            maxX = Math.max(maxX, bounds[2]);
+            maxY = Math.max(maxY, bounds[3]);
+        }
+        if (minX > maxX) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        originX = minX - MARGIN_CELLS * cellSize;
+        originY = minY - MARGIN_CELLS * cellSize;
+        columns = (int) ((maxX - originX) / cellSize) + 1 + MARGIN_CELLS;
+        rows = (int) ((maxY - originY) / cellSize) + 1 + MARGIN_CELLS;
+        markBlocked();
+    }
+
+    private void markBlocked() {
+        blocked = new boolean[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                blocked[row * columns + column] = obstacles.isBlocked(
+                        originX + (column + 0.5f) * cellSize, originY + (row + 0.5f) * cellSize, clearance);
+            }
+        }
+        fields.clear();
+    }
+
+    private int cellOf(float x, float y) {
+        int column = Math.min(columns - 1, Math.max(0, (int) ((x - originX) / cellSize)));
+        int row = Math.min(rows - 1, Math.max(0, (int) ((y - originY) / cellSize)));
+        return row * columns + column;
+    }
+
+    private int tileOf(int cell) {
+        int tileColumns = (columns + GOAL_TILE - 1) / GOAL_TILE;
+        return (cell / columns / GOAL_TILE) * tileColumns + (cell % columns) / GOAL_TILE;
+    }
+
+    // Unit direction the agent should walk in; false when it should head straight for its goal,
+    // i.e. inside its goal region, outside the grid or cut off from the goal
+    public boolean getDirection(AgentStore store, int agent, float[] direction) {
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        int column = (int) Math.floor((x - originX) / cellSize);
+        int row = (int) Math.floor((y - originY) / cellSize);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) return false;
+
+        FlowField field = fieldOf[agent];
+        int cell = row * columns + column;
+        direction[0] = field.getDirectionX(cell);
+        direction[1] = field.getDirectionY(cell);
+        return direction[0] != 0 || direction[1] != 0;
+    }
+
+    // Room left between agents and obstacles when marking cells blocked; rebuilds the grid
+    public void setClearance(float clearance) {
+        this.clearance = clearance;
+        columns = 0;
+        preparedStore = null;
+    }
+
+    public Obstacles getObstacles() { return obstacles; }
+    public float getCellSize() { return cellSize; }
+    public float getClearance() { return clearance; }
+    public int getFieldCount() { return fields.size(); }
+    public int getColumns() { return columns; }
+    public int getRows() { return rows; }
+    public float getOriginX() { return originX; }
+    public float getOriginY() { return originY; }
+}
@@ -1,44 +1,151 @@
 package crowd_simulation.algorithms;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import crowd_simulation.Agent;
-import processing.core.PVector;
+import crowd_simulation.AgentStore;
 
 public class Ghost implements CrowdAlgorithm {
+    private final SweepAndPrune sweepAndPrune = new SweepAndPrune();
+    private ContactListener contactListener;
+    // Made once rather than every step; counts into the store being stepped
+    private AgentStore collidingStore;
+    private final ContactListener collisionCounter = new ContactListener() {
+        @Override
+        public void contactBegin(int first, int second) {
+            collidingStore.incrementCollisions(first);
+            collidingStore.incrementCollisions(second);
+            if (contactListener != null) contactListener.contactBegin(first, second);
+        }
+
+        @Override
+        public void contactEnd(int first, int second) {
+            if (contactListener != null) contactListener.contactEnd(first, second);
+        }
+    };
+    private ParallelExecutor executor;
+    private FlowFieldNavigator navigator;
+    private UpdateScheduler scheduler;
+    // Scratch flow field direction for sequential updates, and one per worker thread
+    private final float[] direction = new float[2];
+    private final ThreadLocal<float[]> directions = ThreadLocal.withInitial(() -> new float[2]);
+
     @Override
-    public void updateAgents(List<Agent> agents, double deltaTime) {
-        for (Agent agent : agents) {
-            if (!agent.hasReachedGoal()) {
-                PVector goal = PVector.sub(agent.getGoal(), agent.getPosition());
-                goal.normalize();
-                goal.mult(agent.getMaxSpeed());
-                agent.setVelocity(goal);
-            } else {
-                agent.setVelocity(new PVector(0, 0));
+    public void updateAgents(AgentStore store, double deltaTime) {
+        // Finished agents keep a zero velocity and are only collided against; with a scheduler, agents
+        // in free flow between their updates keep their velocity too
+        int steerCount = scheduler != null
+                ? scheduler.schedule(store, (float) deltaTime, 0, executor) : store.getActiveCount();
+        if (navigator != null) {
+            navigator.prepare(store, executor);
+        }
+        if (executor == null) {
+            for (int k = 0; k < steerCount; k++) {
+                int i = steeredAgent(store, k);
+                updateAgent(store, i, direction, false);
             }
+        } else {
+            executor.forEachRange(steerCount, (from, to) -> {
+                float[] scratch = directions.get();
+                for (int k = from; k < to; k++) {
+                    int i = steeredAgent(store, k);
+                    updateAgent(store, i, scratch, true);
+                }
+            });
+            store.swapVelocities();
         }
 
-        checkCollisions(agents);
+        checkCollisions(store);
     }
 
-    private void checkCollisions(List<Agent> agents) {
-        for (int i = 0; i < agents.size(); i++) {
-            for (int j = i + 1; j < agents.size(); j++) {
-                Agent firstAgent = agents.get(i);
-                Agent secondAgent = agents.get(j);
+    private void updateAgent(AgentStore store, int i, float[] direction, boolean buffered) {
+        float velocityX = 0;
+        float velocityY = 0;
 
-                float distance = PVector.dist(firstAgent.getPosition(), secondAgent.getPosition());
-                if (distance < firstAgent.getRadius() + secondAgent.getRadius()) {
-                    firstAgent.incrementCollisions();
-                    secondAgent.incrementCollisions();
-                }
-            }
+        if (navigator != null && !store.hasReachedGoal(i) && navigator.getDirection(store, i, direction)) {
+            velocityX = direction[0] * store.getMaxSpeed(i);
+            velocityY = direction[1] * store.getMaxSpeed(i);
+        } else if (!store.hasReachedGoal(i)) {
+            float goalX = store.getGoalX(i) - store.getX(i);
+            float goalY = store.getGoalY(i) - store.getY(i);
+            float distance = (float) Math.sqrt(goalX * goalX + goalY * goalY);
+            float scale = distance > 0 ? store.getMaxSpeed(i) / distance : 0;
+            velocityX = goalX * scale;
+            velocityY = goalY * scale;
+        }
+
+        if (buffered) {
+            store.setNextVelocity(i, velocityX, velocityY);
+        } else {
+            store.setVelocity(i, velocityX, velocityY);
         }
     }
 
+    // Counts a collision when a contact begins, not on every step it lasts
+    private void checkCollisions(AgentStore store) {
+        collidingStore = store;
+        sweepAndPrune.update(store, collisionCounter);
+    }
+
+    // Receives contact begin and end events in addition to collision counting
+    public void setContactListener(ContactListener contactListener) {
+        this.contactListener = contactListener;
+    }
+
+    public int getActiveContacts() { return sweepAndPrune.getContactCount(); }
+
+    @Override
+    public void setParallelExecutor(ParallelExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void setUpdateScheduler(UpdateScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public UpdateScheduler getUpdateScheduler() { return scheduler; }
+
+    @Override
+    public float getInteractionRadius() { return 0; }
+
+    // Contacts that last across the move are not counted again
+    @Override
+    public void remapAgents(AgentStore store, int[] newIndexOf) {
+        sweepAndPrune.remap(store, newIndexOf);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        sweepAndPrune.writeState(out);
+        out.writeBoolean(navigator != null);
+        if (navigator != null) navigator.writeState(out);
+        out.writeBoolean(scheduler != null);
+        if (scheduler != null) scheduler.writeState(out);
+    }
+
+    @Override
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        sweepAndPrune.readState(in, store);
+        navigator = in.readBoolean() ? FlowFieldNavigator.readState(in, store) : null;
+        scheduler = in.readBoolean() ? new UpdateScheduler() : null;
+        if (scheduler != null) scheduler.readState(in, store);
+    }
+
+    private int steeredAgent(AgentStore store, int k) {
+        return scheduler != null ? scheduler.getDueAgent(k) : store.getActiveAgent(k);
+    }
+
+    @Override
+    public void setNavigator(FlowFieldNavigator navigator) {
+        this.navigator = navigator;
+    }
+
+    public FlowFieldNavigator getNavigator() { return navigator; }
+
     @Override
     public String toString() {
         return "Ghost Algorithm (Naive Approach)";
     }
-}
\ No newline at end of file
+}
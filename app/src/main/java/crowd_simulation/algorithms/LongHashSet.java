@@ -0,0 +1,91 @@
+package crowd_simulation.algorithms;
+
+import java.util.Arrays;
+
+// Open-addressing set of non-negative long keys, with insertion-ordered iteration
+public class LongHashSet {
+    private static final long EMPTY = -1L;
+
+    private long[] table;
+    private long[] entries;
+    private int size;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expectedSize) {
+        table = new long[tableSizeFor(expectedSize)];
+        Arrays.fill(table, EMPTY);
+        entries = new long[Math.max(4, expectedSize)];
+    }
+
+    // Returns false if the key was already present
+    public boolean add(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must be non-negative: " + key);
+        }
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == key) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = key;
+        return true;
+    }
+
+    public boolean contains(long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == key) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    public int size() { return size; }
+    public long get(int i) { return entries[i]; }
+
+    private void rehash(int capacity) {
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(entries[i]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entries[i];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
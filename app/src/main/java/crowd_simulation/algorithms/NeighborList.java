@@ -0,0 +1,74 @@
+package crowd_simulation.algorithms;
+
+import java.util.Arrays;
+
+public class NeighborList {
+    private int[] indices;
+    private float[] distancesSquared;
+    private int size;
+
+    public NeighborList() {
+        this(16);
+    }
+
+    public NeighborList(int capacity) {
+        this.indices = new int[Math.max(1, capacity)];
+        this.distancesSquared = new float[indices.length];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int index, float distanceSquared) {
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+            distancesSquared = Arrays.copyOf(distancesSquared, size * 2);
+        }
+        indices[size] = index;
+        distancesSquared[size] = distanceSquared;
+        size++;
+    }
+
+    // Keeps only the k closest entries, sorted by ascending distance
+    public void addNearest(int index, float distanceSquared, int k) {
+        if (size == k && distanceSquared >= distancesSquared[size - 1]) {
+            return;
+        }
+        if (size < k) {
+            add(index, distanceSquared);
+        } else {
+            indices[size - 1] = index;
+            distancesSquared[size - 1] = distanceSquared;
+        }
+
+        int i = size - 1;
+        while (i > 0 && distancesSquared[i - 1] > distanceSquared) {
+            indices[i] = indices[i - 1];
+            distancesSquared[i] = distancesSquared[i - 1];
+            i--;
+        }
+        indices[i] = index;
+        distancesSquared[i] = distanceSquared;
+    }
+
+    // Sorts entries by agent index so results do not depend on cell layout
+    public void sortByIndex() {
+        for (int i = 1; i < size; i++) {
+            int index = indices[i];
+            float distanceSquared = distancesSquared[i];
+            int j = i - 1;
+            while (j >= 0 && indices[j] > index) {
+                indices[j + 1] = indices[j];
+                distancesSquared[j + 1] = distancesSquared[j];
+                j--;
+            }
+            indices[j + 1] = index;
+            distancesSquared[j + 1] = distanceSquared;
+        }
+    }
+
+    public int size() { return size; }
+    public int get(int i) { return indices[i]; }
+    public float getDistanceSquared(int i) { return distancesSquared[i]; }
+}
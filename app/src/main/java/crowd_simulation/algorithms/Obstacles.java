@@ -0,0 +1,109 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Static rectangles and disks that agents walk around; flow fields treat them as walls
+public class Obstacles {
+    // Rectangle r spans rects[4r] .. rects[4r + 3] as x0, y0, x1, y1 with x0 <= x1 and y0 <= y1
+    private float[] rects = new float[0];
+    private int rectCount = 0;
+    // Disk d is disks[3d] .. disks[3d + 2] as center x, center y, radius
+    private float[] disks = new float[0];
+    private int diskCount = 0;
+
+    public void addRect(float x0, float y0, float x1, float y1) {
+        if (rects.length < (rectCount + 1) * 4) {
+            rects = Arrays.copyOf(rects, Math.max(16, rects.length * 2));
+        }
+        int r = rectCount++ * 4;
+        rects[r] = Math.min(x0, x1);
+        rects[r + 1] = Math.min(y0, y1);
+        rects[r + 2] = Math.max(x0, x1);
+        rects[r + 3] = Math.max(y0, y1);
+    }
+
+    public void addDisk(float x, float y, float radius) {
+        if (disks.length < (diskCount + 1) * 3) {
+            disks = Arrays.copyOf(disks, Math.max(12, disks.length * 2));
+        }
+        int d = diskCount++ * 3;
+        disks[d] = x;
+        disks[d + 1] = y;
+        disks[d + 2] = radius;
+    }
+
+    // True if the point lies inside an obstacle grown by clearance
+    public boolean isBlocked(float x, float y, float clearance) {
+        for (int r = 0; r < rectCount * 4; r += 4) {
+            float dx = Math.max(0, Math.max(rects[r] - x, x - rects[r + 2]));
+            float dy = Math.max(0, Math.max(rects[r + 1] - y, y - rects[r + 3]));
+            if (dx * dx + dy * dy < clearance * clearance || (dx == 0 && dy == 0)) {
+                return true;
+            }
+        }
+        for (int d = 0; d < diskCount * 3; d += 3) {
+            float dx = x - disks[d];
+            float dy = y - disks[d + 1];
+            float reach = disks[d + 2] + clearance;
+            if (dx * dx + dy * dy < reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Smallest box holding every obstacle as minX, minY, maxX, maxY, or null when there are none
+    public float[] getBounds() {
+        if (isEmpty()) return null;
+
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int r = 0; r < rectCount * 4; r += 4) {
+            bounds[0] = Math.min(bounds[0], rects[r]);
+            bounds[1] = Math.min(bounds[1], rects[r + 1]);
+            bounds[2] = Math.max(bounds[2], rects[r + 2]);
+            bounds[3] = Math.max(bounds[3], rects[r + 3]);
+        }
+        for (int d = 0; d < diskCount * 3; d += 3) {
+            bounds[0] = Math.min(bounds[0], disks[d] - disks[d + 2]);
+            bounds[1] = Math.min(bounds[1], disks[d + 1] - disks[d + 2]);
+            bounds[2] = Math.max(bounds[2], disks[d] + disks[d + 2]);
+            bounds[3] = Math.max(bounds[3], disks[d + 1] + disks[d + 2]);
+        }
+        return bounds;
+    }
+
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(rectCount);
+        for (int r = 0; r < rectCount * 4; r++) {
+            out.writeFloat(rects[r]);
+        }
+        out.writeInt(diskCount);
+        for (int d = 0; d < diskCount * 3; d++) {
+            out.writeFloat(disks[d]);
+        }
+    }
+
+    public static Obstacles readState(DataInput in) throws IOException {
+        Obstacles obstacles = new Obstacles();
+        int rectCount = in.readInt();
+        for (int r = 0; r < rectCount; r++) {
+            obstacles.addRect(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+        }
+        int diskCount = in.readInt();
+        for (int d = 0; d < diskCount; d++) {
+            obstacles.addDisk(in.readFloat(), in.readFloat(), in.readFloat());
+        }
+        return obstacles;
+    }
+
+    public boolean isEmpty() { return rectCount == 0 && diskCount == 0; }
+    public int getRectCount() { return rectCount; }
+    public int getDiskCount() { return diskCount; }
+    // Corner values of rectangle r, in x0, y0, x1, y1 order
+    public float getRect(int r, int value) { return rects[r * 4 + value]; }
+    // Center x, center y and radius of disk d
+    public float getDisk(int d, int value) { return disks[d * 3 + value]; }
+}
@@ -0,0 +1,249 @@
+package crowd_simulation.algorithms;
+
+import java.util.Arrays;
+
+// Optimal reciprocal collision avoidance: half-plane constraints and the 2D/3D linear programs
+// that pick the velocity closest to the preferred one (after van den Berg et al., RVO2)
+class OrcaSolver {
+    private static final float EPSILON = 0.00001f;
+
+    private final HalfPlanes lines = new HalfPlanes();
+    private final HalfPlanes projectedLines = new HalfPlanes();
+    private final float[] candidate = new float[2];
+
+    void clear() {
+        lines.clear();
+    }
+
+    // Adds the constraint induced by one neighbor, which is assumed to take half the avoidance effort
+    void addNeighbor(float relativePositionX, float relativePositionY,
+                     float relativeVelocityX, float relativeVelocityY,
+                     float velocityX, float velocityY,
+                     float combinedRadius, float timeHorizon, float timeStep) {
+        float invTimeHorizon = 1f / timeHorizon;
+        float distanceSquared = relativePositionX * relativePositionX + relativePositionY * relativePositionY;
+        float combinedRadiusSquared = combinedRadius * combinedRadius;
+
+        float directionX;
+        float directionY;
+        float uX;
+        float uY;
+
+        if (distanceSquared > combinedRadiusSquared) {
+            // No collision yet; vector from cutoff center to relative velocity
+            float wX = relativeVelocityX - invTimeHorizon * relativePositionX;
+            float wY = relativeVelocityY - invTimeHorizon * relativePositionY;
+            float wLengthSquared = wX * wX + wY * wY;
+            float dotProduct = wX * relativePositionX + wY * relativePositionY;
+
+            if (dotProduct < 0 && dotProduct * dotProduct > combinedRadiusSquared * wLengthSquared) {
+                // Project on the cutoff circle
+                float wLength = (float) Math.sqrt(wLengthSquared);
+                float unitWX = wX / wLength;
+                float unitWY = wY / wLength;
+                directionX = unitWY;
+                directionY = -unitWX;
+                uX = (combinedRadius * invTimeHorizon - wLength) * unitWX;
+                uY = (combinedRadius * invTimeHorizon - wLength) * unitWY;
+            } else {
+                // Project on the nearer leg of the velocity obstacle cone
+                float leg = (float) Math.sqrt(distanceSquared - combinedRadiusSquared);
+                if (det(relativePositionX, relativePositionY, wX, wY) > 0) {
+                    directionX = (relativePositionX * leg - relativePositionY * combinedRadius) / distanceSquared;
+                    directionY = (relativePositionX * combinedRadius + relativePositionY * leg) / distanceSquared;
+                } else {
+                    directionX = -(relativePositionX * leg + relativePositionY * combinedRadius) / distanceSquared;
+                    directionY = -(-relativePositionX * combinedRadius + relativePositionY * leg) / distanceSquared;
+                }
+                float projection = relativeVelocityX * directionX + relativeVelocityY * directionY;
+                uX = projection * directionX - relativeVelocityX;
+                uY = projection * directionY - relativeVelocityY;
+            }
+        } else {
+            // Already overlapping; resolve within one time step
+            float invTimeStep = 1f / timeStep;
+            float wX = relativeVelocityX - invTimeStep * relativePositionX;
+            float wY = relativeVelocityY - invTimeStep * relativePositionY;
+            float wLength = (float) Math.sqrt(wX * wX + wY * wY);
+            if (wLength == 0) return;
+
+            float unitWX = wX / wLength;
+            float unitWY = wY / wLength;
+            directionX = unitWY;
+            directionY = -unitWX;
+            uX = (combinedRadius * invTimeStep - wLength) * unitWX;
+            uY = (combinedRadius * invTimeStep - wLength) * unitWY;
+        }
+
+        lines.add(velocityX + 0.5f * uX, velocityY + 0.5f * uY, directionX, directionY);
+    }
+
+    void solve(float maxSpeed, float preferredX, float preferredY, float[] result) {
+        int lineFail = linearProgram2(lines, maxSpeed, preferredX, preferredY, false, result);
+        if (lineFail < lines.size) {
+            linearProgram3(lineFail, maxSpeed, result);
+        }
+    }
+
+    private boolean linearProgram1(HalfPlanes lines, int lineNo, float radius,
+                                   float optX, float optY, boolean directionOpt, float[] result) {
+        float pointX = lines.pointX[lineNo];
+        float pointY = lines.pointY[lineNo];
+        float directionX = lines.directionX[lineNo];
+        float directionY = lines.directionY[lineNo];
+
+        float dotProduct = pointX * directionX + pointY * directionY;
+        float discriminant = dotProduct * dotProduct + radius * radius - (pointX * pointX + pointY * pointY);
+        if (discriminant < 0) {
+            // Max speed circle fully invalidates this line
+            return false;
+        }
+
+        float sqrtDiscriminant = (float) Math.sqrt(discriminant);
+        float tLeft = -dotProduct - sqrtDiscriminant;
+        float tRight = -dotProduct + sqrtDiscriminant;
+
+        for (int i = 0; i < lineNo; i++) {
+            float denominator = det(directionX, directionY, lines.directionX[i], lines.directionY[i]);
+            float numerator = det(lines.directionX[i], lines.directionY[i],
+                    pointX - lines.pointX[i], pointY - lines.pointY[i]);
+
+            if (Math.abs(denominator) <= EPSILON) {
+                // Lines are parallel
+                if (numerator < 0) return false;
+                continue;
+            }
+
+            float t = numerator / denominator;
+            if (denominator >= 0) {
+                tRight = Math.min(tRight, t);
+            } else {
+                tLeft = Math.max(tLeft, t);
+            }
+            if (tLeft > tRight) return false;
+        }
+
+        float t;
+        if (directionOpt) {
+            t = optX * directionX + optY * directionY > 0 ? tRight : tLeft;
+        } else {
+            t = directionX * (optX - pointX) + directionY * (optY - pointY);
+            t = Math.max(tLeft, Math.min(tRight, t));
+        }
+        result[0] = pointX + t * directionX;
+        result[1] = pointY + t * directionY;
+        return true;
+    }
+
+    // Returns the index of the first line that could not be satisfied, or the line count
+    private int linearProgram2(HalfPlanes lines, float radius, float optX, float optY,
+                               boolean directionOpt, float[] result) {
+        float optLengthSquared = optX * optX + optY * optY;
+        if (directionOpt) {
+            // Optimize direction; opt is a unit vector
+            result[0] = optX * radius;
+            result[1] = optY * radius;
+        } else if (optLengthSquared > radius * radius) {
+            float scale = radius / (float) Math.sqrt(optLengthSquared);
+            result[0] = optX * scale;
+            result[1] = optY * scale;
+        } else {
+            result[0] = optX;
+            result[1] = optY;
+        }
+
+        for (int i = 0; i < lines.size; i++) {
+            if (det(lines.directionX[i], lines.directionY[i],
+                    lines.pointX[i] - result[0], lines.pointY[i] - result[1]) > 0) {
+                float previousX = result[0];
+                float previousY = result[1];
+                if (!linearProgram1(lines, i, radius, optX, optY, directionOpt, result)) {
+                    result[0] = previousX;
+                    result[1] = previousY;
+                    return i;
+                }
+            }
+        }
+        return lines.size;
+    }
+
+    // Infeasible case: minimize the largest constraint violation
+    private void linearProgram3(int beginLine, float radius, float[] result) {
+        float distance = 0;
+
+        for (int i = beginLine; i < lines.size; i++) {
+            float directionX = lines.directionX[i];
+            float directionY = lines.directionY[i];
+            if (det(directionX, directionY, lines.pointX[i] - result[0], lines.pointY[i] - result[1]) <= distance) {
+                continue;
+            }
+
+            projectedLines.clear();
+            for (int j = 0; j < i; j++) {
+                float pointX;
+                float pointY;
+                float determinant = det(directionX, directionY, lines.directionX[j], lines.directionY[j]);
+
+                if (Math.abs(determinant) <= EPSILON) {
+                    if (directionX * lines.directionX[j] + directionY * lines.directionY[j] > 0) {
+                        // Same direction
+                        continue;
+                    }
+                    // Opposite direction
+                    pointX = 0.5f * (lines.pointX[i] + lines.pointX[j]);
+                    pointY = 0.5f * (lines.pointY[i] + lines.pointY[j]);
+                } else {
+                    float t = det(lines.directionX[j], lines.directionY[j],
+                            lines.pointX[i] - lines.pointX[j], lines.pointY[i] - lines.pointY[j]) / determinant;
+                    pointX = lines.pointX[i] + t * directionX;
+                    pointY = lines.pointY[i] + t * directionY;
+                }
+
+                float projectedX = lines.directionX[j] - directionX;
+                float projectedY = lines.directionY[j] - directionY;
+                float length = (float) Math.sqrt(projectedX * projectedX + projectedY * projectedY);
+                projectedLines.add(pointX, pointY, projectedX / length, projectedY / length);
+            }
+
+            candidate[0] = result[0];
+            candidate[1] = result[1];
+            if (linearProgram2(projectedLines, radius, -directionY, directionX, true, candidate) >= projectedLines.size) {
+                result[0] = candidate[0];
+                result[1] = candidate[1];
+            }
+
+            distance = det(directionX, directionY, lines.pointX[i] - result[0], lines.pointY[i] - result[1]);
+        }
+    }
+
+    private static float det(float ax, float ay, float bx, float by) {
+        return ax * by - ay * bx;
+    }
+
+    // Directed lines; the permitted half-plane lies to the left of the direction
+    private static class HalfPlanes {
+        float[] pointX = new float[16];
+        float[] pointY = new float[16];
+        float[] directionX = new float[16];
+        float[] directionY = new float[16];
+        int size = 0;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(float px, float py, float dx, float dy) {
+            if (size == pointX.length) {
+                pointX = Arrays.copyOf(pointX, size * 2);
+                pointY = Arrays.copyOf(pointY, size * 2);
+                directionX = Arrays.copyOf(directionX, size * 2);
+                directionY = Arrays.copyOf(directionY, size * 2);
+            }
+            pointX[size] = px;
+            pointY[size] = py;
+            directionX[size] = dx;
+            directionY[size] = dy;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package crowd_simulation.algorithms;
+
+// Distance tests of one point against a contiguous block of candidate positions
+public interface PairwiseKernel {
+    // Appends (ids[slot], distance squared) for every slot in [from, to) within the radius of (x, y)
+    void collectWithinRadius(float[] xs, float[] ys, int[] ids, int from, int to,
+                             float x, float y, float radiusSquared, NeighborList result);
+
+    // Same as collectWithinRadius, but keeps only the k closest in the result
+    void collectNearest(float[] xs, float[] ys, int[] ids, int from, int to,
+                        float x, float y, float radiusSquared, int k, NeighborList result);
+
+    // Appends (ids[slot], distance squared) for every circle in [from, to) that overlaps the given circle
+    void collectOverlapping(float[] xs, float[] ys, float[] radii, int[] ids, int from, int to,
+                            float x, float y, float radius, NeighborList result);
+
+    // The SIMD kernel when jdk.incubator.vector is enabled, unless -Dcrowd.simd=false; scalar otherwise
+    static PairwiseKernel preferred() {
+        boolean vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (vectorModule && Boolean.parseBoolean(System.getProperty("crowd.simd", "true"))) {
+            try {
+                // Loaded reflectively so the class never links when the module is missing
+                return (PairwiseKernel) Class.forName("crowd_simulation.algorithms.VectorPairwiseKernel")
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new ScalarPairwiseKernel();
+            }
+        }
+        return new ScalarPairwiseKernel();
+    }
+}
@@ -0,0 +1,78 @@
+package crowd_simulation.algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Splits agent index ranges across a ForkJoinPool. Closing it shuts down a pool it made itself;
+// a pool it was given, like the common pool, stays with its owner.
+public class ParallelExecutor implements AutoCloseable {
+    // Fixed chunks keep the split the same whatever the pool size
+    private static final int CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+
+    public ParallelExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelExecutor(int parallelism) {
+        this(new ForkJoinPool(parallelism), true);
+    }
+
+    public ParallelExecutor(ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    private ParallelExecutor(ForkJoinPool pool, boolean ownsPool) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    public void forEachRange(int count, RangeBody body) {
+        if (count <= CHUNK_SIZE) {
+            body.run(0, count);
+        } else {
+            pool.invoke(new RangeTask(0, count, body));
+        }
+    }
+
+    public int getParallelism() { return pool.getParallelism(); }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        // Tasks only ever run in the pool that made them and are never serialized
+        private final transient RangeBody body;
+
+        RangeTask(int from, int to, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                body.run(from, to);
+                return;
+            }
+            int middle = from + (to - from) / 2;
+            invokeAll(new RangeTask(from, middle, body), new RangeTask(middle, to, body));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package crowd_simulation.algorithms;
+
+public class ScalarPairwiseKernel implements PairwiseKernel {
+    @Override
+    public void collectWithinRadius(float[] xs, float[] ys, int[] ids, int from, int to,
+                                    float x, float y, float radiusSquared, NeighborList result) {
+        for (int slot = from; slot < to; slot++) {
+            float dx = xs[slot] - x;
+            float dy = ys[slot] - y;
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radiusSquared) {
+                result.add(ids[slot], distanceSquared);
+            }
+        }
+    }
+
+    @Override
+    public void collectNearest(float[] xs, float[] ys, int[] ids, int from, int to,
+                               float x, float y, float radiusSquared, int k, NeighborList result) {
+        for (int slot = from; slot < to; slot++) {
+            float dx = xs[slot] - x;
+            float dy = ys[slot] - y;
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radiusSquared) {
+                result.addNearest(ids[slot], distanceSquared, k);
+            }
+        }
+    }
+
+    @Override
+    public void collectOverlapping(float[] xs, float[] ys, float[] radii, int[] ids, int from, int to,
+                                   float x, float y, float radius, NeighborList result) {
+        for (int slot = from; slot < to; slot++) {
+            float dx = xs[slot] - x;
+            float dy = ys[slot] - y;
+            float combinedRadius = radius + radii[slot];
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared < combinedRadius * combinedRadius) {
+                result.add(ids[slot], distanceSquared);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Scalar";
+    }
+}
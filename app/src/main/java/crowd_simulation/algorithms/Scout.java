@@ -1,96 +1,326 @@
 package crowd_simulation.algorithms;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-import crowd_simulation.Agent;
-import processing.core.PVector;
+import crowd_simulation.AgentStore;
 
 public class Scout implements CrowdAlgorithm {
+    public enum Mode {
+        // Steer away from the first neighbor on a collision course
+        RVO,
+        // Solve for the velocity closest to the preferred one that satisfies every neighbor's half-plane
+        ORCA
+    }
+
+    private static final float GOLDEN_ANGLE = 2.3999632f;
+    private static final float ORCA_PERTURBATION = 0.01f;
+    public static final float DEFAULT_NEIGHBOR_SKIN = 10f;
+
     private float timeHorizon = 2.0f;
     private float neighborDistance = 50f;
+    private int maxNeighbors = 10;
+    private Mode mode = Mode.RVO;
+
+    private final SpatialIndex spatialIndex;
+    private final VerletNeighborLists neighborLists;
+    private final Workspace workspace = new Workspace();
+    private final ThreadLocal<Workspace> workerWorkspaces = ThreadLocal.withInitial(Workspace::new);
+    private ParallelExecutor executor;
+    private FlowFieldNavigator navigator;
+    private UpdateScheduler scheduler;
+    private DensityField densityField;
+
+    // Scratch neighbor list and velocities, reused for every agent
+    private static class Workspace {
+        final NeighborList neighbors = new NeighborList();
+        final float[] preferredVelocity = new float[2];
+        final float[] avoidVelocity = new float[2];
+        final OrcaSolver orca = new OrcaSolver();
+        final float[] direction = new float[2];
+    }
+
+    public Scout() {
+        this(new UniformGrid(50f));
+    }
+
+    public Scout(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+        this.neighborLists = new VerletNeighborLists(spatialIndex, DEFAULT_NEIGHBOR_SKIN);
+    }
 
     @Override
-    public void updateAgents(List<Agent> agents, double deltaTime) {
-        for (Agent agent : agents) {
-            if (!agent.hasReachedGoal()) {
-                PVector preferredVelocity = getPreferredVelocity(agent);
-                PVector newVelocity = computeNewVelocity(agent, agents, preferredVelocity);
-                agent.setVelocity(newVelocity);
+    public void updateAgents(AgentStore store, double deltaTime) {
+        // In hybrid mode agents in dense regions steer from the density field and need no neighbors
+        if (densityField != null) {
+            densityField.rebuild(store, navigator != null ? navigator.getObstacles() : null);
+        }
+        if (usesNeighborLists()) {
+            neighborLists.update(store, neighborDistance, executor, densityField != null ? densityField::isDense : null);
+        } else {
+            spatialIndex.rebuild(store);
+        }
+        if (navigator != null) {
+            navigator.prepare(store, executor);
+        }
+        float timeStep = (float) deltaTime;
+        // Finished agents stay in the index as obstacles but are not steered; with a scheduler, neither
+        // are agents in free flow between their updates
+        int steerCount = scheduler != null
+                ? scheduler.schedule(store, (float) deltaTime, neighborDistance, executor) : store.getActiveCount();
+
+        // Every agent reacts to the last step's velocities, which ORCA's reciprocity assumes and which keeps
+        // the result the same with or without an executor
+        if (executor == null) {
+            for (int k = 0; k < steerCount; k++) {
+                int i = steeredAgent(store, k);
+                updateAgent(store, i, workspace, timeStep);
+            }
+        } else {
+            executor.forEachRange(steerCount, (from, to) -> {
+                Workspace scratch = workerWorkspaces.get();
+                for (int k = from; k < to; k++) {
+                    int i = steeredAgent(store, k);
+                    updateAgent(store, i, scratch, timeStep);
+                }
+            });
+        }
+        store.swapVelocities();
+    }
+
+    private void updateAgent(AgentStore store, int i, Workspace scratch, float timeStep) {
+        float velocityX = 0;
+        float velocityY = 0;
+
+        if (!store.hasReachedGoal(i)) {
+            getPreferredVelocity(store, i, scratch, scratch.preferredVelocity);
+            if (densityField != null && densityField.isDense(i)) {
+                densityField.steer(store, i, scratch.preferredVelocity);
+            } else if (mode == Mode.ORCA) {
+                computeOrcaVelocity(store, i, scratch, timeStep, scratch.preferredVelocity);
             } else {
-                agent.setVelocity(new PVector(0, 0));
+                computeNewVelocity(store, i, scratch, scratch.preferredVelocity);
             }
+            velocityX = scratch.preferredVelocity[0];
+            velocityY = scratch.preferredVelocity[1];
         }
+
+        store.setNextVelocity(i, velocityX, velocityY);
     }
 
-    private PVector getPreferredVelocity(Agent agent) {
-        PVector goal = PVector.sub(agent.getGoal(), agent.getPosition());
-        float distance = goal.mag();
+    private void getPreferredVelocity(AgentStore store, int agent, Workspace scratch, float[] velocity) {
+        float goalX = store.getGoalX(agent) - store.getX(agent);
+        float goalY = store.getGoalY(agent) - store.getY(agent);
+        float distance = (float) Math.sqrt(goalX * goalX + goalY * goalY);
+
+        // Around obstacles, along the flow field at the speed the straight line would allow
+        if (navigator != null && navigator.getDirection(store, agent, scratch.direction)) {
+            float speed = Math.min(store.getMaxSpeed(agent), distance);
+            velocity[0] = scratch.direction[0] * speed;
+            velocity[1] = scratch.direction[1] * speed;
+            return;
+        }
 
         if (distance > 0) {
-            goal.normalize();
-            goal.mult(Math.min(agent.getMaxSpeed(), distance));
+            float scale = Math.min(store.getMaxSpeed(agent), distance) / distance;
+            goalX *= scale;
+            goalY *= scale;
         }
 
-        return goal;
+        velocity[0] = goalX;
+        velocity[1] = goalY;
     }
 
-    private PVector computeNewVelocity(Agent agent, List<Agent> agents, PVector preferredVelocity) {
-        PVector newVelocity = preferredVelocity.copy();
+    // Replaces the preferred velocity with the new one, limited to max speed
+    private void computeNewVelocity(AgentStore store, int agent, Workspace scratch, float[] velocity) {
+        NeighborList neighbors = scratch.neighbors;
+        float[] avoidVelocity = scratch.avoidVelocity;
+        float newX = velocity[0];
+        float newY = velocity[1];
 
-        for (Agent other : agents) {
+        if (usesNeighborLists()) {
+            neighborLists.queryRange(store, agent, neighborDistance, neighbors);
+        } else {
+            spatialIndex.queryRange(store.getX(agent), store.getY(agent), neighborDistance, neighbors);
+        }
+        // The first avoiding neighbor wins, so keep the original list order
+        neighbors.sortByIndex();
+
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
             if (other != agent) {
-                float distance = PVector.dist(agent.getPosition(), other.getPosition());
-
-                if (distance > 0 && distance < neighborDistance) {
-                    PVector avoidVelocity = computeAvoidVelocity(agent, other);
-                    if (avoidVelocity.mag() > 0) {
-                        newVelocity = avoidVelocity;
-                        break;
-                    }
+                float distance = (float) Math.sqrt(neighbors.getDistanceSquared(n));
+
+                if (distance > 0 && distance < neighborDistance
+                        && computeAvoidVelocity(store, agent, other, avoidVelocity)) {
+                    newX = avoidVelocity[0];
+                    newY = avoidVelocity[1];
+                    break;
                 }
             }
         }
 
-        newVelocity.limit(agent.getMaxSpeed());
-        return newVelocity;
+        float maxSpeed = store.getMaxSpeed(agent);
+        float magnitudeSquared = newX * newX + newY * newY;
+        if (magnitudeSquared > maxSpeed * maxSpeed) {
+            float scale = maxSpeed / (float) Math.sqrt(magnitudeSquared);
+            newX *= scale;
+            newY *= scale;
+        }
+        velocity[0] = newX;
+        velocity[1] = newY;
     }
 
-    private PVector computeAvoidVelocity(Agent agent, Agent other) {
-        PVector relativePosition = PVector.sub(other.getPosition(), agent.getPosition());
-        PVector relativeVelocity = PVector.sub(other.getVelocity(), agent.getVelocity());
+    // Replaces the preferred velocity with the ORCA solution over the nearest neighbors
+    private void computeOrcaVelocity(AgentStore store, int agent, Workspace scratch, float timeStep, float[] velocity) {
+        NeighborList neighbors = scratch.neighbors;
+        OrcaSolver orca = scratch.orca;
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float velocityX = store.getVelocityX(agent);
+        float velocityY = store.getVelocityY(agent);
+        float radius = store.getRadius(agent);
 
-        float distanceSquared = relativePosition.magSq();
-        float combinedRadius = agent.getRadius() + other.getRadius();
+        // One extra slot since the agent finds itself
+        if (usesNeighborLists()) {
+            neighborLists.queryNearest(store, agent, neighborDistance, maxNeighbors + 1, neighbors);
+        } else {
+            spatialIndex.queryNearest(x, y, neighborDistance, maxNeighbors + 1, neighbors);
+        }
+
+        orca.clear();
+        for (int n = 0; n < neighbors.size(); n++) {
+            int other = neighbors.get(n);
+            if (other == agent) continue;
+
+            orca.addNeighbor(store.getX(other) - x, store.getY(other) - y,
+                    velocityX - store.getVelocityX(other), velocityY - store.getVelocityY(other),
+                    velocityX, velocityY,
+                    radius + store.getRadius(other), timeHorizon, timeStep);
+        }
+
+        // Nudge the preferred velocity by a fixed per-agent angle so perfectly symmetric crowds cannot deadlock
+        float angle = agent * GOLDEN_ANGLE;
+        float nudge = ORCA_PERTURBATION * store.getMaxSpeed(agent);
+        float preferredX = velocity[0] + nudge * (float) Math.cos(angle);
+        float preferredY = velocity[1] + nudge * (float) Math.sin(angle);
+
+        orca.solve(store.getMaxSpeed(agent), preferredX, preferredY, velocity);
+    }
+
+    private boolean usesNeighborLists() {
+        return neighborLists.getSkin() > 0;
+    }
+
+    // Returns false when no avoidance is needed against this neighbor
+    private boolean computeAvoidVelocity(AgentStore store, int agent, int other, float[] velocity) {
+        float relativePositionX = store.getX(other) - store.getX(agent);
+        float relativePositionY = store.getY(other) - store.getY(agent);
+        float relativeVelocityX = store.getVelocityX(other) - store.getVelocityX(agent);
+        float relativeVelocityY = store.getVelocityY(other) - store.getVelocityY(agent);
+
+        float distanceSquared = relativePositionX * relativePositionX + relativePositionY * relativePositionY;
+        float combinedRadius = store.getRadius(agent) + store.getRadius(other);
         float combinedRadiusSquared = combinedRadius * combinedRadius;
 
-        float dotProduct = PVector.dot(relativeVelocity, relativePosition);
+        float dotProduct = relativeVelocityX * relativePositionX + relativeVelocityY * relativePositionY;
 
         if (dotProduct > 0) {
-            return new PVector();
+            return false;
         }
 
-        float discriminant = dotProduct * dotProduct - relativeVelocity.magSq() * (distanceSquared - combinedRadiusSquared);
+        float relativeSpeedSquared = relativeVelocityX * relativeVelocityX + relativeVelocityY * relativeVelocityY;
+        float discriminant = dotProduct * dotProduct - relativeSpeedSquared * (distanceSquared - combinedRadiusSquared);
 
-        if (discriminant < 0) {
-            return new PVector();
+        if (discriminant < 0 || relativeSpeedSquared == 0) {
+            return false;
         }
 
-        float timeToCollide = -(dotProduct + (float)Math.sqrt(discriminant)) / relativeVelocity.magSq();
+        float timeToCollide = -(dotProduct + (float)Math.sqrt(discriminant)) / relativeSpeedSquared;
 
         if (timeToCollide > timeHorizon || timeToCollide < 0) {
-            return new PVector();
+            return false;
         }
 
-        PVector futureRelativePosition = PVector.add(relativePosition, PVector.mult(relativeVelocity, timeToCollide));
-        futureRelativePosition.normalize();
-        futureRelativePosition.mult(agent.getMaxSpeed());
+        float futureX = relativePositionX + relativeVelocityX * timeToCollide;
+        float futureY = relativePositionY + relativeVelocityY * timeToCollide;
+        float futureDistance = (float) Math.sqrt(futureX * futureX + futureY * futureY);
+        if (futureDistance == 0) {
+            return false;
+        }
+
+        float scale = store.getMaxSpeed(agent) / futureDistance;
+        velocity[0] = futureX * scale;
+        velocity[1] = futureY * scale;
+        return true;
+    }
+
+    @Override
+    public void setParallelExecutor(ParallelExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void setUpdateScheduler(UpdateScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public UpdateScheduler getUpdateScheduler() { return scheduler; }
+
+    @Override
+    public float getInteractionRadius() { return neighborDistance; }
 
-        return futureRelativePosition;
+    // Hybrid mode: agents where the crowd is denser than the field's threshold steer from its density
+    // and velocity instead of from their neighbors; null steers every agent from its neighbors
+    public void setDensityField(DensityField densityField) {
+        this.densityField = densityField;
+    }
+
+    public DensityField getDensityField() { return densityField; }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(timeHorizon);
+        out.writeFloat(neighborDistance);
+        out.writeInt(maxNeighbors);
+        out.writeUTF(mode.name());
+        neighborLists.writeState(out);
+        out.writeBoolean(navigator != null);
+        if (navigator != null) navigator.writeState(out);
+        out.writeBoolean(scheduler != null);
+        if (scheduler != null) scheduler.writeState(out);
+        out.writeBoolean(densityField != null);
+        if (densityField != null) densityField.writeState(out);
     }
 
+    @Override
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        timeHorizon = in.readFloat();
+        neighborDistance = in.readFloat();
+        maxNeighbors = in.readInt();
+        mode = Mode.valueOf(in.readUTF());
+        neighborLists.readState(in, store);
+        navigator = in.readBoolean() ? FlowFieldNavigator.readState(in, store) : null;
+        scheduler = in.readBoolean() ? new UpdateScheduler() : null;
+        if (scheduler != null) scheduler.readState(in, store);
+        densityField = in.readBoolean() ? DensityField.readState(in, store) : null;
+    }
+
+    private int steeredAgent(AgentStore store, int k) {
+        return scheduler != null ? scheduler.getDueAgent(k) : store.getActiveAgent(k);
+    }
+
+    @Override
+    public void setNavigator(FlowFieldNavigator navigator) {
+        this.navigator = navigator;
+    }
+
+    public FlowFieldNavigator getNavigator() { return navigator; }
+
     @Override
     public String toString() {
-        return "Scout RVO Algorithm (Predictive Approach)";
+        return "Scout " + mode + " Algorithm (Predictive Approach)";
     }
 
     public void setTimeHorizon(float timeHorizon) {
@@ -100,4 +330,22 @@ public class Scout implements CrowdAlgorithm {
     public void setNeighborDistance(float neighborDistance) {
         this.neighborDistance = neighborDistance;
     }
-}
\ No newline at end of file
+
+    // Bounds the neighbors considered per agent in ORCA mode
+    public void setMaxNeighbors(int maxNeighbors) {
+        this.maxNeighbors = maxNeighbors;
+    }
+
+    // Margin kept around the neighbor distance in the cached neighbor lists; 0 queries the index every step
+    public void setNeighborSkin(float skin) {
+        neighborLists.setSkin(skin);
+    }
+
+    public VerletNeighborLists getNeighborLists() { return neighborLists; }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() { return mode; }
+}
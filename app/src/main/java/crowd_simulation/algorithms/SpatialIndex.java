@@ -0,0 +1,14 @@
+package crowd_simulation.algorithms;
+
+import crowd_simulation.AgentStore;
+
+public interface SpatialIndex {
+    // Snapshot agent positions; results refer to indices in the store
+    void rebuild(AgentStore store);
+
+    // All agents within radius of (x, y), including one at the query point itself
+    void queryRange(float x, float y, float radius, NeighborList result);
+
+    // Up to k agents within maxRadius of (x, y), closest first
+    void queryNearest(float x, float y, float maxRadius, int k, NeighborList result);
+}
@@ -0,0 +1,247 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import crowd_simulation.AgentStore;
+
+// Broad phase that keeps agents sorted along x between steps and tracks overlapping pairs
+public class SweepAndPrune {
+    private AgentStore store;
+    private int count = 0;
+
+    // Agent indices ordered by the left edge of their bounding interval
+    private int[] order = new int[0];
+    private float[] minX = new float[0];
+
+    // Positions and radii gathered into sorted order, so each sweep window is contiguous
+    private float[] sortedX = new float[0];
+    private float[] sortedY = new float[0];
+    private float[] sortedRadius = new float[0];
+
+    // Agents that had reached their goal by the last pass have not moved since, so their mutual
+    // contacts are carried over instead of recomputed; movingBefore[a] counts moving agents before sorted slot a
+    private boolean[] settled = new boolean[0];
+    private int[] movingBefore = new int[1];
+
+    private final PairwiseKernel kernel;
+    private final NeighborList overlaps = new NeighborList();
+
+    private LongHashSet contacts = new LongHashSet();
+    private LongHashSet currentContacts = new LongHashSet();
+
+    public SweepAndPrune() {
+        this(PairwiseKernel.preferred());
+    }
+
+    public SweepAndPrune(PairwiseKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public void update(AgentStore store, ContactListener listener) {
+        if (store != this.store || store.size() != count) {
+            reset(store);
+        }
+
+        sortAlongX();
+        findContacts();
+        reportContacts(listener);
+
+        for (int i = 0; i < count; i++) {
+            settled[i] = store.hasReachedGoal(i);
+        }
+    }
+
+    // Carries the sort order and the contacts over to a store the agents were copied into, agent i of
+    // the last one now at newIndexOf[i] or gone where that is -1; agents new to the store join the end
+    // of the order
+    public void remap(AgentStore store, int[] newIndexOf) {
+        int[] previousOrder = order;
+        int previousCount = count;
+        LongHashSet previousContacts = contacts;
+        contacts = currentContacts;
+        currentContacts = previousContacts;
+        reset(store);
+
+        boolean[] placed = new boolean[count];
+        int a = 0;
+        for (int p = 0; p < previousCount; p++) {
+            int agent = newIndexOf[previousOrder[p]];
+            if (agent >= 0) {
+                order[a++] = agent;
+                placed[agent] = true;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (!placed[i]) order[a++] = i;
+        }
+
+        for (int i = 0; i < previousContacts.size(); i++) {
+            long key = previousContacts.get(i);
+            int first = newIndexOf[firstOf(key)];
+            int second = newIndexOf[secondOf(key)];
+            if (first >= 0 && second >= 0) {
+                contacts.add(pairKey(first, second));
+            }
+        }
+        previousContacts.clear();
+    }
+
+    // The sort order, the contacts and which agents had settled; the rest is recomputed every pass
+    public void writeState(DataOutput out) throws IOException {
+        out.writeBoolean(store != null);
+        if (store == null) return;
+
+        out.writeInt(count);
+        for (int a = 0; a < count; a++) {
+            out.writeInt(order[a]);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeBoolean(settled[i]);
+        }
+        out.writeInt(contacts.size());
+        for (int i = 0; i < contacts.size(); i++) {
+            out.writeLong(contacts.get(i));
+        }
+    }
+
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        if (!in.readBoolean()) return;
+
+        reset(store);
+        if (in.readInt() != count) {
+            throw new IOException("Sweep state is for a different number of agents");
+        }
+        for (int a = 0; a < count; a++) {
+            order[a] = in.readInt();
+        }
+        for (int i = 0; i < count; i++) {
+            settled[i] = in.readBoolean();
+        }
+        int contactCount = in.readInt();
+        for (int i = 0; i < contactCount; i++) {
+            contacts.add(in.readLong());
+        }
+    }
+
+    public int getContactCount() { return contacts.size(); }
+
+    private void reset(AgentStore store) {
+        this.store = store;
+        count = store.size();
+        order = new int[count];
+        minX = new float[count];
+        sortedX = new float[count];
+        sortedY = new float[count];
+        sortedRadius = new float[count];
+        settled = new boolean[count];
+        movingBefore = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        contacts.clear();
+    }
+
+    // Insertion sort, close to linear since agents barely move between steps
+    private void sortAlongX() {
+        for (int a = 0; a < count; a++) {
+            int agent = order[a];
+            minX[a] = store.getX(agent) - store.getRadius(agent);
+        }
+
+        for (int a = 1; a < count; a++) {
+            int agent = order[a];
+            float key = minX[a];
+            int b = a - 1;
+            while (b >= 0 && minX[b] > key) {
+                order[b + 1] = order[b];
+                minX[b + 1] = minX[b];
+                b--;
+            }
+            order[b + 1] = agent;
+            minX[b + 1] = key;
+        }
+    }
+
+    private void findContacts() {
+        currentContacts.clear();
+        for (int i = 0; i < contacts.size(); i++) {
+            long key = contacts.get(i);
+            if (settled[firstOf(key)] && settled[secondOf(key)]) {
+                currentContacts.add(key);
+            }
+        }
+
+        for (int a = 0; a < count; a++) {
+            int agent = order[a];
+            sortedX[a] = store.getX(agent);
+            sortedY[a] = store.getY(agent);
+            sortedRadius[a] = store.getRadius(agent);
+            movingBefore[a + 1] = movingBefore[a] + (settled[agent] ? 0 : 1);
+        }
+
+        for (int a = 0; a < count; a++) {
+            int agent = order[a];
+            // The window of later intervals that start before this one ends
+            float maxX = sortedX[a] + sortedRadius[a];
+            int windowEnd = windowEnd(a, maxX);
+            if (settled[agent] && movingBefore[windowEnd] == movingBefore[a + 1]) {
+                continue;
+            }
+
+            overlaps.clear();
+            kernel.collectOverlapping(sortedX, sortedY, sortedRadius, order, a + 1, windowEnd,
+                    sortedX[a], sortedY[a], sortedRadius[a], overlaps);
+            for (int n = 0; n < overlaps.size(); n++) {
+                int other = overlaps.get(n);
+                if (!settled[agent] || !settled[other]) {
+                    currentContacts.add(pairKey(agent, other));
+                }
+            }
+        }
+    }
+
+    // First sorted slot after a whose interval starts at or beyond maxX
+    private int windowEnd(int a, float maxX) {
+        int low = a + 1;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (minX[middle] < maxX) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void reportContacts(ContactListener listener) {
+        for (int i = 0; i < currentContacts.size(); i++) {
+            long key = currentContacts.get(i);
+            if (!contacts.contains(key)) {
+                listener.contactBegin(firstOf(key), secondOf(key));
+            }
+        }
+        for (int i = 0; i < contacts.size(); i++) {
+            long key = contacts.get(i);
+            if (!currentContacts.contains(key)) {
+                listener.contactEnd(firstOf(key), secondOf(key));
+            }
+        }
+
+        LongHashSet swap = contacts;
+        contacts = currentContacts;
+        currentContacts = swap;
+    }
+
+    private static long pairKey(int a, int b) {
+        int first = Math.min(a, b);
+        int second = Math.max(a, b);
+        return ((long) first << 32) | second;
+    }
+
+    private static int firstOf(long key) { return (int) (key >>> 32); }
+    private static int secondOf(long key) { return (int) key; }
+}
@@ -0,0 +1,225 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import crowd_simulation.AgentStore;
+
+public class UniformGrid implements SpatialIndex {
+    // Upper bound on cells per agent so a sparse, spread out crowd cannot blow up memory
+    private static final int MAX_CELLS_PER_AGENT = 4;
+
+    private final float preferredCellSize;
+    private final PairwiseKernel kernel;
+    private float cellSize;
+    private float minX;
+    private float minY;
+    private int columns;
+    private int rows;
+    private int count;
+
+    private float[] positionX = new float[0];
+    private float[] positionY = new float[0];
+    private int[] agentCell = new int[0];
+    private int[] cellStart = new int[1];
+
+    // Agents sorted by cell, so each cell is one contiguous run
+    private int[] sortedIndex = new int[0];
+    private float[] sortedX = new float[0];
+    private float[] sortedY = new float[0];
+
+    public UniformGrid(float cellSize) {
+        this(cellSize, PairwiseKernel.preferred());
+    }
+
+    public UniformGrid(float cellSize, PairwiseKernel kernel) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.preferredCellSize = cellSize;
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void rebuild(AgentStore store) {
+        count = store.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            positionX[i] = store.getX(i);
+            positionY[i] = store.getY(i);
+        }
+        index();
+    }
+
+    // Writes the positions of the last rebuild, which is all the grid is built from
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(positionX[i]);
+            out.writeFloat(positionY[i]);
+        }
+    }
+
+    // Rebuilds the grid from positions written by writeState, as it was when they were taken
+    public void readState(DataInput in) throws IOException {
+        count = in.readInt();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            positionX[i] = in.readFloat();
+            positionY[i] = in.readFloat();
+        }
+        index();
+    }
+
+    // Sorts the snapshot positions into cells
+    private void index() {
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        minX = Float.POSITIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, positionX[i]);
+            minY = Math.min(minY, positionY[i]);
+            maxX = Math.max(maxX, positionX[i]);
+            maxY = Math.max(maxY, positionY[i]);
+        }
+
+        if (count == 0) {
+            columns = 1;
+            rows = 1;
+            cellStart = new int[2];
+            return;
+        }
+
+        // Grow cells when the crowd is spread too thin for the preferred size
+        cellSize = preferredCellSize;
+        long maxCells = (long) count * MAX_CELLS_PER_AGENT + 1;
+        while ((long) cellsAlong(maxX - minX) * cellsAlong(maxY - minY) > maxCells) {
+            cellSize *= 2;
+        }
+        columns = cellsAlong(maxX - minX);
+        rows = cellsAlong(maxY - minY);
+
+        int cellCount = columns * rows;
+        if (cellStart.length < cellCount + 1) {
+            cellStart = new int[cellCount + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cellCount + 1, 0);
+        }
+
+        // Counting sort of agents into cells
+        for (int i = 0; i < count; i++) {
+            int cell = column(positionX[i]) + row(positionY[i]) * columns;
+            agentCell[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = cellStart[agentCell[i]]++;
+            sortedIndex[slot] = i;
+            sortedX[slot] = positionX[i];
+            sortedY[slot] = positionY[i];
+        }
+        // Shift starts back after the fill pass moved them to the cell ends
+        for (int cell = cellCount; cell > 0; cell--) {
+            cellStart[cell] = cellStart[cell - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    @Override
+    public void queryRange(float x, float y, float radius, NeighborList result) {
+        result.clear();
+        if (count == 0) return;
+
+        float radiusSquared = radius * radius;
+        int firstColumn = column(x - radius);
+        int lastColumn = column(x + radius);
+        int firstRow = row(y - radius);
+        int lastRow = row(y + radius);
+
+        // Cells of one row are adjacent in sorted order, so each row is a single contiguous run
+        for (int r = firstRow; r <= lastRow; r++) {
+            int from = cellStart[firstColumn + r * columns];
+            int to = cellStart[lastColumn + r * columns + 1];
+            kernel.collectWithinRadius(sortedX, sortedY, sortedIndex, from, to, x, y, radiusSquared, result);
+        }
+    }
+
+    @Override
+    public void queryNearest(float x, float y, float maxRadius, int k, NeighborList result) {
+        result.clear();
+        if (count == 0 || k <= 0) return;
+
+        float radiusSquared = maxRadius * maxRadius;
+        int firstColumn = column(x - maxRadius);
+        int lastColumn = column(x + maxRadius);
+        int firstRow = row(y - maxRadius);
+        int lastRow = row(y + maxRadius);
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            int from = cellStart[firstColumn + r * columns];
+            int to = cellStart[lastColumn + r * columns + 1];
+            kernel.collectNearest(sortedX, sortedY, sortedIndex, from, to, x, y, radiusSquared, k, result);
+        }
+    }
+
+    // Distance from (x, y) to the nearest agent other than exclude, or maxRadius if none is closer;
+    // stops at the first agent closer than nearEnough, returning its distance
+    public float nearestDistance(float x, float y, float maxRadius, float nearEnough, int exclude) {
+        if (count == 0) return maxRadius;
+
+        float nearestSquared = maxRadius * maxRadius;
+        float enoughSquared = nearEnough * nearEnough;
+        int firstColumn = column(x - maxRadius);
+        int lastColumn = column(x + maxRadius);
+        int firstRow = row(y - maxRadius);
+        int lastRow = row(y + maxRadius);
+        for (int r = firstRow; r <= lastRow; r++) {
+            int to = cellStart[lastColumn + r * columns + 1];
+            for (int slot = cellStart[firstColumn + r * columns]; slot < to; slot++) {
+                float dx = sortedX[slot] - x;
+                float dy = sortedY[slot] - y;
+                float distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < nearestSquared && sortedIndex[slot] != exclude) {
+                    nearestSquared = distanceSquared;
+                    if (distanceSquared < enoughSquared) {
+                        return (float) Math.sqrt(distanceSquared);
+                    }
+                }
+            }
+        }
+        return (float) Math.sqrt(nearestSquared);
+    }
+
+    public float getCellSize() { return cellSize; }
+
+    private int cellsAlong(float extent) {
+        return (int) Math.min(Integer.MAX_VALUE - 1, extent / cellSize) + 1;
+    }
+
+    private int column(float x) {
+        int c = (int) Math.floor((x - minX) / cellSize);
+        return Math.max(0, Math.min(columns - 1, c));
+    }
+
+    private int row(float y) {
+        int r = (int) Math.floor((y - minY) / cellSize);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (positionX.length >= capacity) return;
+
+        positionX = new float[capacity];
+        positionY = new float[capacity];
+        agentCell = new int[capacity];
+        sortedIndex = new int[capacity];
+        sortedX = new float[capacity];
+        sortedY = new float[capacity];
+    }
+}
@@ -0,0 +1,214 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import crowd_simulation.AgentStore;
+
+// Level-of-detail scheduling of steering updates. Agents with a neighbor inside the algorithm's
+// interaction radius are steered every step; agents in free flow are put in tiers that are steered
+// every 2, 4 or 8 steps and keep their velocity in between, which the store's integration extrapolates.
+// Tiers come from the time the nearest agent would need to come within the interaction radius (or the
+// agent to reach its goal) at the worst-case closing speed; since that bound does not depend on how
+// anyone steers, an isolated agent keeps its tier for several periods before it is searched again.
+// The scheduler's own grid is rebuilt every few steps, with distances shortened by how far the
+// indexed agents may have moved since.
+public class UpdateScheduler {
+    public static final int TIERS = 4;
+    private static final int MAX_PERIOD = 1 << (TIERS - 1);
+    // An agent is steered again after at most this fraction of the time until something could reach it
+    private static final float SAFETY = 0.5f;
+    // Agents in tier 0 are steered every step anyway, so they look for free flow only this often
+    private static final int DENSE_RECHECK = 4;
+    // Longest time in steps an agent keeps its tier before its neighborhood is searched again
+    private static final int HORIZON = 4 * MAX_PERIOD;
+    private static final int REBUILD_PERIOD = 4;
+
+    private final UniformGrid spatialIndex = new UniformGrid(100f);
+
+    private AgentStore store;
+    private int count = -1;
+    private float fastestSpeed = 0;
+    private long step = 0;
+    private long builtAt = -REBUILD_PERIOD;
+    private long[] nextStep = new long[0];
+    private long[] nextCheck = new long[0];
+    private byte[] tier = new byte[0];
+    private boolean[] dueNow = new boolean[0];
+
+    private int[] due = new int[0];
+    private int dueCount = 0;
+    private final int[] tierCounts = new int[TIERS];
+    private long steered = 0;
+    private long scheduled = 0;
+
+    // Picks the active agents to steer this step and returns how many; the rest keep their velocity,
+    // also carried into the next-velocity buffer for algorithms that double-buffer
+    public int schedule(AgentStore store, float deltaTime, float interactionRadius, ParallelExecutor executor) {
+        if (store != this.store || store.size() != count) {
+            reset(store);
+        }
+        // A radius of zero means agents ignore each other, so only the goal bounds the tiers
+        if (interactionRadius > 0 && step - builtAt >= REBUILD_PERIOD) {
+            spatialIndex.rebuild(store);
+            builtAt = step;
+        }
+        float staleness = fastestSpeed * deltaTime * (step - builtAt);
+
+        int activeCount = store.getActiveCount();
+        ParallelExecutor.RangeBody classify = (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = store.getActiveAgent(k);
+                dueNow[i] = nextStep[i] <= step;
+                if (dueNow[i] && nextCheck[i] <= step) {
+                    float safeSteps = safeSteps(store, i, deltaTime, interactionRadius, staleness);
+                    int chosen = 0;
+                    while (chosen < TIERS - 1 && getPeriod(chosen + 1) <= safeSteps) {
+                        chosen++;
+                    }
+                    // The bound holds for whole periods beyond the next, so the search can wait until then
+                    int period = getPeriod(chosen);
+                    tier[i] = (byte) chosen;
+                    nextCheck[i] = step + (chosen == 0 ? DENSE_RECHECK
+                            : period * Math.max(1, (int) (safeSteps / period) - 1));
+                }
+                if (dueNow[i]) {
+                    nextStep[i] = step + getPeriod(tier[i]);
+                } else {
+                    store.setNextVelocity(i, store.getVelocityX(i), store.getVelocityY(i));
+                }
+            }
+        };
+        if (executor == null) {
+            classify.run(0, activeCount);
+        } else {
+            executor.forEachRange(activeCount, classify);
+        }
+
+        if (due.length < activeCount) {
+            due = new int[store.size()];
+        }
+        dueCount = 0;
+        Arrays.fill(tierCounts, 0);
+        for (int k = 0; k < activeCount; k++) {
+            int i = store.getActiveAgent(k);
+            tierCounts[tier[i]]++;
+            if (dueNow[i]) {
+                due[dueCount++] = i;
+            }
+        }
+
+        step++;
+        steered += dueCount;
+        scheduled += activeCount;
+        return dueCount;
+    }
+
+    private void reset(AgentStore store) {
+        this.store = store;
+        count = store.size();
+        nextStep = new long[count];
+        nextCheck = new long[count];
+        tier = new byte[count];
+        dueNow = new boolean[count];
+        builtAt = step - REBUILD_PERIOD;
+        fastestSpeed = 0;
+        for (int i = 0; i < count; i++) {
+            fastestSpeed = Math.max(fastestSpeed, store.getMaxSpeed(i));
+        }
+    }
+
+    // Tiers, due steps and the grid snapshot, so a restored run steers the same agents at the same steps
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(step);
+        out.writeLong(steered);
+        out.writeLong(scheduled);
+        for (int t = 0; t < TIERS; t++) {
+            out.writeInt(tierCounts[t]);
+        }
+        boolean started = store != null;
+        out.writeBoolean(started);
+        if (!started) return;
+
+        out.writeInt(count);
+        out.writeLong(builtAt);
+        out.writeFloat(fastestSpeed);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(nextStep[i]);
+            out.writeLong(nextCheck[i]);
+            out.writeByte(tier[i]);
+        }
+        spatialIndex.writeState(out);
+    }
+
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        step = in.readLong();
+        steered = in.readLong();
+        scheduled = in.readLong();
+        for (int t = 0; t < TIERS; t++) {
+            tierCounts[t] = in.readInt();
+        }
+        this.store = null;
+        count = -1;
+        if (!in.readBoolean()) return;
+
+        reset(store);
+        if (in.readInt() != count) {
+            throw new IOException("Schedule is for a different number of agents");
+        }
+        builtAt = in.readLong();
+        fastestSpeed = in.readFloat();
+        for (int i = 0; i < count; i++) {
+            nextStep[i] = in.readLong();
+            nextCheck[i] = in.readLong();
+            tier[i] = in.readByte();
+        }
+        spatialIndex.readState(in);
+    }
+
+    // Steps the agent can go unsteered: SAFETY times the time until another agent could come within
+    // the interaction radius, or the agent could reach its goal, whichever is sooner
+    private float safeSteps(AgentStore store, int agent, float deltaTime, float interactionRadius, float staleness) {
+        // Largest distance either agent can close in one step
+        float closing = (store.getMaxSpeed(agent) + fastestSpeed) * deltaTime;
+        if (closing <= 0) return HORIZON;
+
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float nearest = Float.MAX_VALUE;
+        if (interactionRadius > 0) {
+            // Anything within two steps' reach settles tier 0, which is most of a dense crowd, so a
+            // small search comes first
+            float denseRadius = interactionRadius + 2 * closing / SAFETY + staleness;
+            if (spatialIndex.nearestDistance(x, y, denseRadius, denseRadius, agent) < denseRadius) return 0;
+            float searchRadius = interactionRadius + closing * HORIZON / SAFETY + staleness;
+            nearest = spatialIndex.nearestDistance(x, y, searchRadius, denseRadius, agent) - staleness;
+        }
+
+        float goalX = store.getGoalX(agent) - x;
+        float goalY = store.getGoalY(agent) - y;
+        float ownStep = store.getMaxSpeed(agent) * deltaTime;
+        float toGoal = ownStep > 0 ? (float) Math.sqrt(goalX * goalX + goalY * goalY) / ownStep : Float.MAX_VALUE;
+        return Math.min(Math.min((nearest - interactionRadius) / closing, toGoal) * SAFETY, HORIZON);
+    }
+
+    // The k-th agent to steer this step, for k below the count schedule returned
+    public int getDueAgent(int k) { return due[k]; }
+    // Steering period of tier t, in steps
+    public static int getPeriod(int tier) { return 1 << tier; }
+    // Active agents per tier after the last schedule
+    public int getTierCount(int tier) { return tierCounts[tier]; }
+    // Fraction of active agent-steps that were steered rather than extrapolated
+    public float getSteeredFraction() { return scheduled > 0 ? (float) steered / scheduled : 1; }
+
+    public String getTierReport() {
+        StringBuilder report = new StringBuilder();
+        for (int t = 0; t < TIERS; t++) {
+            if (t > 0) report.append(", ");
+            report.append(String.format("1/%d: %d", getPeriod(t), tierCounts[t]));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package crowd_simulation.algorithms;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Tests a lane-width block of candidates per iteration; hits are re-measured in scalar code
+// so the results match ScalarPairwiseKernel exactly
+public class VectorPairwiseKernel implements PairwiseKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final ScalarPairwiseKernel scalar = new ScalarPairwiseKernel();
+
+    @Override
+    public void collectWithinRadius(float[] xs, float[] ys, int[] ids, int from, int to,
+                                    float x, float y, float radiusSquared, NeighborList result) {
+        int slot = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        if (slot < upperBound) {
+            FloatVector queryX = FloatVector.broadcast(SPECIES, x);
+            FloatVector queryY = FloatVector.broadcast(SPECIES, y);
+            FloatVector limit = FloatVector.broadcast(SPECIES, radiusSquared);
+
+            for (; slot < upperBound; slot += SPECIES.length()) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, xs, slot).sub(queryX);
+                FloatVector dy = FloatVector.fromArray(SPECIES, ys, slot).sub(queryY);
+                VectorMask<Float> hits = dx.mul(dx).add(dy.mul(dy)).compare(VectorOperators.LE, limit);
+                if (hits.anyTrue()) {
+                    scalarHits(hits.toLong(), slot, xs, ys, ids, x, y, radiusSquared, -1, result);
+                }
+            }
+        }
+        scalar.collectWithinRadius(xs, ys, ids, slot, to, x, y, radiusSquared, result);
+    }
+
+    @Override
+    public void collectNearest(float[] xs, float[] ys, int[] ids, int from, int to,
+                               float x, float y, float radiusSquared, int k, NeighborList result) {
+        int slot = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        if (slot < upperBound) {
+            FloatVector queryX = FloatVector.broadcast(SPECIES, x);
+            FloatVector queryY = FloatVector.broadcast(SPECIES, y);
+            FloatVector limit = FloatVector.broadcast(SPECIES, radiusSquared);
+
+            for (; slot < upperBound; slot += SPECIES.length()) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, xs, slot).sub(queryX);
+                FloatVector dy = FloatVector.fromArray(SPECIES, ys, slot).sub(queryY);
+                VectorMask<Float> hits = dx.mul(dx).add(dy.mul(dy)).compare(VectorOperators.LE, limit);
+                if (hits.anyTrue()) {
+                    scalarHits(hits.toLong(), slot, xs, ys, ids, x, y, radiusSquared, k, result);
+                }
+            }
+        }
+        scalar.collectNearest(xs, ys, ids, slot, to, x, y, radiusSquared, k, result);
+    }
+
+    @Override
+    public void collectOverlapping(float[] xs, float[] ys, float[] radii, int[] ids, int from, int to,
+                                   float x, float y, float radius, NeighborList result) {
+        int slot = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        if (slot < upperBound) {
+            FloatVector queryX = FloatVector.broadcast(SPECIES, x);
+            FloatVector queryY = FloatVector.broadcast(SPECIES, y);
+            FloatVector queryRadius = FloatVector.broadcast(SPECIES, radius);
+
+            for (; slot < upperBound; slot += SPECIES.length()) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, xs, slot).sub(queryX);
+                FloatVector dy = FloatVector.fromArray(SPECIES, ys, slot).sub(queryY);
+                FloatVector combinedRadius = FloatVector.fromArray(SPECIES, radii, slot).add(queryRadius);
+                VectorMask<Float> hits = dx.mul(dx).add(dy.mul(dy))
+                        .compare(VectorOperators.LT, combinedRadius.mul(combinedRadius));
+                if (hits.anyTrue()) {
+                    long lanes = hits.toLong();
+                    while (lanes != 0) {
+                        int hit = slot + Long.numberOfTrailingZeros(lanes);
+                        float hitX = xs[hit] - x;
+                        float hitY = ys[hit] - y;
+                        result.add(ids[hit], hitX * hitX + hitY * hitY);
+                        lanes &= lanes - 1;
+                    }
+                }
+            }
+        }
+        scalar.collectOverlapping(xs, ys, radii, ids, slot, to, x, y, radius, result);
+    }
+
+    // k < 0 appends every hit, otherwise keeps the k nearest
+    private static void scalarHits(long lanes, int slot, float[] xs, float[] ys, int[] ids,
+                                   float x, float y, float radiusSquared, int k, NeighborList result) {
+        while (lanes != 0) {
+            int hit = slot + Long.numberOfTrailingZeros(lanes);
+            float dx = xs[hit] - x;
+            float dy = ys[hit] - y;
+            float distanceSquared = dx * dx + dy * dy;
+            if (k < 0) {
+                result.add(ids[hit], distanceSquared);
+            } else {
+                result.addNearest(ids[hit], distanceSquared, k);
+            }
+            lanes &= lanes - 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SIMD " + SPECIES.length() + "-lane";
+    }
+}
@@ -0,0 +1,292 @@
+package crowd_simulation.algorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+import crowd_simulation.AgentStore;
+
+// Per-agent candidate lists within cutoff + skin, kept in flat arrays and reused across steps.
+// Every pair that is within the cutoff now was within cutoff + skin at the last build, as long as
+// no agent has moved more than half the skin since then; the lists are rebuilt once one has.
+public class VerletNeighborLists {
+    private final SpatialIndex spatialIndex;
+    private float skin;
+
+    // Agent i's candidates are neighbors[starts[i]] .. neighbors[ends[i] - 1], in build order.
+    // Only agents active at the build get lists; finished ones never move and are never queried for.
+    // Agents skipped at the build have empty lists until the next one.
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[] neighbors = new int[0];
+    private int[] builtActive = new int[0];
+    private int builtActiveCount = 0;
+    private boolean[] unlisted = new boolean[0];
+    private float[] builtX = new float[0];
+    private float[] builtY = new float[0];
+    private AgentStore builtStore;
+    private int builtCount = -1;
+    private float builtCutoff = -1;
+
+    private long updates = 0;
+    private long rebuilds = 0;
+
+    public VerletNeighborLists(SpatialIndex spatialIndex, float skin) {
+        this.spatialIndex = spatialIndex;
+        this.skin = skin;
+    }
+
+    // Call once per step before querying; returns true if the lists were rebuilt
+    public boolean update(AgentStore store, float cutoff, ParallelExecutor executor) {
+        return update(store, cutoff, executor, null);
+    }
+
+    // As above, but agents that skip tests true for get no list of their own; they remain candidates for
+    // others, and the lists are rebuilt as soon as one of them is no longer skipped
+    public boolean update(AgentStore store, float cutoff, ParallelExecutor executor, IntPredicate skip) {
+        updates++;
+        if (!needsRebuild(store, cutoff, skip)) {
+            return false;
+        }
+
+        rebuild(store, cutoff, executor, skip);
+        rebuilds++;
+        return true;
+    }
+
+    private boolean needsRebuild(AgentStore store, float cutoff, IntPredicate skip) {
+        if (store != builtStore || store.size() != builtCount || cutoff != builtCutoff) {
+            return true;
+        }
+
+        // Agents that had finished at the build have not moved since
+        float limitSquared = skin * skin / 4;
+        for (int k = 0; k < builtActiveCount; k++) {
+            int i = builtActive[k];
+            float dx = store.getX(i) - builtX[i];
+            float dy = store.getY(i) - builtY[i];
+            if (dx * dx + dy * dy > limitSquared || unlisted[i] && (skip == null || !skip.test(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild(AgentStore store, float cutoff, ParallelExecutor executor, IntPredicate skip) {
+        int count = store.size();
+        int activeCount = store.getActiveCount();
+        float radius = cutoff + skin;
+        spatialIndex.rebuild(store);
+
+        if (builtX.length < count) {
+            builtX = new float[count];
+            builtY = new float[count];
+            starts = new int[count];
+            ends = new int[count];
+            builtActive = new int[count];
+            unlisted = new boolean[count];
+        }
+        Arrays.fill(starts, 0, count, 0);
+        Arrays.fill(ends, 0, count, 0);
+        for (int k = 0; k < activeCount; k++) {
+            int i = store.getActiveAgent(k);
+            builtActive[k] = i;
+            builtX[i] = store.getX(i);
+            builtY[i] = store.getY(i);
+        }
+        builtActiveCount = activeCount;
+
+        // Each range of active agents collects its own candidates, which are then laid out in order
+        Map<Integer, Range> ranges = new ConcurrentHashMap<>();
+        ParallelExecutor.RangeBody collect = (from, to) -> {
+            Range range = new Range(to, to - from);
+            NeighborList found = new NeighborList();
+            for (int k = from; k < to; k++) {
+                int i = builtActive[k];
+                unlisted[i] = skip != null && skip.test(i);
+                if (unlisted[i]) {
+                    found.clear();
+                } else {
+                    spatialIndex.queryRange(store.getX(i), store.getY(i), radius, found);
+                }
+                range.add(k - from, found);
+            }
+            ranges.put(from, range);
+        };
+        if (executor == null) {
+            collect.run(0, activeCount);
+        } else {
+            executor.forEachRange(activeCount, collect);
+        }
+
+        int total = 0;
+        for (Range range : ranges.values()) {
+            total += range.size;
+        }
+        if (neighbors.length < total) {
+            neighbors = new int[total];
+        }
+
+        int position = 0;
+        for (int from = 0; from < activeCount; ) {
+            Range range = ranges.get(from);
+            System.arraycopy(range.neighbors, 0, neighbors, position, range.size);
+            for (int k = from; k < range.to; k++) {
+                int i = builtActive[k];
+                starts[i] = position + range.starts[k - from];
+                ends[i] = k + 1 < range.to ? position + range.starts[k + 1 - from] : position + range.size;
+            }
+            position += range.size;
+            from = range.to;
+        }
+
+        builtStore = store;
+        builtCount = count;
+        builtCutoff = cutoff;
+    }
+
+    // Candidates of one contiguous range of agents, collected by one worker
+    private static class Range {
+        final int to;
+        final int[] starts;
+        int[] neighbors;
+        int size = 0;
+
+        Range(int to, int agents) {
+            this.to = to;
+            this.starts = new int[agents];
+            this.neighbors = new int[Math.max(16, agents * 8)];
+        }
+
+        void add(int agent, NeighborList found) {
+            starts[agent] = size;
+            if (size + found.size() > neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, Math.max(neighbors.length * 2, size + found.size()));
+            }
+            for (int n = 0; n < found.size(); n++) {
+                neighbors[size++] = found.get(n);
+            }
+        }
+    }
+
+    // Candidates within radius (at most the cutoff) of an agent active at the last build, including itself, with current distances
+    public void queryRange(AgentStore store, int agent, float radius, NeighborList result) {
+        result.clear();
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float radiusSquared = radius * radius;
+        for (int n = starts[agent]; n < ends[agent]; n++) {
+            int other = neighbors[n];
+            float dx = store.getX(other) - x;
+            float dy = store.getY(other) - y;
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radiusSquared) {
+                result.add(other, distanceSquared);
+            }
+        }
+    }
+
+    // Up to k candidates within radius, closest first
+    public void queryNearest(AgentStore store, int agent, float radius, int k, NeighborList result) {
+        result.clear();
+        if (k <= 0) return;
+
+        float x = store.getX(agent);
+        float y = store.getY(agent);
+        float radiusSquared = radius * radius;
+        for (int n = starts[agent]; n < ends[agent]; n++) {
+            int other = neighbors[n];
+            float dx = store.getX(other) - x;
+            float dy = store.getY(other) - y;
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radiusSquared) {
+                result.addNearest(other, distanceSquared, k);
+            }
+        }
+    }
+
+    // The lists as last built, so a restored run rebuilds them at the same steps as the saved one
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(skin);
+        out.writeLong(updates);
+        out.writeLong(rebuilds);
+        boolean built = builtStore != null;
+        out.writeBoolean(built);
+        if (!built) return;
+
+        out.writeInt(builtCount);
+        out.writeFloat(builtCutoff);
+        out.writeInt(builtActiveCount);
+        int total = 0;
+        for (int k = 0; k < builtActiveCount; k++) {
+            int i = builtActive[k];
+            out.writeInt(i);
+            out.writeFloat(builtX[i]);
+            out.writeFloat(builtY[i]);
+            out.writeBoolean(unlisted[i]);
+            out.writeInt(starts[i]);
+            out.writeInt(ends[i]);
+            total = Math.max(total, ends[i]);
+        }
+        out.writeInt(total);
+        for (int n = 0; n < total; n++) {
+            out.writeInt(neighbors[n]);
+        }
+    }
+
+    public void readState(DataInput in, AgentStore store) throws IOException {
+        skin = in.readFloat();
+        updates = in.readLong();
+        rebuilds = in.readLong();
+        builtStore = null;
+        if (!in.readBoolean()) return;
+
+        int count = in.readInt();
+        if (count != store.size()) {
+            throw new IOException("Neighbor lists are for a different number of agents");
+        }
+        builtCutoff = in.readFloat();
+        builtActiveCount = in.readInt();
+        builtX = new float[count];
+        builtY = new float[count];
+        starts = new int[count];
+        ends = new int[count];
+        builtActive = new int[count];
+        unlisted = new boolean[count];
+        for (int k = 0; k < builtActiveCount; k++) {
+            int i = in.readInt();
+            builtActive[k] = i;
+            builtX[i] = in.readFloat();
+            builtY[i] = in.readFloat();
+            unlisted[i] = in.readBoolean();
+            starts[i] = in.readInt();
+            ends[i] = in.readInt();
+        }
+        neighbors = new int[in.readInt()];
+        for (int n = 0; n < neighbors.length; n++) {
+            neighbors[n] = in.readInt();
+        }
+        builtStore = store;
+        builtCount = count;
+    }
+
+    // Forces a rebuild on the next update, e.g. after agents were moved by hand
+    public void invalidate() {
+        builtStore = null;
+    }
+
+    public void setSkin(float skin) {
+        this.skin = skin;
+        invalidate();
+    }
+
+    public float getSkin() { return skin; }
+    public long getUpdateCount() { return updates; }
+    public long getRebuildCount() { return rebuilds; }
+    // Fraction of steps that rebuilt the lists
+    public float getRebuildRate() { return updates > 0 ? (float) rebuilds / updates : 0; }
+}
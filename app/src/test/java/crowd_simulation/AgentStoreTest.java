@@ -0,0 +1,36 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.algorithms.Ghost;
+
+class AgentStoreTest {
+    @Test void activeListAndCountersFollowFinishedAgents() {
+        AgentStore store = Scenarios.circle(200, 0, 0, Scenarios.circleRadiusFor(200));
+        SimulationEngine engine = new SimulationEngine(store, new Ghost(), 1f);
+
+        while (!engine.isFinished() && engine.getStepCount() < 5000) {
+            engine.step();
+
+            int reached = 0;
+            int collisions = 0;
+            int k = 0;
+            for (int i = 0; i < store.size(); i++) {
+                collisions += store.getCollisions(i);
+                if (store.hasReachedGoal(i)) {
+                    reached++;
+                    assertEquals(0f, store.getVelocityX(i));
+                    assertEquals(0f, store.getVelocityY(i));
+                } else {
+                    assertEquals(i, store.getActiveAgent(k++), "active agents out of index order");
+                }
+            }
+            assertEquals(k, store.getActiveCount());
+            assertEquals(reached, store.getReachedGoalCount());
+            assertEquals(collisions, store.getTotalCollisions());
+        }
+        assertTrue(engine.isFinished());
+        assertEquals(0, store.getActiveCount());
+    }
+}
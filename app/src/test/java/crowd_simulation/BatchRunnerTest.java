@@ -0,0 +1,55 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+class BatchRunnerTest {
+    @TempDir Path directory;
+
+    @Test void parameterAxesOnlyMultiplyTheirAlgorithm() {
+        List<BatchRunner.Cell> cells = BatchRunner.createMatrix(Map.of(
+                "algorithms", "ghost,boid",
+                "agents", "10,20",
+                "layouts", "circle,uniform",
+                "densities", "1,4",
+                "boid", "separationWeight=1,2;goalWeight=3"));
+
+        // 2 agent counts x (circle + 2 uniform densities) = 6 per parameter set
+        assertEquals(6 + 6 * 2, cells.size());
+        assertEquals(Map.of("separationWeight", 2f, "goalWeight", 3f), cells.get(7).getParameters());
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRunner.createMatrix(Map.of("algorithms", "scout", "scout", "unknown=1")).get(0).createAlgorithm());
+    }
+
+    @Test void cellsAreRepeatableAcrossThreads() throws InterruptedException {
+        BatchRunner.Cell cell = new BatchRunner.Cell("boid", 300, "uniform", 4, Map.of("separationWeight", 3f), 5);
+        List<BatchRunner.CellResult> results = BatchRunner.run(List.of(cell, cell, cell), 100, 3);
+
+        for (BatchRunner.CellResult result : results) {
+            assertEquals(100, result.getSteps());
+            assertEquals(results.get(0).getResult().getAverageDistanceTraveled(),
+                    result.getResult().getAverageDistanceTraveled(), 0f);
+            assertEquals(results.get(0).getResult().getTotalCollisions(), result.getResult().getTotalCollisions());
+        }
+    }
+
+    @Test void jsonEscapesNames() throws IOException {
+        assertEquals("\"plain\"", BatchRunner.jsonString("plain"));
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", BatchRunner.jsonString("a\"b\\c\nd\u0001"));
+
+        BatchRunner.Cell cell = new BatchRunner.Cell("boid", 20, "up\"hill", 4, Map.of("odd\\name", 3f), 5);
+        Path file = directory.resolve("results.json");
+        Benchmark.BenchmarkResult result = new Benchmark.BenchmarkResult("boid", Scenarios.uniform(20, 4, 5), 1);
+        BatchRunner.writeJson(List.of(new BatchRunner.CellResult(cell, result, 5, 5, 0.1)), file);
+        String json = Files.readString(file);
+        assertTrue(json.contains("\"layout\": \"up\\\"hill\""), json);
+        assertTrue(json.contains("\"parameters\": {\"odd\\\\name\": 3.0}"), json);
+    }
+}
@@ -0,0 +1,120 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import crowd_simulation.algorithms.Boid;
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.DensityField;
+import crowd_simulation.algorithms.FlowFieldNavigator;
+import crowd_simulation.algorithms.Ghost;
+import crowd_simulation.algorithms.Obstacles;
+import crowd_simulation.algorithms.Scout;
+import crowd_simulation.algorithms.UpdateScheduler;
+
+class CheckpointTest {
+    @TempDir Path directory;
+
+    private static FlowFieldNavigator pillars() {
+        Obstacles obstacles = new Obstacles();
+        obstacles.addDisk(0, 0, 60);
+        obstacles.addRect(-200, 150, -120, 300);
+        return new FlowFieldNavigator(obstacles);
+    }
+
+    // Dense crowds exercise the contacts and the continuum, sparse ones the LOD tiers; the steps are
+    // picked so that the neighbor lists are not due for a rebuild right after the checkpoint.
+    // Runs 2 x steps straight through, and steps, a checkpoint, a restore and steps more; both must agree bit for bit
+    private void assertContinuesExactly(Supplier<CrowdAlgorithm> algorithm, float density, int steps) throws IOException {
+        SimulationEngine straight = new SimulationEngine(Scenarios.uniform(400, density, 11), algorithm.get(), 1);
+        SimulationEngine interrupted = new SimulationEngine(Scenarios.uniform(400, density, 11), algorithm.get(), 1);
+        for (int step = 0; step < steps; step++) {
+            straight.step();
+            interrupted.step();
+        }
+        Path file = directory.resolve("run.checkpoint");
+        Checkpoint.write(interrupted, file);
+        SimulationEngine restored = Checkpoint.read(file);
+        assertEquals(interrupted.getAlgorithm().toString(), restored.getAlgorithm().toString());
+        for (int step = 0; step < steps; step++) {
+            straight.step();
+            restored.step();
+        }
+
+        AgentStore expected = straight.getStore();
+        AgentStore actual = restored.getStore();
+        assertEquals(straight.getStepCount(), restored.getStepCount());
+        assertEquals(expected.getReachedGoalCount(), actual.getReachedGoalCount());
+        assertEquals(expected.getTotalCollisions(), actual.getTotalCollisions());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i), 0f, "x of " + i);
+            assertEquals(expected.getY(i), actual.getY(i), 0f, "y of " + i);
+            assertEquals(expected.getVelocityX(i), actual.getVelocityX(i), 0f);
+            assertEquals(expected.getDistanceTraveled(i), actual.getDistanceTraveled(i), 0f);
+            assertEquals(expected.getTimeToGoal(i), actual.getTimeToGoal(i), 0f);
+        }
+        // Down to neighbor lists, LOD tiers and their counters
+        Checkpoint.write(straight, directory.resolve("straight.checkpoint"));
+        Checkpoint.write(restored, directory.resolve("restored.checkpoint"));
+        assertEquals(-1, Files.mismatch(directory.resolve("straight.checkpoint"), directory.resolve("restored.checkpoint")));
+    }
+
+    @Test void ghostContinuesExactly() throws IOException {
+        assertContinuesExactly(() -> {
+            Ghost ghost = new Ghost();
+            ghost.setNavigator(pillars());
+            ghost.setUpdateScheduler(new UpdateScheduler());
+            return ghost;
+        }, 4, 60);
+    }
+
+    @Test void boidAndScoutContinueExactly() throws IOException {
+        assertContinuesExactly(() -> {
+            Boid boid = new Boid();
+            boid.setSeparationWeight(3);
+            boid.setUpdateScheduler(new UpdateScheduler());
+            return boid;
+        }, 4, 45);
+        assertContinuesExactly(() -> {
+            Scout scout = new Scout();
+            scout.setMode(Scout.Mode.ORCA);
+            scout.setTimeHorizon(3);
+            scout.setNavigator(pillars());
+            scout.setUpdateScheduler(new UpdateScheduler());
+            scout.setDensityField(new DensityField());
+            return scout;
+        }, 1, 40);
+    }
+
+    @Test void restoresARunThatHasNotStarted() throws IOException {
+        Path file = directory.resolve("start.checkpoint");
+        for (String name : new String[] {"ghost", "boid", "scout"}) {
+            Checkpoint.write(new SimulationEngine(Scenarios.uniform(50, 4, 3), HeadlessRunner.createAlgorithm(name), 1), file);
+            SimulationEngine restored = Checkpoint.read(file);
+            assertEquals(0, restored.getStepCount());
+            for (int step = 0; step < 300; step++) {
+                restored.step();
+            }
+            assertTrue(restored.getStore().getReachedGoalCount() > 0, name);
+        }
+    }
+
+    @Test void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("agents.bin");
+        ScenarioLoader.writeAgentsBinary(Scenarios.uniform(10, 4, 1), file);
+        assertThrows(IOException.class, () -> Checkpoint.read(file));
+
+        // Passive agents belong to a neighboring shard and are not part of the run
+        AgentStore store = Scenarios.uniform(10, 4, 1);
+        store.addPassive(0, 0, 1, 0, 10, 2);
+        assertThrows(IllegalStateException.class,
+                () -> Checkpoint.write(new SimulationEngine(store, new Ghost()), directory.resolve("shard.checkpoint")));
+        assertFalse(Files.exists(directory.resolve("shard.checkpoint")));
+    }
+}
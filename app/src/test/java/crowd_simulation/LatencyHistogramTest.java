@@ -0,0 +1,34 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    @Test void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_000, histogram.getPercentile(50), 50_000_000 * 0.016);
+        assertEquals(99_000_000, histogram.getPercentile(99), 99_000_000 * 0.016);
+        assertEquals(99_900_000, histogram.getPercentile(99.9), 99_900_000 * 0.016);
+    }
+
+    @Test void bucketsCoverEveryDuration() {
+        for (long value : new long[] {0, 1, 127, 128, 129, 1_000_003, Long.MAX_VALUE}) {
+            long middle = LatencyHistogram.valueOf(LatencyHistogram.bucketOf(value));
+            assertEquals(value, middle, value / 64.0 + 1);
+        }
+    }
+
+    @Test void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
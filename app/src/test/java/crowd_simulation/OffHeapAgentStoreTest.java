@@ -0,0 +1,90 @@
+package crowd_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+import crowd_simulation.algorithms.ParallelExecutor;
+
+class OffHeapAgentStoreTest {
+    @TempDir
+    Path directory;
+
+    private static void assertSameState(AgentStore expected, AgentStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i));
+            assertEquals(expected.getY(i), actual.getY(i));
+            assertEquals(expected.getVelocityX(i), actual.getVelocityX(i));
+            assertEquals(expected.getVelocityY(i), actual.getVelocityY(i));
+            assertEquals(expected.getDistanceTraveled(i), actual.getDistanceTraveled(i));
+            assertEquals(expected.getCollisions(i), actual.getCollisions(i));
+            assertEquals(expected.hasReachedGoal(i), actual.hasReachedGoal(i));
+            assertEquals(expected.getTimeToGoal(i), actual.getTimeToGoal(i));
+        }
+        assertEquals(expected.getReachedGoalCount(), actual.getReachedGoalCount());
+        assertEquals(expected.getTotalCollisions(), actual.getTotalCollisions());
+        assertEquals(expected.getActiveCount(), actual.getActiveCount());
+    }
+
+    private static void run(AgentStore store, String algorithmName, int threads, int steps) {
+        CrowdAlgorithm algorithm = HeadlessRunner.createAlgorithm(algorithmName);
+        try (ParallelExecutor executor = threads > 1 ? new ParallelExecutor(threads) : null) {
+            algorithm.setParallelExecutor(executor);
+            SimulationEngine engine = new SimulationEngine(store, algorithm, 1f);
+            for (int step = 0; step < steps; step++) {
+                engine.step();
+            }
+        }
+    }
+
+    @Test void algorithmsRunTheSameOffHeap() throws Exception {
+        for (String algorithm : new String[] {"ghost", "boid", "scout", "scout-orca"}) {
+            for (int threads : new int[] {1, 4}) {
+                AgentStore heap = Scenarios.circle(120, 0, 0, Scenarios.circleRadiusFor(120));
+                // Starts small so the segment has to grow while agents are added
+                try (OffHeapAgentStore offHeap = new OffHeapAgentStore(4)) {
+                    Scenarios.circle(offHeap, 120, 0, 0, Scenarios.circleRadiusFor(120));
+                    run(heap, algorithm, threads, 1000);
+                    run(offHeap, algorithm, threads, 1000);
+
+                    assertSameState(heap, offHeap);
+                    Benchmark.BenchmarkResult expected = new Benchmark.BenchmarkResult(algorithm, heap, 0);
+                    Benchmark.BenchmarkResult actual = new Benchmark.BenchmarkResult(algorithm, offHeap, 0);
+                    assertEquals(expected.getAverageDistanceTraveled(), actual.getAverageDistanceTraveled());
+                    assertEquals(expected.getAgentsReachedGoal(), actual.getAgentsReachedGoal());
+                }
+            }
+        }
+    }
+
+    @Test void mappedStoreReopensWhereItStopped() throws Exception {
+        Path file = directory.resolve("agents.store");
+        AgentStore heap = Scenarios.circle(100, 0, 0, Scenarios.circleRadiusFor(100));
+        try (OffHeapAgentStore mapped = OffHeapAgentStore.create(file, 16)) {
+            mapped.addAll(heap);
+            run(heap, "scout-orca", 1, 300);
+            run(mapped, "scout-orca", 1, 300);
+            mapped.force();
+        }
+        assertEquals(OffHeapAgentStore.HEADER_SIZE + 100 * OffHeapAgentStore.AGENT_SIZE, Files.size(file));
+
+        try (OffHeapAgentStore reopened = OffHeapAgentStore.open(file)) {
+            assertSameState(heap, reopened);
+            run(heap, "scout-orca", 1, 300);
+            run(reopened, "scout-orca", 1, 300);
+            assertSameState(heap, reopened);
+        }
+    }
+
+    @Test void rejectsOtherFiles() throws Exception {
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[200]);
+        assertThrows(IOException.class, () -> OffHeapAgentStore.open(file));
+    }
+}
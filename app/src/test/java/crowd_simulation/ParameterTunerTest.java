@@ -0,0 +1,46 @@
+package crowd_simulation;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterTunerTest {
+    private static final Map<String, String> OPTIONS = Map.of("agents", "40", "seed", "5");
+
+    @Test void halvesDownToTheFinalists() throws Exception {
+        List<ParameterTuner.Candidate> candidates = ParameterTuner.createCandidates(OPTIONS, "scout", 8);
+        assertTrue(candidates.get(0).getParameters().isEmpty());
+
+        List<ParameterTuner.Candidate> finalists = ParameterTuner.tune(candidates, 2, 20, 2, 2);
+
+        assertEquals(2, finalists.size());
+        // 8 candidates ran 20 steps, 4 of them 40 and the last 2 ran 80
+        assertEquals(4, candidates.stream().filter(candidate -> candidate.getSteps() == 20).count());
+        assertEquals(2, candidates.stream().filter(candidate -> candidate.getSteps() == 40).count());
+        for (ParameterTuner.Candidate finalist : finalists) {
+            assertEquals(80, finalist.getSteps());
+            assertEquals(2, finalist.getRung());
+        }
+    }
+
+    @Test void frontHoldsTheUndominated() throws Exception {
+        List<ParameterTuner.Candidate> candidates = ParameterTuner.createCandidates(OPTIONS, "boid", 12);
+        ParameterTuner.tune(candidates, 12, 100, 2, 2);
+        List<ParameterTuner.Candidate> front = ParameterTuner.paretoFront(candidates);
+
+        assertFalse(front.isEmpty());
+        for (ParameterTuner.Candidate candidate : candidates) {
+            boolean dominated = candidates.stream().anyMatch(other -> other.dominates(candidate));
+            assertEquals(!dominated, front.contains(candidate), "candidate " + candidate.getId());
+        }
+        // The front comes first in the ranking
+        List<ParameterTuner.Candidate> ranked = ParameterTuner.rank(candidates);
+        assertTrue(front.containsAll(ranked.subList(0, front.size())));
+    }
+
+    @Test void onlyTunesBoidAndScout() {
+        assertThrows(IllegalArgumentException.class, () -> ParameterTuner.createCandidates(OPTIONS, "ghost", 4));
+    }
+}
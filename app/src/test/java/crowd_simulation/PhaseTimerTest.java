@@ -0,0 +1,16 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhaseTimerTest {
+    @Test void onlyStopTheWorldCollectorsCountAsPauses() {
+        for (String name : new String[] {"G1 Young Generation", "G1 Old Generation", "ZGC Pauses",
+                "ZGC Minor Pauses", "Shenandoah Pauses", "PS Scavenge", "Copy"}) {
+            assertTrue(PhaseTimer.isPauseCollector(name), name);
+        }
+        for (String name : new String[] {"G1 Concurrent GC", "ZGC Cycles", "ZGC Major Cycles", "Shenandoah Cycles"}) {
+            assertFalse(PhaseTimer.isPauseCollector(name), name);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import crowd_simulation.algorithms.Scout;
+
+class ScenarioLoaderTest {
+    @TempDir Path directory;
+
+    @Test void ringGroupMatchesTheBuiltInCircle() throws IOException {
+        Path file = directory.resolve("circle.scenario");
+        Files.writeString(file, """
+                # The default app layout
+                name Circle swap
+                algorithm scout-orca
+                param maxNeighbors 4
+                group count=20 spawn=ring:450,400,150 goal=mirror:450,400
+                """);
+
+        Scenario scenario = ScenarioLoader.load(file);
+        AgentStore expected = Scenarios.circle(20, 450, 400, 150);
+        assertEquals("Circle swap", scenario.getName());
+        assertEquals(20, scenario.getStore().size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected.getX(i), scenario.getStore().getX(i), 1e-3f);
+            assertEquals(expected.getGoalY(i), scenario.getStore().getGoalY(i), 1e-3f);
+        }
+        assertEquals(Scout.Mode.ORCA, ((Scout) scenario.createAlgorithm()).getMode());
+    }
+
+    @Test void groupsAreSeededAndStayInsideTheirRegions() throws IOException {
+        Path file = directory.resolve("groups.scenario");
+        Files.writeString(file, """
+                seed 7
+                group count=500 spawn=rect:0,0,100,50 goal=disk:1000,0,20 radius=5..6 maxSpeed=3
+                """);
+
+        AgentStore first = ScenarioLoader.load(file).getStore();
+        AgentStore second = ScenarioLoader.load(file).getStore();
+        for (int i = 0; i < 500; i++) {
+            assertEquals(first.getX(i), second.getX(i), 0f);
+            assertTrue(first.getX(i) >= 0 && first.getX(i) <= 100 && first.getY(i) >= 0 && first.getY(i) <= 50);
+            assertTrue(Math.hypot(first.getGoalX(i) - 1000, first.getGoalY(i)) <= 20.001);
+            assertTrue(first.getRadius(i) >= 5 && first.getRadius(i) <= 6);
+            assertEquals(3, first.getMaxSpeed(i), 0f);
+        }
+    }
+
+    @Test void bulkAgentsLoadFromCsvAndBinary() throws IOException {
+        Files.writeString(directory.resolve("crowd.csv"), """
+                x,y,goalX,goalY,radius,maxSpeed
+                1.5,-2,3e2,4.25E-1
+                -0.125, 6 ,7,8,9,10\r
+                
+                """);
+        Files.writeString(directory.resolve("csv.scenario"), "agents crowd.csv radius=4 maxSpeed=1.5\n");
+
+        AgentStore store = ScenarioLoader.load(directory.resolve("csv.scenario")).getStore();
+        assertEquals(2, store.size());
+        assertEquals(1.5f, store.getX(0), 0f);
+        assertEquals(-2f, store.getY(0), 0f);
+        assertEquals(300f, store.getGoalX(0), 0f);
+        assertEquals(0.425f, store.getGoalY(0), 1e-6f);
+        assertEquals(4f, store.getRadius(0), 0f);
+        assertEquals(1.5f, store.getMaxSpeed(0), 0f);
+        assertEquals(-0.125f, store.getX(1), 0f);
+        assertEquals(10f, store.getMaxSpeed(1), 0f);
+
+        ScenarioLoader.writeAgentsBinary(store, directory.resolve("crowd.bin"));
+        Files.writeString(directory.resolve("bin.scenario"), "agents crowd.bin\nagents crowd.bin\n");
+        AgentStore binary = ScenarioLoader.load(directory.resolve("bin.scenario")).getStore();
+        assertEquals(4, binary.size());
+        assertEquals(store.getGoalY(0), binary.getGoalY(2), 0f);
+        assertEquals(store.getRadius(1), binary.getRadius(3), 0f);
+
+        // A corrupt count is rejected before anything is added
+        for (long count : new long[] {-1, Long.MIN_VALUE, 1L << 40}) {
+            Path corrupt = directory.resolve("corrupt.bin");
+            ByteBuffer header = ByteBuffer.allocate(ScenarioLoader.BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(ScenarioLoader.BINARY_MAGIC).putInt(ScenarioLoader.BINARY_VERSION).putLong(count);
+            Files.write(corrupt, header.array());
+            AgentStore target = new AgentStore();
+            assertThrows(IOException.class, () -> ScenarioLoader.readAgentsBinary(corrupt, target));
+            assertEquals(0, target.size());
+        }
+    }
+
+    @Test void errorsNameTheLine() throws IOException {
+        Path file = directory.resolve("bad.scenario");
+        Files.writeString(file, "seed 1\n\ngroup count=5 spawn=hexagon:1 goal=point:0,0\n");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> ScenarioLoader.load(file));
+        assertTrue(error.getMessage().contains("bad.scenario:3"), error.getMessage());
+
+        Files.writeString(file, "param flockiness 3\n");
+        assertThrows(IllegalArgumentException.class, () -> ScenarioLoader.load(file));
+    }
+}
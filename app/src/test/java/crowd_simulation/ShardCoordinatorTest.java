@@ -0,0 +1,64 @@
+package crowd_simulation;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.algorithms.CrowdAlgorithm;
+
+class ShardCoordinatorTest {
+    private static AgentStore runSharded(AgentStore store, String algorithm, int workers, int maxSteps) throws Exception {
+        try (ShardCoordinator coordinator = new ShardCoordinator(store, null,
+                Map.of("algorithm", algorithm, "dt", "1"), workers)) {
+            while (!coordinator.isFinished() && coordinator.getStepCount() < maxSteps) {
+                coordinator.step();
+            }
+            assertTrue(coordinator.getMigrationCount() > 0);
+            return coordinator.gather();
+        }
+    }
+
+    private static AgentStore runAlone(AgentStore store, String algorithm, int maxSteps) {
+        CrowdAlgorithm created = HeadlessRunner.createAlgorithm(algorithm);
+        SimulationEngine engine = new SimulationEngine(store, created, 1f);
+        while (!engine.isFinished() && engine.getStepCount() < maxSteps) {
+            engine.step();
+        }
+        return store;
+    }
+
+    // Ghost agents walk straight through each other, so sharding must not change a thing, contacts included
+    @Test void ghostRunsTheSameAcrossWorkers() throws Exception {
+        AgentStore alone = runAlone(Scenarios.circle(150, 0, 0, Scenarios.circleRadiusFor(150)), "ghost", 3000);
+        AgentStore sharded = runSharded(Scenarios.circle(150, 0, 0, Scenarios.circleRadiusFor(150)), "ghost", 3, 3000);
+
+        assertEquals(alone.size(), sharded.size());
+        for (int i = 0; i < alone.size(); i++) {
+            assertEquals(alone.getX(i), sharded.getX(i));
+            assertEquals(alone.getY(i), sharded.getY(i));
+            assertEquals(alone.getDistanceTraveled(i), sharded.getDistanceTraveled(i));
+            assertEquals(alone.getTimeToGoal(i), sharded.getTimeToGoal(i));
+            assertEquals(alone.getCollisions(i), sharded.getCollisions(i));
+        }
+        assertEquals(alone.getReachedGoalCount(), sharded.getReachedGoalCount());
+        assertEquals(alone.getTotalCollisions(), sharded.getTotalCollisions());
+    }
+
+    // Scout agents see their neighbors across strip borders through the halo copies
+    @Test void scoutAvoidsAcrossWorkers() throws Exception {
+        AgentStore alone = runAlone(Scenarios.circle(200, 0, 0, Scenarios.circleRadiusFor(200)), "scout", 5000);
+        AgentStore sharded = runSharded(Scenarios.circle(200, 0, 0, Scenarios.circleRadiusFor(200)), "scout", 3, 5000);
+
+        assertEquals(200, sharded.getReachedGoalCount());
+        Benchmark.BenchmarkResult expected = new Benchmark.BenchmarkResult("scout", alone, 0);
+        Benchmark.BenchmarkResult actual = new Benchmark.BenchmarkResult("scout", sharded, 0);
+        assertEquals(expected.getAverageTimeToGoal(), actual.getAverageTimeToGoal(), expected.getAverageTimeToGoal() * 0.05);
+    }
+
+    @Test void rejectsStripsNarrowerThanTheHalo() {
+        AgentStore store = Scenarios.uniform(40, 20f, 3);
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardCoordinator(store, null, Map.of("algorithm", "scout"), 8));
+    }
+}
@@ -0,0 +1,129 @@
+package crowd_simulation;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationServiceTest {
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    private static HttpResponse<String> send(SimulationService service, String method, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + service.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long number(String json, String field) {
+        Matcher matcher = Pattern.compile("\"" + field + "\": (\\d+)").matcher(json);
+        assertTrue(matcher.find(), field + " in " + json);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    @Test void runsSessionsSideBySide() throws Exception {
+        try (SimulationService service = new SimulationService(0, 2, 100)) {
+            service.start();
+            List<CompletableFuture<String>> runs = new ArrayList<>();
+            for (int s = 0; s < 40; s++) {
+                String algorithm = s % 2 == 0 ? "ghost" : "scout";
+                runs.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        String created = send(service, "POST", "/sessions?algorithm=" + algorithm + "&agents=30&dt=1").body();
+                        long id = number(created, "id");
+                        return send(service, "POST", "/sessions/" + id + "/step?steps=100000").body();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (CompletableFuture<String> run : runs) {
+                String metrics = run.get();
+                assertEquals(30, number(metrics, "reachedGoal"), metrics);
+                assertTrue(metrics.contains("\"finished\": true"), metrics);
+            }
+            assertEquals(40, service.getSessionCount());
+        }
+    }
+
+    // Every session steps exactly like a simulation run on its own
+    @Test void matchesAnEngineRunAlone() throws Exception {
+        try (SimulationService service = new SimulationService(0, 1, 10)) {
+            service.start();
+            long id = number(send(service, "POST", "/sessions?algorithm=boid&agents=50&separationWeight=2&dt=1").body(), "id");
+            String metrics = send(service, "POST", "/sessions/" + id + "/step?steps=200").body();
+            assertEquals(200, number(metrics, "steps"));
+
+            AgentStore store = Scenarios.circle(50, 0, 0, Scenarios.circleRadiusFor(50));
+            crowd_simulation.algorithms.CrowdAlgorithm boid = HeadlessRunner.createAlgorithm("boid");
+            BatchRunner.applyParameter(boid, "separationWeight", 2);
+            SimulationEngine engine = new SimulationEngine(store, boid, 1);
+            for (int step = 0; step < 200; step++) {
+                engine.step();
+            }
+            String json = send(service, "GET", "/sessions/" + id + "/positions").body();
+            assertTrue(json.contains("\"x\": [" + store.getX(0) + "," + store.getX(1) + ","), json);
+        }
+    }
+
+    @Test void streamsPositionsThenMetrics() throws Exception {
+        try (SimulationService service = new SimulationService(0, 1, 10)) {
+            service.start();
+            long id = number(send(service, "POST", "/sessions?agents=10").body(), "id");
+            String[] lines = send(service, "POST", "/sessions/" + id + "/stream?steps=30&every=10").body().split("\n");
+
+            assertEquals(4, lines.length);
+            assertEquals(10, number(lines[0], "step"));
+            assertEquals(30, number(lines[2], "step"));
+            assertTrue(lines[3].contains("\"averageTimeToGoal\""), lines[3]);
+        }
+    }
+
+    @Test void reportsBadRequests() throws Exception {
+        try (SimulationService service = new SimulationService(0, 1, 1)) {
+            service.start();
+            assertEquals(400, send(service, "POST", "/sessions?algorithm=teleport").statusCode());
+            assertEquals(400, send(service, "POST", "/sessions?algorithm=boid&stubbornness=3").statusCode());
+            assertEquals(404, send(service, "GET", "/sessions/7").statusCode());
+            assertEquals(400, send(service, "POST", "/sessions?agents=200000000").statusCode());
+            assertEquals(400, send(service, "POST", "/sessions?agents=-5").statusCode());
+
+            long id = number(send(service, "POST", "/sessions").body(), "id");
+            assertEquals(409, send(service, "POST", "/sessions").statusCode());
+            assertEquals(200, send(service, "DELETE", "/sessions/" + id).statusCode());
+            assertEquals(404, send(service, "POST", "/sessions/" + id + "/step").statusCode());
+            assertEquals(0, service.getSessionCount());
+        }
+    }
+
+    @Test void neverOpensMoreThanTheMaximum() throws Exception {
+        try (SimulationService service = new SimulationService(0, 2, 5)) {
+            service.start();
+            List<CompletableFuture<Integer>> creates = new ArrayList<>();
+            for (int s = 0; s < 30; s++) {
+                creates.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return send(service, "POST", "/sessions?agents=10").statusCode();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            int created = 0;
+            for (CompletableFuture<Integer> create : creates) {
+                int status = create.get();
+                assertTrue(status == 201 || status == 409, "" + status);
+                created += status == 201 ? 1 : 0;
+            }
+            assertEquals(5, created);
+            assertEquals(5, service.getSessionCount());
+        }
+    }
+}
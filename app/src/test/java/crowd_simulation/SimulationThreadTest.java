@@ -0,0 +1,78 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.algorithms.Ghost;
+
+class SimulationThreadTest {
+    @Test void tripleBufferHandsOverTheLatestBuffer() {
+        int[] next = {0};
+        TripleBuffer<int[]> buffer = new TripleBuffer<>(() -> new int[] {next[0]++});
+        assertFalse(buffer.acquire());
+
+        buffer.getWriteBuffer()[0] = 10;
+        buffer.publish();
+        buffer.getWriteBuffer()[0] = 11;
+        buffer.publish();
+
+        assertTrue(buffer.acquire());
+        assertEquals(11, buffer.getReadBuffer()[0]);
+        assertFalse(buffer.acquire());
+    }
+
+    @Test void readerNeverSeesOlderOrTornSnapshots() throws InterruptedException {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(() -> new long[64]);
+        int published = 200_000;
+        Thread writer = new Thread(() -> {
+            for (long value = 1; value <= published; value++) {
+                java.util.Arrays.fill(buffer.getWriteBuffer(), value);
+                buffer.publish();
+            }
+        });
+        writer.start();
+
+        long last = 0;
+        while (last < published) {
+            if (!buffer.acquire()) continue;
+            long[] values = buffer.getReadBuffer();
+            for (long value : values) {
+                assertEquals(values[0], value);
+            }
+            assertTrue(values[0] > last);
+            last = values[0];
+        }
+        writer.join();
+    }
+
+    private AgentStore crossing() {
+        AgentStore store = new AgentStore();
+        for (int i = 0; i < 16; i++) {
+            store.add(i * 30, 0, i * 30, 60, 5, 120);
+        }
+        return store;
+    }
+
+    @Test void threadedRunMatchesSteppingInline() {
+        SimulationEngine inline = new SimulationEngine(crossing(), new Ghost());
+        SimulationThread simulation = new SimulationThread(new SimulationEngine(crossing(), new Ghost()));
+
+        simulation.start();
+        while (simulation.isRunning()) {
+            Thread.onSpinWait();
+        }
+        simulation.stop();
+
+        assertTrue(simulation.isFinished());
+        while (!inline.isFinished()) {
+            inline.step();
+        }
+        assertEquals(inline.getStepCount(), simulation.getEngine().getStepCount());
+        simulation.pollSnapshot();
+        PositionSnapshot latest = simulation.getLatestSnapshot();
+        assertEquals(16, latest.getAgentsReachedGoal());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(inline.getStore().getX(i), latest.getX(i), 0f);
+        }
+    }
+}
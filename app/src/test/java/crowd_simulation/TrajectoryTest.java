@@ -0,0 +1,61 @@
+package crowd_simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import crowd_simulation.algorithms.Boid;
+
+class TrajectoryTest {
+    @TempDir Path directory;
+
+    @Test void replaysAnyFrameWithinQuantization() throws IOException {
+        Path file = directory.resolve("run.bin");
+        AgentStore store = Scenarios.uniform(500, 4, 7);
+        SimulationEngine engine = new SimulationEngine(store, new Boid());
+        PositionSnapshot[] expected = new PositionSnapshot[50];
+
+        // A small window forces the recorder and reader to remap several times
+        long windowBytes = 5 * (TrajectoryRecorder.FRAME_HEADER_SIZE + 500 * TrajectoryRecorder.FRAME_AGENT_SIZE);
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(file, store, engine.getTimeStep(), windowBytes)) {
+            for (int frame = 0; frame < expected.length; frame++) {
+                expected[frame] = new PositionSnapshot();
+                expected[frame].capture(store, engine.getStepCount());
+                recorder.append(expected[frame]);
+                engine.step();
+            }
+        }
+        assertEquals(TrajectoryRecorder.HEADER_SIZE + 500L * TrajectoryRecorder.AGENT_SIZE
+                + 50L * (TrajectoryRecorder.FRAME_HEADER_SIZE + 500 * TrajectoryRecorder.FRAME_AGENT_SIZE), Files.size(file));
+
+        try (TrajectoryReader reader = new TrajectoryReader(file, windowBytes)) {
+            assertEquals(50, reader.getFrameCount());
+            assertEquals(500, reader.getAgentCount());
+            assertEquals(store.getGoalX(42), reader.getAgents().getGoalX(42), 0f);
+
+            PositionSnapshot actual = new PositionSnapshot();
+            for (int frame : new int[] {37, 3, 49, 0, 12}) {
+                reader.readFrame(frame, actual);
+                assertEquals(expected[frame].getStep(), actual.getStep());
+                assertEquals(expected[frame].getAgentsReachedGoal(), actual.getAgentsReachedGoal());
+                for (int i = 0; i < 500; i++) {
+                    assertEquals(expected[frame].getX(i), actual.getX(i), 0.05f);
+                    assertEquals(expected[frame].getY(i), actual.getY(i), 0.05f);
+                    assertEquals(expected[frame].getVelocityX(i), actual.getVelocityX(i), 1e-3f);
+                    assertEquals(expected[frame].getVelocityY(i), actual.getVelocityY(i), 1e-3f);
+                }
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.readFrame(50, actual));
+        }
+    }
+
+    @Test void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[128]);
+        assertThrows(IOException.class, () -> new TrajectoryReader(file));
+    }
+}
@@ -0,0 +1,28 @@
+package crowd_simulation.algorithms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+
+class BoidTest {
+    @Test void fusedKernelMatchesReference() {
+        AgentStore fusedStore = Scenarios.uniform(1500, 6, 9);
+        AgentStore referenceStore = Scenarios.uniform(1500, 6, 9);
+        for (int i = 0; i < fusedStore.size(); i++) {
+            fusedStore.setVelocity(i, (i % 7) * 0.3f - 1f, (i % 5) * 0.4f - 1f);
+            referenceStore.setVelocity(i, (i % 7) * 0.3f - 1f, (i % 5) * 0.4f - 1f);
+        }
+
+        Boid reference = new Boid();
+        reference.setReferenceMode(true);
+        new Boid().updateAgents(fusedStore, 0.1);
+        reference.updateAgents(referenceStore, 0.1);
+
+        for (int i = 0; i < fusedStore.size(); i++) {
+            assertEquals(referenceStore.getVelocityX(i), fusedStore.getVelocityX(i), 1e-4f);
+            assertEquals(referenceStore.getVelocityY(i), fusedStore.getVelocityY(i), 1e-4f);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package crowd_simulation.algorithms;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.SimulationEngine;
+
+class DensityFieldTest {
+    // Square lattice of 5-radius agents 20 apart, all heading right or, with counterflow, alternating rows
+    private static AgentStore lattice(boolean counterflow) {
+        AgentStore store = new AgentStore(400);
+        for (int row = 0; row < 20; row++) {
+            for (int column = 0; column < 20; column++) {
+                float goalX = counterflow && row % 2 == 1 ? -1000 : 1000;
+                store.add(column * 20, row * 20, goalX, row * 20, 5, 2);
+            }
+        }
+        return store;
+    }
+
+    @Test void densityIsTheCoveredFraction() {
+        AgentStore store = lattice(false);
+        DensityField field = new DensityField(20, DensityField.DEFAULT_THRESHOLD);
+        field.rebuild(store, null);
+
+        float covered = (float) Math.PI * 5 * 5 / (20 * 20);
+        assertEquals(covered, field.getDensity(190, 190), 0.02f);
+        assertEquals(0, field.getDensity(1000, 1000), 0.001f);
+    }
+
+    @Test void onlyCrowdsHeadingTheSameWayAreDense() {
+        DensityField field = new DensityField(25, 0.15f);
+        AgentStore queue = lattice(false);
+        field.rebuild(queue, null);
+        assertTrue(field.isDense(10 * 20 + 10));
+
+        AgentStore counterflow = lattice(true);
+        field.rebuild(counterflow, null);
+        assertEquals(0, field.getDenseCount());
+    }
+
+    @Test void queueThroughAGapStaysOutOfTheWalls() {
+        Obstacles obstacles = new Obstacles();
+        obstacles.addRect(1000, -2000, 1020, -60);
+        obstacles.addRect(1000, 60, 1020, 2000);
+        AgentStore store = new AgentStore(300);
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            store.add(960 - random.nextFloat() * 420, (random.nextFloat() - 0.5f) * 420,
+                    1300 + random.nextFloat() * 400, (random.nextFloat() - 0.5f) * 800, 10, 2);
+        }
+        DensityField field = new DensityField();
+        Scout scout = new Scout();
+        scout.setDensityField(field);
+        scout.setNavigator(new FlowFieldNavigator(obstacles));
+
+        SimulationEngine engine = new SimulationEngine(store, scout, 1f);
+        while (!engine.isFinished() && engine.getStepCount() < 5000) {
+            engine.step();
+            for (int i = 0; i < store.size(); i++) {
+                assertFalse(obstacles.isBlocked(store.getX(i), store.getY(i), 0), "agent " + i + " in a wall");
+            }
+        }
+        assertTrue(field.getDenseFraction() > 0.2f, "dense: " + field.getDenseFraction());
+        // About as many as without the field make it through the gap
+        assertTrue(store.getReachedGoalCount() >= 180, "reached: " + store.getReachedGoalCount());
+    }
+}
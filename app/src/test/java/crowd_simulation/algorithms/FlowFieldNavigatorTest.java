@@ -0,0 +1,76 @@
+package crowd_simulation.algorithms;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.SimulationEngine;
+
+class FlowFieldNavigatorTest {
+    // A wall across the room with a single gap near the bottom
+    private static Obstacles wallWithGap() {
+        Obstacles obstacles = new Obstacles();
+        obstacles.addRect(290, 0, 310, 320);
+        obstacles.addRect(290, 380, 310, 400);
+        return obstacles;
+    }
+
+    @Test void agentsWalkThroughTheGapInsteadOfIntoTheWall() {
+        Obstacles obstacles = wallWithGap();
+        AgentStore store = new AgentStore();
+        for (int i = 0; i < 10; i++) {
+            store.add(100, 20 + i * 30, 500, 200, 5, 4);
+        }
+        Ghost ghost = new Ghost();
+        ghost.setNavigator(new FlowFieldNavigator(obstacles));
+        SimulationEngine engine = new SimulationEngine(store, ghost, 1f);
+
+        while (!engine.isFinished() && engine.getStepCount() < 1000) {
+            engine.step();
+            for (int i = 0; i < store.size(); i++) {
+                assertFalse(obstacles.isBlocked(store.getX(i), store.getY(i), 0), "agent walked into the wall");
+            }
+        }
+        assertTrue(engine.isFinished());
+    }
+
+    @Test void agentsWithTheSameExitShareOneField() {
+        AgentStore store = new AgentStore();
+        Random random = new Random(9);
+        for (int i = 0; i < 5000; i++) {
+            boolean left = i % 2 == 0;
+            store.add(200 + random.nextFloat() * 400, random.nextFloat() * 400,
+                    left ? 10 + random.nextFloat() * 20 : 770 + random.nextFloat() * 20, 190 + random.nextFloat() * 20);
+        }
+        FlowFieldNavigator navigator = new FlowFieldNavigator(wallWithGap());
+        navigator.prepare(store, null);
+
+        // Each 30 x 20 exit spans at most two goal tiles in each direction
+        assertTrue(navigator.getFieldCount() <= 8, "fields: " + navigator.getFieldCount());
+
+        float[] direction = new float[2];
+        for (int i = 0; i < store.size(); i++) {
+            if (navigator.getDirection(store, i, direction)) {
+                assertEquals(1, Math.hypot(direction[0], direction[1]), 1e-5);
+            }
+        }
+    }
+
+    @Test void followingTheFieldLeadsToTheGoal() {
+        AgentStore store = new AgentStore();
+        store.add(100, 350, 500, 350);
+        FlowFieldNavigator navigator = new FlowFieldNavigator(wallWithGap(), 10);
+        navigator.prepare(store, null);
+
+        // Stepping along the field from the far side of the wall ends at the goal
+        float[] direction = new float[2];
+        for (int step = 0; step < 200 && navigator.getDirection(store, 0, direction); step++) {
+            store.setVelocity(0, direction[0] * 10, direction[1] * 10);
+            store.update(1f);
+        }
+        assertEquals(500, store.getX(0), 15);
+        assertEquals(350, store.getY(0), 15);
+    }
+}
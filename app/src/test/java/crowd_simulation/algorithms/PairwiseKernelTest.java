@@ -0,0 +1,60 @@
+package crowd_simulation.algorithms;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairwiseKernelTest {
+    private static final int COUNT = 203;
+
+    private final float[] xs = new float[COUNT];
+    private final float[] ys = new float[COUNT];
+    private final float[] radii = new float[COUNT];
+    private final int[] ids = new int[COUNT];
+
+    PairwiseKernelTest() {
+        Random random = new Random(17);
+        for (int i = 0; i < COUNT; i++) {
+            xs[i] = random.nextFloat() * 200;
+            ys[i] = random.nextFloat() * 200;
+            radii[i] = 5 + random.nextFloat() * 10;
+            ids[i] = COUNT - i;
+        }
+    }
+
+    private void assertSameResult(NeighborList expected, NeighborList actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int n = 0; n < expected.size(); n++) {
+            assertEquals(expected.get(n), actual.get(n));
+            assertEquals(expected.getDistanceSquared(n), actual.getDistanceSquared(n), 0f);
+        }
+    }
+
+    @Test void preferredKernelMatchesScalar() {
+        PairwiseKernel scalar = new ScalarPairwiseKernel();
+        PairwiseKernel preferred = PairwiseKernel.preferred();
+        NeighborList expected = new NeighborList();
+        NeighborList actual = new NeighborList();
+
+        for (int from = 0; from < 20; from += 3) {
+            expected.clear();
+            actual.clear();
+            scalar.collectWithinRadius(xs, ys, ids, from, COUNT, 100, 100, 60 * 60, expected);
+            preferred.collectWithinRadius(xs, ys, ids, from, COUNT, 100, 100, 60 * 60, actual);
+            assertSameResult(expected, actual);
+
+            expected.clear();
+            actual.clear();
+            scalar.collectNearest(xs, ys, ids, from, COUNT, 50, 150, 80 * 80, 7, expected);
+            preferred.collectNearest(xs, ys, ids, from, COUNT, 50, 150, 80 * 80, 7, actual);
+            assertSameResult(expected, actual);
+
+            expected.clear();
+            actual.clear();
+            scalar.collectOverlapping(xs, ys, radii, ids, from, COUNT, 120, 40, 12, expected);
+            preferred.collectOverlapping(xs, ys, radii, ids, from, COUNT, 120, 40, 12, actual);
+            assertSameResult(expected, actual);
+        }
+    }
+}
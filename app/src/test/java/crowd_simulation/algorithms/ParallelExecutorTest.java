@@ -0,0 +1,88 @@
+package crowd_simulation.algorithms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+
+class ParallelExecutorTest {
+    // No threads runs without an executor, on the serial path
+    private AgentStore run(CrowdAlgorithm algorithm, int threads) {
+        try (ParallelExecutor executor = threads > 0 ? new ParallelExecutor(threads) : null) {
+            algorithm.setParallelExecutor(executor);
+            AgentStore store = Scenarios.uniform(2000, 4, 3);
+            for (int step = 0; step < 20; step++) {
+                algorithm.updateAgents(store, 0.5);
+                store.update(0.5f);
+            }
+            return store;
+        }
+    }
+
+    private void assertSameState(AgentStore expected, AgentStore actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i), 0f);
+            assertEquals(expected.getY(i), actual.getY(i), 0f);
+            assertEquals(expected.getVelocityX(i), actual.getVelocityX(i), 0f);
+            assertEquals(expected.getVelocityY(i), actual.getVelocityY(i), 0f);
+            assertEquals(expected.getCollisions(i), actual.getCollisions(i));
+        }
+    }
+
+    @Test void boidIsDeterministicForAnyThreadCount() {
+        assertSameState(run(new Boid(), 1), run(new Boid(), 6));
+    }
+
+    @Test void boidIsTheSameWithoutAnExecutor() {
+        assertSameState(run(new Boid(), 0), run(new Boid(), 6));
+        Boid reference = new Boid();
+        reference.setReferenceMode(true);
+        Boid parallel = new Boid();
+        parallel.setReferenceMode(true);
+        assertSameState(run(reference, 0), run(parallel, 6));
+    }
+
+    @Test void scoutIsTheSameWithoutAnExecutor() {
+        assertSameState(run(new Scout(), 0), run(new Scout(), 6));
+        Scout orca = new Scout();
+        orca.setMode(Scout.Mode.ORCA);
+        Scout parallel = new Scout();
+        parallel.setMode(Scout.Mode.ORCA);
+        assertSameState(run(orca, 0), run(parallel, 6));
+    }
+
+    @Test void scoutIsDeterministicForAnyThreadCount() {
+        assertSameState(run(new Scout(), 1), run(new Scout(), 6));
+    }
+
+    @Test void ghostCountsTheSameCollisionsInParallel() {
+        Ghost sequential = new Ghost();
+        AgentStore expected = Scenarios.uniform(2000, 4, 3);
+        for (int step = 0; step < 20; step++) {
+            sequential.updateAgents(expected, 0.5);
+            expected.update(0.5f);
+        }
+        assertSameState(expected, run(new Ghost(), 6));
+    }
+
+    @Test void closesOnlyAPoolItMade() {
+        ParallelExecutor owned = new ParallelExecutor(2);
+        owned.close();
+        assertThrows(RejectedExecutionException.class, () -> owned.forEachRange(1000, (from, to) -> {}));
+
+        ParallelExecutor shared = new ParallelExecutor();
+        shared.close();
+        int[] count = new int[1];
+        shared.forEachRange(1000, (from, to) -> {
+            synchronized (count) {
+                count[0] += to - from;
+            }
+        });
+        assertEquals(1000, count[0]);
+        assertFalse(ForkJoinPool.commonPool().isShutdown());
+    }
+}
@@ -0,0 +1,55 @@
+package crowd_simulation.algorithms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+
+class ScoutTest {
+    @Test void orcaCircleSwapStaysApartAndReachesGoals() {
+        Scout scout = new Scout();
+        scout.setMode(Scout.Mode.ORCA);
+        scout.setNeighborDistance(100f);
+        AgentStore store = Scenarios.circle(16, 0, 0, 150);
+
+        float closest = Float.MAX_VALUE;
+        for (int step = 0; step < 5000 && !allReachedGoal(store); step++) {
+            scout.updateAgents(store, 0.5);
+            store.update(0.5f);
+
+            for (int i = 0; i < store.size(); i++) {
+                for (int j = i + 1; j < store.size(); j++) {
+                    float dx = store.getX(j) - store.getX(i);
+                    float dy = store.getY(j) - store.getY(i);
+                    float combinedRadius = store.getRadius(i) + store.getRadius(j);
+                    closest = Math.min(closest, (float) Math.sqrt(dx * dx + dy * dy) / combinedRadius);
+                }
+            }
+        }
+
+        assertTrue(allReachedGoal(store), "agents should reach their goals");
+        assertTrue(closest > 0.9f, "agents overlapped: " + closest);
+    }
+
+    @Test void orcaRespectsMaxSpeed() {
+        Scout scout = new Scout();
+        scout.setMode(Scout.Mode.ORCA);
+        scout.setMaxNeighbors(4);
+        AgentStore store = Scenarios.uniform(500, 8, 2);
+        scout.updateAgents(store, 0.5);
+
+        for (int i = 0; i < store.size(); i++) {
+            float vx = store.getVelocityX(i);
+            float vy = store.getVelocityY(i);
+            assertTrue(vx * vx + vy * vy <= store.getMaxSpeed(i) * store.getMaxSpeed(i) * 1.001f);
+        }
+    }
+
+    private boolean allReachedGoal(AgentStore store) {
+        for (int i = 0; i < store.size(); i++) {
+            if (!store.hasReachedGoal(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+package crowd_simulation.algorithms;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+
+class SweepAndPruneTest {
+    private static class RecordingListener implements ContactListener {
+        final Set<Long> active = new HashSet<>();
+        int begins = 0;
+
+        @Override
+        public void contactBegin(int first, int second) {
+            assertTrue(first < second);
+            assertTrue(active.add(((long) first << 32) | second), "contact began twice");
+            begins++;
+        }
+
+        @Override
+        public void contactEnd(int first, int second) {
+            assertTrue(active.remove(((long) first << 32) | second), "contact ended before it began");
+        }
+    }
+
+    private Set<Long> bruteForceContacts(AgentStore store) {
+        Set<Long> contacts = new HashSet<>();
+        for (int i = 0; i < store.size(); i++) {
+            for (int j = i + 1; j < store.size(); j++) {
+                float dx = store.getX(j) - store.getX(i);
+                float dy = store.getY(j) - store.getY(i);
+                float combinedRadius = store.getRadius(i) + store.getRadius(j);
+                if (dx * dx + dy * dy < combinedRadius * combinedRadius) {
+                    contacts.add(((long) i << 32) | j);
+                }
+            }
+        }
+        return contacts;
+    }
+
+    @Test void tracksTheSameContactsAsBruteForce() {
+        AgentStore store = Scenarios.uniform(400, 20, 11);
+        Random random = new Random(5);
+        SweepAndPrune sweepAndPrune = new SweepAndPrune();
+        RecordingListener listener = new RecordingListener();
+
+        for (int step = 0; step < 30; step++) {
+            for (int i = 0; i < store.size(); i++) {
+                store.setVelocity(i, random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4);
+            }
+            store.update(1f);
+
+            sweepAndPrune.update(store, listener);
+            assertEquals(bruteForceContacts(store), listener.active);
+            assertEquals(listener.active.size(), sweepAndPrune.getContactCount());
+        }
+    }
+
+    @Test void finishedAgentsKeepTheirContacts() {
+        // Goals close to the start, so agents settle into a pile while others still walk through it
+        AgentStore store = new AgentStore();
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            float x = random.nextFloat() * 300;
+            float y = random.nextFloat() * 300;
+            store.add(x, y, 150 + random.nextFloat() * 40, 150 + random.nextFloat() * 40);
+        }
+        SweepAndPrune sweepAndPrune = new SweepAndPrune();
+        RecordingListener listener = new RecordingListener();
+
+        for (int step = 0; step < 40; step++) {
+            for (int i = 0; i < store.size(); i++) {
+                float dx = store.getGoalX(i) - store.getX(i);
+                float dy = store.getGoalY(i) - store.getY(i);
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                float scale = distance > 0 ? Math.min(8, distance) / distance : 0;
+                store.setVelocity(i, dx * scale, dy * scale);
+            }
+            store.update(1f);
+
+            sweepAndPrune.update(store, listener);
+            assertEquals(bruteForceContacts(store), listener.active);
+        }
+        assertTrue(store.getActiveCount() < store.size());
+    }
+
+    @Test void lastingContactCountsOnce() {
+        AgentStore store = new AgentStore();
+        store.add(0, 0, 100, 0);
+        store.add(10, 0, 100, 0);
+        SweepAndPrune sweepAndPrune = new SweepAndPrune();
+        RecordingListener listener = new RecordingListener();
+
+        for (int step = 0; step < 30; step++) {
+            sweepAndPrune.update(store, listener);
+        }
+        assertEquals(1, listener.begins);
+    }
+}
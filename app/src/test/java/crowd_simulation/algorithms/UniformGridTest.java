@@ -0,0 +1,64 @@
+package crowd_simulation.algorithms;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+
+class UniformGridTest {
+    private AgentStore randomAgents(int count, long seed) {
+        Random random = new Random(seed);
+        AgentStore store = new AgentStore(count);
+        for (int i = 0; i < count; i++) {
+            store.add(random.nextFloat() * 800, random.nextFloat() * 600, 0, 0);
+        }
+        return store;
+    }
+
+    @Test void rangeQueryMatchesBruteForce() {
+        AgentStore store = randomAgents(500, 42);
+        UniformGrid grid = new UniformGrid(30f);
+        grid.rebuild(store);
+
+        NeighborList result = new NeighborList();
+        for (int i = 0; i < store.size(); i++) {
+            grid.queryRange(store.getX(i), store.getY(i), 75f, result);
+            result.sortByIndex();
+
+            int n = 0;
+            for (int j = 0; j < store.size(); j++) {
+                float dx = store.getX(j) - store.getX(i);
+                float dy = store.getY(j) - store.getY(i);
+                if (dx * dx + dy * dy <= 75f * 75f) {
+                    assertTrue(n < result.size(), "missing neighbor " + j);
+                    assertEquals(j, result.get(n++));
+                }
+            }
+            assertEquals(n, result.size());
+        }
+    }
+
+    @Test void nearestQueryReturnsClosestFirst() {
+        AgentStore store = randomAgents(300, 7);
+        UniformGrid grid = new UniformGrid(50f);
+        grid.rebuild(store);
+
+        NeighborList result = new NeighborList();
+        grid.queryNearest(400, 300, 200f, 5, result);
+        assertEquals(5, result.size());
+        for (int n = 1; n < result.size(); n++) {
+            assertTrue(result.getDistanceSquared(n - 1) <= result.getDistanceSquared(n));
+        }
+
+        float fifth = result.getDistanceSquared(4);
+        int closer = 0;
+        for (int i = 0; i < store.size(); i++) {
+            float dx = store.getX(i) - 400;
+            float dy = store.getY(i) - 300;
+            if (dx * dx + dy * dy < fifth) closer++;
+        }
+        assertTrue(closer < 5);
+    }
+}
@@ -0,0 +1,84 @@
+package crowd_simulation.algorithms;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+import crowd_simulation.SimulationEngine;
+
+class UpdateSchedulerTest {
+    private static final float RADIUS = 50;
+
+    @Test void skippedAgentsHaveNobodyWithinTheRadius() {
+        AgentStore store = Scenarios.uniform(400, 0.5f, 3);
+        UpdateScheduler scheduler = new UpdateScheduler();
+        Random random = new Random(5);
+        boolean[] due = new boolean[store.size()];
+
+        for (int step = 0; step < 600 && !store.isFinished(); step++) {
+            int steerCount = scheduler.schedule(store, 1f, RADIUS, null);
+            Arrays.fill(due, false);
+            for (int k = 0; k < steerCount; k++) {
+                due[scheduler.getDueAgent(k)] = true;
+            }
+
+            for (int k = 0; k < store.getActiveCount(); k++) {
+                int i = store.getActiveAgent(k);
+                if (!due[i]) {
+                    assertFalse(hasNeighborWithin(store, i, RADIUS), "agent " + i + " skipped at step " + step);
+                    continue;
+                }
+                // Wander toward the goal at full speed, turning at random whenever steered
+                float angle = (float) Math.atan2(store.getGoalY(i) - store.getY(i), store.getGoalX(i) - store.getX(i))
+                        + (random.nextFloat() - 0.5f);
+                store.setVelocity(i, (float) Math.cos(angle) * store.getMaxSpeed(i),
+                        (float) Math.sin(angle) * store.getMaxSpeed(i));
+            }
+            store.update(1f);
+        }
+    }
+
+    @Test void crowdedAgentsAreSteeredEveryStep() {
+        AgentStore store = Scenarios.circle(200, 0, 0, Scenarios.circleRadiusFor(200));
+        UpdateScheduler scheduler = new UpdateScheduler();
+
+        assertEquals(store.size(), scheduler.schedule(store, 1f, RADIUS, null));
+        assertEquals(store.size(), scheduler.getTierCount(0));
+    }
+
+    @Test void sparseCrowdIsSteeredLessWithTheSameOutcome() {
+        AgentStore full = Scenarios.uniform(300, 0.05f, 11);
+        AgentStore scheduled = Scenarios.uniform(300, 0.05f, 11);
+        Scout scout = new Scout();
+        Scout lodScout = new Scout();
+        UpdateScheduler scheduler = new UpdateScheduler();
+        lodScout.setUpdateScheduler(scheduler);
+
+        SimulationEngine fullEngine = new SimulationEngine(full, scout, 1f);
+        SimulationEngine scheduledEngine = new SimulationEngine(scheduled, lodScout, 1f);
+        while (!fullEngine.isFinished() && fullEngine.getStepCount() < 10000) {
+            fullEngine.step();
+        }
+        while (!scheduledEngine.isFinished() && scheduledEngine.getStepCount() < 10000) {
+            scheduledEngine.step();
+        }
+
+        assertTrue(scheduledEngine.isFinished());
+        assertTrue(scheduler.getSteeredFraction() < 0.5f, "steered: " + scheduler.getSteeredFraction());
+        assertEquals(full.getTotalCollisions(), scheduled.getTotalCollisions());
+        assertEquals(fullEngine.getStepCount(), scheduledEngine.getStepCount(), fullEngine.getStepCount() * 0.05);
+    }
+
+    private static boolean hasNeighborWithin(AgentStore store, int agent, float radius) {
+        for (int j = 0; j < store.size(); j++) {
+            float dx = store.getX(j) - store.getX(agent);
+            float dy = store.getY(j) - store.getY(agent);
+            if (j != agent && dx * dx + dy * dy <= radius * radius) return true;
+        }
+        return false;
+    }
+}
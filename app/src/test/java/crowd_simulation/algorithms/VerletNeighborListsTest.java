@@ -0,0 +1,76 @@
+package crowd_simulation.algorithms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import crowd_simulation.AgentStore;
+import crowd_simulation.Scenarios;
+
+class VerletNeighborListsTest {
+    private int[] sortedIndices(NeighborList list) {
+        int[] indices = new int[list.size()];
+        for (int n = 0; n < list.size(); n++) {
+            indices[n] = list.get(n);
+        }
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    @Test void cachedQueriesMatchTheGridWhileAgentsMove() {
+        AgentStore store = Scenarios.uniform(1500, 6, 11);
+        Random random = new Random(3);
+        for (int i = 0; i < store.size(); i++) {
+            store.setVelocity(i, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2);
+        }
+
+        UniformGrid grid = new UniformGrid(40f);
+        VerletNeighborLists lists = new VerletNeighborLists(new UniformGrid(40f), 6f);
+        NeighborList expected = new NeighborList();
+        NeighborList actual = new NeighborList();
+
+        try (ParallelExecutor executor = new ParallelExecutor(3)) {
+            for (int step = 0; step < 40; step++) {
+                grid.rebuild(store);
+                lists.update(store, 40f, step % 2 == 0 ? null : executor);
+                for (int i = 0; i < store.size(); i += 7) {
+                    grid.queryRange(store.getX(i), store.getY(i), 40f, expected);
+                    lists.queryRange(store, i, 40f, actual);
+                    assertArrayEquals(sortedIndices(expected), sortedIndices(actual));
+
+                    grid.queryNearest(store.getX(i), store.getY(i), 40f, 5, expected);
+                    lists.queryNearest(store, i, 40f, 5, actual);
+                    assertEquals(expected.size(), actual.size());
+                    for (int n = 0; n < expected.size(); n++) {
+                        assertEquals(expected.getDistanceSquared(n), actual.getDistanceSquared(n), 1e-3f);
+                    }
+                }
+                store.update(1f);
+            }
+        }
+
+        // Agents move up to 2.8 per step against a 3 unit half-skin
+        assertEquals(40, lists.getUpdateCount());
+        assertTrue(lists.getRebuildCount() >= 14 && lists.getRebuildCount() <= 40, "" + lists.getRebuildCount());
+    }
+
+    @Test void slowCrowdsRarelyRebuild() {
+        AgentStore store = Scenarios.uniform(500, 4, 2);
+        for (int i = 0; i < store.size(); i++) {
+            store.setVelocity(i, 2, 0);
+        }
+        VerletNeighborLists lists = new VerletNeighborLists(new UniformGrid(50f), 10f);
+        for (int step = 0; step < 100; step++) {
+            lists.update(store, 50f, null);
+            store.update(1 / 60f);
+        }
+        // 100 steps at 2/60 per step move 3.3 units, under the 5 unit half-skin
+        assertEquals(1, lists.getRebuildCount());
+        assertEquals(0.01f, lists.getRebuildRate(), 1e-6f);
+
+        lists.update(store, 60f, null);
+        assertEquals(2, lists.getRebuildCount());
+    }
+}